@@ -71,6 +71,8 @@ public class EventContext implements ApplicationListener<ApplicationContextEvent
             // 初始化上下文
             EventContext.instance = this;
             instance.applicationContext = event.getApplicationContext();
+            // 提前生成所有事件的分发器
+            EventBus.compileDispatchers();
         } else if (event instanceof ContextClosedEvent) {
             shutdown();
             ThreadUtils.shutdownForkJoinPool();
@@ -13,26 +13,33 @@
 
 package com.zfoo.event.manager;
 
+import com.zfoo.event.model.event.ICoalescingEvent;
 import com.zfoo.event.model.event.IEvent;
+import com.zfoo.event.model.vo.EnhanceUtils;
+import com.zfoo.event.model.vo.EventPriorityEnum;
+import com.zfoo.event.model.vo.IBatchEventReceiver;
 import com.zfoo.event.model.vo.IEventReceiver;
-import com.zfoo.protocol.collection.CollectionUtils;
+import com.zfoo.event.model.vo.RejectPolicyEnum;
 import com.zfoo.protocol.collection.concurrent.CopyOnWriteHashMapLongObject;
+import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.util.AssertionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.util.SafeRunnable;
 import com.zfoo.util.ThreadUtils;
 import com.zfoo.util.math.RandomUtils;
+import com.zfoo.util.metrics.ExecutorMetrics;
+import com.zfoo.util.metrics.MetricsUtils;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -50,7 +57,17 @@ public abstract class EventBus {
      */
     public static final int EXECUTORS_SIZE = Runtime.getRuntime().availableProcessors() * 2;
 
-    private static final ExecutorService[] executors = new ExecutorService[EXECUTORS_SIZE];
+    /**
+     * EN: Single thread executors with priority lanes (critical, normal, background)
+     * CN: 单线程的执行器，每个执行器中有critical，normal，background三个优先级的队列
+     */
+    private static final EventExecutor[] executors = new EventExecutor[EXECUTORS_SIZE];
+
+    /**
+     * EN: Pending coalescing events of each executor
+     * CN: 每一个执行器中还没有处理的可以合并的事件
+     */
+    private static final EventCoalescer[][] coalescers = new EventCoalescer[EXECUTORS_SIZE][];
 
     private static final CopyOnWriteHashMapLongObject<ExecutorService> threadMap = new CopyOnWriteHashMapLongObject<>(EXECUTORS_SIZE);
     /**
@@ -62,11 +79,36 @@ public abstract class EventBus {
      */
     private static final Map<Class<? extends IEvent>, List<IEventReceiver>> receiverMapAsync = new HashMap<>();
 
+    /**
+     * EN: One precompiled dispatcher per event type, which calls all the observers in a straight line
+     * CN: 每一种事件一个预先生成的分发器，分发器中逐个直接调用所有的观察者，注册新的观察者之后重新生成
+     */
+    private static volatile EventDispatcherMap dispatcherMapSync = EventDispatcherMap.EMPTY;
+    private static volatile EventDispatcherMap dispatcherMapAsync = EventDispatcherMap.EMPTY;
+
+    /**
+     * 没有观察者的事件使用的分发器
+     */
+    private static final IEventReceiver EMPTY_DISPATCHER = event -> {
+    };
+
+    /**
+     * EN: Batch observers of the coalescing events, copy on write
+     * CN: 可以合并的事件的批量观察者，修改的时候复制一个新的map
+     */
+    private static volatile Map<Class<? extends IEvent>, List<IBatchEventReceiver>> batchReceiverMap = Collections.emptyMap();
+
     static {
         for (int i = 0; i < executors.length; i++) {
             var namedThreadFactory = new EventThreadFactory(i);
-            var executor = Executors.newSingleThreadExecutor(namedThreadFactory);
+            var executor = new EventExecutor(namedThreadFactory, StringUtils.format("event.executor.{}", i));
             executors[i] = executor;
+            MetricsUtils.register(executor.recorder().getName(), executor.recorder()::metrics);
+            var priorities = EventPriorityEnum.values();
+            coalescers[i] = new EventCoalescer[priorities.length];
+            for (var priority : priorities) {
+                coalescers[i][priority.ordinal()] = new EventCoalescer(executor, priority);
+            }
         }
     }
 
@@ -107,11 +149,11 @@ public abstract class EventBus {
      * CN: 同步抛出一个事件，会在当前线程中运行(只有同步观察者会处理事件)
      */
     public static void syncSubmit(IEvent event) {
-        var list = receiverMapSync.get(event.getClass());
-        if (CollectionUtils.isEmpty(list)) {
+        var dispatcher = dispatcher(event.getClass(), false);
+        if (dispatcher == EMPTY_DISPATCHER) {
             return;
         }
-        doSubmit(event, list);
+        dispatcher.invoke(event);
     }
 
 
@@ -120,51 +162,211 @@ public abstract class EventBus {
      * CN: 异步抛出一个事件，事件不在同一个线程中处理(只有异步观察者会处理事件)
      */
     public static void asyncSubmit(IEvent event) {
-        var list = receiverMapAsync.get(event.getClass());
-        if (CollectionUtils.isEmpty(list)) {
+        var dispatcher = dispatcher(event.getClass(), true);
+        var index = Math.abs(event.threadId() % EXECUTORS_SIZE);
+        if (event instanceof ICoalescingEvent) {
+            if (dispatcher == EMPTY_DISPATCHER && !batchReceiverMap.containsKey(event.getClass())) {
+                return;
+            }
+            // 执行器还没有处理的相同key的事件会被合并，只处理一次
+            coalescers[index][event.priority().ordinal()].submit((ICoalescingEvent) event);
             return;
         }
 
-        executors[Math.abs(event.threadId() % EXECUTORS_SIZE)].execute(() -> doSubmit(event, list));
+        if (dispatcher == EMPTY_DISPATCHER) {
+            return;
+        }
+
+        executors[index].execute(() -> dispatcher.invoke(event), event, event.priority());
+    }
+
+    /**
+     * 在执行器中处理合并之后的同一种事件，异步观察者逐个处理每一个事件，批量观察者一次处理所有的事件
+     */
+    static void deliverCoalesced(Class<? extends IEvent> eventType, List<IEvent> events) {
+        var dispatcher = dispatcher(eventType, true);
+        if (dispatcher != EMPTY_DISPATCHER) {
+            for (var event : events) {
+                dispatcher.invoke(event);
+            }
+        }
+
+        var batchReceivers = batchReceiverMap.get(eventType);
+        if (batchReceivers == null) {
+            return;
+        }
+        var unmodifiableEvents = Collections.unmodifiableList(events);
+        for (var batchReceiver : batchReceivers) {
+            try {
+                batchReceiver.invoke(unmodifiableEvents);
+            } catch (Throwable t) {
+                EnhanceUtils.logException(t);
+            }
+        }
     }
 
     public static void asyncExecute(Runnable runnable) {
         execute(RandomUtils.randomInt(), runnable);
     }
 
+    public static void asyncExecute(Runnable runnable, EventPriorityEnum priority) {
+        execute(RandomUtils.randomInt(), runnable, priority);
+    }
+
     /**
      * Use the event thread specified by the hashcode to execute the task
      */
     public static void execute(int hashcode, Runnable runnable) {
-        executors[Math.abs(hashcode % EXECUTORS_SIZE)].execute(SafeRunnable.valueOf(runnable));
+        execute(hashcode, runnable, EventPriorityEnum.NORMAL);
+    }
+
+    /**
+     * EN: Use the event thread specified by the hashcode to execute the task in the queue of the priority
+     * CN: 在hashcode指定的线程的priority优先级的队列中执行任务，比如批量持久化这种耗时的任务使用BACKGROUND，避免阻塞对延迟敏感的事件
+     */
+    public static void execute(int hashcode, Runnable runnable, EventPriorityEnum priority) {
+        executors[Math.abs(hashcode % EXECUTORS_SIZE)].execute(SafeRunnable.valueOf(runnable), priority);
+    }
+
+    /**
+     * EN: Try to execute the task in the queue of the priority without blocking, return false if the queue is full, ignore the reject policy
+     * CN: 不阻塞的提交任务，队列满了的时候不使用拒绝策略，直接返回false，适合在定时器这种不能阻塞的线程中提交BACKGROUND任务
+     */
+    public static boolean tryExecute(int hashcode, Runnable runnable, EventPriorityEnum priority) {
+        return executors[Math.abs(hashcode % EXECUTORS_SIZE)].tryExecute(SafeRunnable.valueOf(runnable), priority);
+    }
+
+    /**
+     * EN: Set the capacity of the priority queue of all the executors and the policy when the queue is full, the default is unbounded
+     * CN: 设置所有执行器中priority优先级的队列的容量和队列满了之后的处理策略，默认容量无限
+     * <p>
+     * BACKGROUND队列中有数据库持久化这种不能丢弃的定时任务，只能使用BLOCK策略，队列满了的时候阻塞提交任务的线程；
+     * 定时器线程不能被阻塞，使用tryExecute提交
+     */
+    public static void configureQueue(EventPriorityEnum priority, int capacity, RejectPolicyEnum rejectPolicy) {
+        if (priority == EventPriorityEnum.BACKGROUND && rejectPolicy != RejectPolicyEnum.BLOCK) {
+            throw new IllegalArgumentException(StringUtils.format("[{}] queue can only use [{}] reject policy, but got [{}]", priority, RejectPolicyEnum.BLOCK, rejectPolicy));
+        }
+        for (var executor : executors) {
+            executor.configure(priority, capacity, rejectPolicy);
+        }
+    }
+
+    /**
+     * EN: Snapshot of the metrics of all the executors, including the queue size, the wait time and run time of the tasks, and the slowest task
+     * CN: 所有执行器的统计信息快照，包括队列中的任务数量，任务的等待时间和执行时间，正在执行的任务和执行最慢的任务
+     */
+    public static List<ExecutorMetrics> metrics() {
+        var list = new ArrayList<ExecutorMetrics>(executors.length);
+        for (var executor : executors) {
+            list.add(executor.recorder().metrics());
+        }
+        return list;
+    }
+
+    private static IEventReceiver dispatcher(Class<? extends IEvent> eventType, boolean asyncFlag) {
+        var dispatcher = asyncFlag ? dispatcherMapAsync.get(eventType) : dispatcherMapSync.get(eventType);
+        return dispatcher != null ? dispatcher : compileDispatcher(eventType, asyncFlag, false);
     }
 
     /**
-     * The observer executes the method call
+     * EN: Generate the dispatcher of the event, throw the exception if failFast, otherwise fall back to calling the observers one by one
+     * CN: 生成事件的分发器，failFast的时候直接抛出生成失败的异常，否则退化为逐个调用观察者
      */
-    private static void doSubmit(IEvent event, List<IEventReceiver> receiverList) {
-        for (var receiver : receiverList) {
+    private static synchronized IEventReceiver compileDispatcher(Class<? extends IEvent> eventType, boolean asyncFlag, boolean failFast) {
+        var dispatcher = asyncFlag ? dispatcherMapAsync.get(eventType) : dispatcherMapSync.get(eventType);
+        if (dispatcher != null) {
+            return dispatcher;
+        }
+
+        var receiverList = asyncFlag ? receiverMapAsync.get(eventType) : receiverMapSync.get(eventType);
+        if (receiverList == null || receiverList.isEmpty()) {
+            dispatcher = EMPTY_DISPATCHER;
+        } else {
+            var receivers = List.copyOf(receiverList);
             try {
-                receiver.invoke(event);
-            } catch (Exception e) {
-                logger.error("eventBus unknown exception", e);
+                dispatcher = EnhanceUtils.createEventDispatcher(eventType, receivers);
             } catch (Throwable t) {
-                logger.error("eventBus unknown error", t);
+                if (failFast) {
+                    throw new RunException("eventBus create dispatcher of [{}] error", eventType.getName(), t);
+                }
+                logger.error("eventBus create dispatcher of [{}] error, fall back to invoke receivers one by one", eventType.getName(), t);
+                dispatcher = event -> {
+                    for (var receiver : receivers) {
+                        try {
+                            receiver.invoke(event);
+                        } catch (Throwable e) {
+                            EnhanceUtils.logException(e);
+                        }
+                    }
+                };
             }
         }
+
+        if (asyncFlag) {
+            dispatcherMapAsync = dispatcherMapAsync.put(eventType, dispatcher);
+        } else {
+            dispatcherMapSync = dispatcherMapSync.put(eventType, dispatcher);
+        }
+        return dispatcher;
+    }
+
+    /**
+     * EN: Generate the dispatchers of all the registered events in advance, so that the first submission does not need to wait,
+     * the generation exception is thrown directly so that the wrong observers fail the startup
+     * CN: 提前生成所有已经注册的事件的分发器，避免第一次抛出事件的时候生成，生成失败的时候直接抛出异常，错误的观察者在启动的时候就发现
+     */
+    public static synchronized void compileDispatchers() {
+        receiverMapSync.keySet().forEach(it -> compileDispatcher(it, false, true));
+        receiverMapAsync.keySet().forEach(it -> compileDispatcher(it, true, true));
     }
 
     /**
      * Register the event and its counterpart observer
      */
-    public static void registerEventReceiver(Class<? extends IEvent> eventType, IEventReceiver receiver, boolean asyncFlag) {
+    public static synchronized void registerEventReceiver(Class<? extends IEvent> eventType, IEventReceiver receiver, boolean asyncFlag) {
+        if (asyncFlag) {
+            receiverMapAsync.computeIfAbsent(eventType, it -> new ArrayList<>()).add(receiver);
+            dispatcherMapAsync = dispatcherMapAsync.remove(eventType);
+        } else {
+            receiverMapSync.computeIfAbsent(eventType, it -> new ArrayList<>()).add(receiver);
+            dispatcherMapSync = dispatcherMapSync.remove(eventType);
+        }
+    }
+
+    /**
+     * EN: Unregister the observer of the event, the dispatcher is regenerated at the next submission
+     * CN: 取消注册事件的观察者，下一次抛出事件的时候重新生成分发器
+     */
+    public static synchronized void unregisterEventReceiver(Class<? extends IEvent> eventType, IEventReceiver receiver, boolean asyncFlag) {
+        var receiverMap = asyncFlag ? receiverMapAsync : receiverMapSync;
+        var receiverList = receiverMap.get(eventType);
+        if (receiverList == null || !receiverList.remove(receiver)) {
+            return;
+        }
+        if (receiverList.isEmpty()) {
+            receiverMap.remove(eventType);
+        }
         if (asyncFlag) {
-            receiverMapAsync.computeIfAbsent(eventType, it -> new LinkedList<>()).add(receiver);
+            dispatcherMapAsync = dispatcherMapAsync.remove(eventType);
         } else {
-            receiverMapSync.computeIfAbsent(eventType, it -> new LinkedList<>()).add(receiver);
+            dispatcherMapSync = dispatcherMapSync.remove(eventType);
         }
     }
 
+    /**
+     * EN: Register a batch observer of the coalescing event, which receives all the coalesced events of an executor at once
+     * CN: 注册可以合并的事件的批量观察者，一次接收一个执行器中合并之后的所有事件
+     */
+    public static synchronized void registerBatchEventReceiver(Class<? extends IEvent> eventType, IBatchEventReceiver receiver) {
+        AssertionUtils.isTrue(ICoalescingEvent.class.isAssignableFrom(eventType), "batch receiver event [{}] must implement [{}]", eventType.getName(), ICoalescingEvent.class.getName());
+        var map = new HashMap<>(batchReceiverMap);
+        var receivers = new ArrayList<>(map.getOrDefault(eventType, Collections.emptyList()));
+        receivers.add(receiver);
+        map.put(eventType, List.copyOf(receivers));
+        batchReceiverMap = map;
+    }
+
     public static Executor threadExecutor(long currentThreadId) {
         return threadMap.getPrimitive(currentThreadId);
     }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.manager;
+
+import com.zfoo.event.model.event.ICoalescingEvent;
+import com.zfoo.event.model.event.IEvent;
+import com.zfoo.event.model.vo.EventPriorityEnum;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个执行器中等待处理的可以合并的事件，执行器还没有执行到的时候相同key的事件合并成一个，
+ * 不管抛出了多少个事件，执行器中最多只有一个drain任务，所以执行器越忙合并的越多
+ *
+ * @author godotg
+ * @version 3.0
+ */
+final class EventCoalescer {
+
+    private final EventExecutor executor;
+
+    private final EventPriorityEnum priority;
+
+    private final Map<CoalesceKey, ICoalescingEvent> pendingEvents = new ConcurrentHashMap<>();
+
+    // 执行器中已经有drain任务
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Runnable drainTask = this::drain;
+
+    EventCoalescer(EventExecutor executor, EventPriorityEnum priority) {
+        this.executor = executor;
+        this.priority = priority;
+    }
+
+    void submit(ICoalescingEvent event) {
+        pendingEvents.merge(new CoalesceKey(event.getClass(), event.coalesceKey()), event, (previous, current) -> current.merge(previous));
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                // drain任务不受队列容量和拒绝策略的限制，不会被丢弃也不会在当前线程执行
+                executor.executeUnbounded(drainTask, priority);
+            } catch (RuntimeException e) {
+                // 执行器已经关闭，重置标记，不然后面的事件永远不会再提交drain任务
+                scheduled.compareAndSet(true, false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        // 先重置标记再取出事件，取出的过程中抛出的事件会再提交一个drain任务，不会丢失
+        scheduled.set(false);
+
+        var eventMap = new HashMap<Class<? extends IEvent>, List<IEvent>>();
+        for (var key : pendingEvents.keySet()) {
+            var event = pendingEvents.remove(key);
+            if (event != null) {
+                eventMap.computeIfAbsent(event.getClass(), it -> new ArrayList<>()).add(event);
+            }
+        }
+
+        for (var entry : eventMap.entrySet()) {
+            EventBus.deliverCoalesced(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static final class CoalesceKey {
+        private final Class<?> eventClazz;
+        private final Object key;
+
+        private CoalesceKey(Class<?> eventClazz, Object key) {
+            this.eventClazz = eventClazz;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            var that = (CoalesceKey) o;
+            return eventClazz == that.eventClazz && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * eventClazz.hashCode() + Objects.hashCode(key);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.manager;
+
+import com.zfoo.event.model.event.IEvent;
+import com.zfoo.event.model.vo.IEventReceiver;
+
+/**
+ * 事件的Class到分发器的映射，Class使用==比较，数组开放寻址，读不加锁，修改的时候复制一个新的map
+ *
+ * @author godotg
+ * @version 3.0
+ */
+final class EventDispatcherMap {
+
+    static final EventDispatcherMap EMPTY = new EventDispatcherMap(new Class<?>[8], new IEventReceiver[8]);
+
+    private final Class<?>[] keys;
+    private final IEventReceiver[] values;
+    private final int mask;
+    private int size;
+
+    private EventDispatcherMap(Class<?>[] keys, IEventReceiver[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+    }
+
+    IEventReceiver get(Class<? extends IEvent> eventClazz) {
+        var index = System.identityHashCode(eventClazz) & mask;
+        while (true) {
+            var key = keys[index];
+            if (key == eventClazz) {
+                return values[index];
+            }
+            if (key == null) {
+                return null;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    EventDispatcherMap put(Class<? extends IEvent> eventClazz, IEventReceiver dispatcher) {
+        // 负载因子不超过0.5，保证查找的时候一定能遇到空位
+        var capacity = keys.length;
+        while ((size + 1) * 2 > capacity) {
+            capacity <<= 1;
+        }
+        var map = new EventDispatcherMap(new Class<?>[capacity], new IEventReceiver[capacity]);
+        for (var i = 0; i < keys.length; i++) {
+            if (keys[i] != null && keys[i] != eventClazz) {
+                map.insert(keys[i], values[i]);
+            }
+        }
+        map.insert(eventClazz, dispatcher);
+        return map;
+    }
+
+    EventDispatcherMap remove(Class<? extends IEvent> eventClazz) {
+        if (get(eventClazz) == null) {
+            return this;
+        }
+        var map = new EventDispatcherMap(new Class<?>[keys.length], new IEventReceiver[keys.length]);
+        for (var i = 0; i < keys.length; i++) {
+            if (keys[i] != null && keys[i] != eventClazz) {
+                map.insert(keys[i], values[i]);
+            }
+        }
+        return map;
+    }
+
+    private void insert(Class<?> eventClazz, IEventReceiver dispatcher) {
+        var index = System.identityHashCode(eventClazz) & mask;
+        while (keys[index] != null) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = eventClazz;
+        values[index] = dispatcher;
+        size++;
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.manager;
+
+import com.zfoo.event.model.vo.EventPriorityEnum;
+import com.zfoo.event.model.vo.RejectPolicyEnum;
+import com.zfoo.util.metrics.ExecutorRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * EventBus的单线程执行器，每一个优先级一个队列，高优先级的队列中有任务的时候先执行高优先级的任务，
+ * 每个队列可以设置容量和队列满了之后的处理策略，默认容量无限，和原来的newSingleThreadExecutor一样
+ * <p>
+ * 为了避免低优先级的任务一直得不到执行，每执行STARVATION_INTERVAL个任务会先从低优先级的队列中取一个任务
+ * <p>
+ * 提交的任务都会被ExecutorRecorder包装，记录等待时间和执行时间，被丢弃或者拒绝的任务也会被记录
+ *
+ * @author godotg
+ * @version 3.0
+ */
+final class EventExecutor extends AbstractExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventExecutor.class);
+
+    private static final int STARVATION_INTERVAL = 64;
+
+    private static final EventPriorityEnum[] PRIORITIES = EventPriorityEnum.values();
+
+    private final ThreadFactory threadFactory;
+
+    private final ExecutorRecorder recorder;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition termination = lock.newCondition();
+
+    private final ArrayDeque<Runnable>[] lanes;
+    private final int[] capacities;
+    private final RejectPolicyEnum[] rejectPolicies;
+
+    private Thread worker;
+    private long pollCount;
+    private boolean shutdown;
+    private boolean terminated;
+
+    EventExecutor(ThreadFactory threadFactory, String name) {
+        this.threadFactory = threadFactory;
+        this.recorder = new ExecutorRecorder(name, this::queueSize);
+        this.lanes = new ArrayDeque[PRIORITIES.length];
+        this.capacities = new int[PRIORITIES.length];
+        this.rejectPolicies = new RejectPolicyEnum[PRIORITIES.length];
+        for (var i = 0; i < PRIORITIES.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+            capacities[i] = Integer.MAX_VALUE;
+            rejectPolicies[i] = RejectPolicyEnum.BLOCK;
+        }
+    }
+
+    void configure(EventPriorityEnum priority, int capacity, RejectPolicyEnum rejectPolicy) {
+        Objects.requireNonNull(rejectPolicy);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        lock.lock();
+        try {
+            capacities[priority.ordinal()] = capacity;
+            rejectPolicies[priority.ordinal()] = rejectPolicy;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queueSize(EventPriorityEnum priority) {
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queueSize() {
+        lock.lock();
+        try {
+            var size = 0;
+            for (var lane : lanes) {
+                size += lane.size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ExecutorRecorder recorder() {
+        return recorder;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(task, null, EventPriorityEnum.NORMAL);
+    }
+
+    void execute(Runnable task, EventPriorityEnum priority) {
+        execute(task, null, priority);
+    }
+
+    /**
+     * 队列满了的时候不使用拒绝策略，直接返回false，不会阻塞提交任务的线程，给定时器线程这种不能阻塞的线程使用
+     *
+     * @return 任务是否放入了队列
+     */
+    boolean tryExecute(Runnable task, EventPriorityEnum priority) {
+        Objects.requireNonNull(task);
+        task = recorder.wrap(task, null);
+        var index = priority.ordinal();
+        lock.lock();
+        try {
+            checkShutdown(task);
+            if (worker == null) {
+                worker = threadFactory.newThread(this::runWorker);
+                worker.start();
+            }
+            var lane = lanes[index];
+            if (lane.size() >= capacities[index]) {
+                recorder.recordRejected();
+                return false;
+            }
+            lane.addLast(task);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不受队列容量和拒绝策略限制的提交，只给EventCoalescer的drain任务使用，每个队列最多只有一个drain任务，
+     * drain任务被丢弃的话合并中的事件永远不会被处理，在调用者的线程执行又会破坏执行器的线程亲和性
+     */
+    void executeUnbounded(Runnable task, EventPriorityEnum priority) {
+        Objects.requireNonNull(task);
+        task = new UnboundedTask(recorder.wrap(task, null));
+        lock.lock();
+        try {
+            checkShutdown(task);
+            if (worker == null) {
+                worker = threadFactory.newThread(this::runWorker);
+                worker.start();
+            }
+            lanes[priority.ordinal()].addLast(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param source 任务的来源，例如事件，用来在统计信息中描述任务
+     */
+    void execute(Runnable task, Object source, EventPriorityEnum priority) {
+        Objects.requireNonNull(task);
+        task = recorder.wrap(task, source);
+        var index = priority.ordinal();
+        var callerRuns = false;
+        lock.lock();
+        try {
+            checkShutdown(task);
+            if (worker == null) {
+                worker = threadFactory.newThread(this::runWorker);
+                worker.start();
+            }
+
+            var lane = lanes[index];
+            while (lane.size() >= capacities[index]) {
+                var rejectPolicy = rejectPolicies[index];
+                if (rejectPolicy == RejectPolicyEnum.BLOCK && Thread.currentThread() == worker) {
+                    // 执行器自己的线程等待自己的队列会死锁
+                    rejectPolicy = RejectPolicyEnum.CALLER_RUNS;
+                }
+                switch (rejectPolicy) {
+                    case BLOCK:
+                        try {
+                            notFull.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            recorder.recordRejected();
+                            throw new RejectedExecutionException("interrupted while waiting for [" + priority + "] queue of " + worker.getName(), e);
+                        }
+                        checkShutdown(task);
+                        continue;
+                    case CALLER_RUNS:
+                        callerRuns = true;
+                        break;
+                    case DISCARD:
+                        recorder.recordRejected();
+                        logger.warn("[{}] queue of [{}] is full, discard task [{}]", priority, worker.getName(), task);
+                        return;
+                    case DISCARD_OLDEST:
+                        var oldestTask = pollOldest(lane);
+                        recorder.recordRejected();
+                        if (oldestTask == null) {
+                            // 队列中只有不能丢弃的任务，丢弃新的任务
+                            logger.warn("[{}] queue of [{}] is full, discard task [{}]", priority, worker.getName(), task);
+                            return;
+                        }
+                        logger.warn("[{}] queue of [{}] is full, discard oldest task [{}]", priority, worker.getName(), oldestTask);
+                        continue;
+                    default:
+                        recorder.recordRejected();
+                        throw new RejectedExecutionException("[" + priority + "] queue of " + worker.getName() + " is full");
+                }
+                break;
+            }
+
+            if (!callerRuns) {
+                lane.addLast(task);
+                notEmpty.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        task.run();
+    }
+
+    private Runnable pollOldest(ArrayDeque<Runnable> lane) {
+        for (var iterator = lane.iterator(); iterator.hasNext(); ) {
+            var task = iterator.next();
+            if (!(task instanceof UnboundedTask)) {
+                iterator.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private void checkShutdown(Runnable task) {
+        if (shutdown) {
+            recorder.recordRejected();
+            throw new RejectedExecutionException("event executor has been shutdown, reject task " + task);
+        }
+    }
+
+    private void runWorker() {
+        var thread = Thread.currentThread();
+        while (true) {
+            Runnable task;
+            lock.lock();
+            try {
+                while ((task = poll()) == null) {
+                    if (shutdown) {
+                        terminated = true;
+                        termination.signalAll();
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+        }
+    }
+
+    private Runnable poll() {
+        if (++pollCount % STARVATION_INTERVAL == 0) {
+            for (var i = lanes.length - 1; i >= 0; i--) {
+                if (!lanes[i].isEmpty()) {
+                    return lanes[i].pollFirst();
+                }
+            }
+            return null;
+        }
+        for (var lane : lanes) {
+            if (!lane.isEmpty()) {
+                return lane.pollFirst();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            if (worker == null) {
+                terminated = true;
+                termination.signalAll();
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        lock.lock();
+        try {
+            shutdown();
+            var tasks = new ArrayList<Runnable>();
+            for (var lane : lanes) {
+                tasks.addAll(lane);
+                lane.clear();
+            }
+            if (worker != null) {
+                worker.interrupt();
+            }
+            return tasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return terminated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!terminated) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class UnboundedTask implements Runnable {
+        private final Runnable task;
+
+        private UnboundedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.model.event;
+
+/**
+ * 高频的异步事件，比如属性变化，排行变化，同一个执行器还没有处理的相同coalesceKey的事件会合并成一个，只处理一次
+ * <p>
+ * 合并只对异步观察者生效，同步观察者还是每次都立刻执行；默认使用coalesceKey的hashCode选择执行器，相同coalesceKey的事件才能在同一个执行器中合并
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public interface ICoalescingEvent extends IEvent {
+
+    /**
+     * 合并的key，同一种事件中coalesceKey相等的事件会被合并，比如实体的id
+     */
+    Object coalesceKey();
+
+    /**
+     * 当前事件和还没有被处理的相同coalesceKey的事件合并，默认保留最新的事件
+     *
+     * @param previous 之前抛出的还没有被处理的事件，和当前事件是同一个类型
+     * @return 合并之后的事件
+     */
+    default ICoalescingEvent merge(ICoalescingEvent previous) {
+        return this;
+    }
+
+    @Override
+    default int threadId() {
+        return coalesceKey().hashCode();
+    }
+
+}
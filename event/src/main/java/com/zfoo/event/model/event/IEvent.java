@@ -13,6 +13,7 @@
 
 package com.zfoo.event.model.event;
 
+import com.zfoo.event.model.vo.EventPriorityEnum;
 import com.zfoo.util.math.RandomUtils;
 
 /**
@@ -41,4 +42,11 @@ public interface IEvent {
         return RandomUtils.randomInt();
     }
 
+    /**
+     * 异步事件在执行器中的优先级，对延迟敏感的事件可以返回CRITICAL，不会被BACKGROUND的耗时任务阻塞
+     */
+    default EventPriorityEnum priority() {
+        return EventPriorityEnum.NORMAL;
+    }
+
 }
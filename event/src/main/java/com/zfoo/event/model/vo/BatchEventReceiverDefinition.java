@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.model.vo;
+
+import com.zfoo.event.model.event.IEvent;
+import com.zfoo.protocol.exception.RunException;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * 被EventReceiver注解标注的参数为List的方法，一次接收执行器中合并之后的同一种事件，只能异步执行
+ * <p>
+ * 创建的时候生成一个直接调用这个方法的IBatchEventReceiver，invoke不使用反射
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class BatchEventReceiverDefinition implements IBatchEventReceiver {
+
+    private Object bean;
+
+    // 被EventReceiver注解标注的方法
+    private Method method;
+
+    // List中的事件的Class
+    private Class<? extends IEvent> eventClazz;
+
+    // 生成的直接调用method的类
+    private IBatchEventReceiver receiver;
+
+    public BatchEventReceiverDefinition(Object bean, Method method, Class<? extends IEvent> eventClazz) {
+        this.bean = bean;
+        this.method = method;
+        this.eventClazz = eventClazz;
+        try {
+            this.receiver = EnhanceUtils.createBatchEventReceiver(this);
+        } catch (Throwable t) {
+            throw new RunException("[class:{}] [method:{}] create batch receiver error", bean.getClass().getName(), method.getName(), t);
+        }
+    }
+
+    @Override
+    public void invoke(List<? extends IEvent> events) {
+        receiver.invoke(events);
+    }
+
+    public Object getBean() {
+        return bean;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Class<? extends IEvent> getEventClazz() {
+        return eventClazz;
+    }
+}
@@ -14,15 +14,16 @@
 package com.zfoo.event.model.vo;
 
 import com.zfoo.event.model.event.IEvent;
-import com.zfoo.event.schema.NamespaceHandler;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.util.security.IdUtils;
 import javassist.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.List;
 
 /**
  * @author godotg
@@ -30,10 +31,13 @@ import java.lang.reflect.Modifier;
  */
 public abstract class EnhanceUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(EnhanceUtils.class);
+
     static {
         // 适配Tomcat，因为Tomcat不是用的默认的类加载器，而Javassist用的是默认的加载器
         var classArray = new Class<?>[]{
                 IEventReceiver.class,
+                IBatchEventReceiver.class,
                 IEvent.class
         };
 
@@ -47,41 +51,115 @@ public abstract class EnhanceUtils {
         }
     }
 
-    public static IEventReceiver createEventReceiver(EventReceiverDefinition definition) throws NotFoundException, CannotCompileException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+    /**
+     * 给一个事件的所有观察者生成一个分发器，按照注册的顺序逐个直接调用观察者的方法，每一个调用点都只有一个实现，JIT可以内联
+     * <p>
+     * EventReceiverDefinition直接调用bean中被EventReceiver标注的方法，其它的IEventReceiver调用invoke，一个观察者抛出异常不影响后面的观察者
+     */
+    public static IEventReceiver createEventDispatcher(Class<? extends IEvent> eventClazz, List<IEventReceiver> receivers) throws NotFoundException, CannotCompileException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
         var classPool = ClassPool.getDefault();
 
-        Object bean = definition.getBean();
-        Method method = definition.getMethod();
-        Class<?> clazz = definition.getEventClazz();
-
         // 定义类名称
-        CtClass enhanceClazz = classPool.makeClass(EnhanceUtils.class.getCanonicalName() + StringUtils.capitalize(NamespaceHandler.EVENT) + IdUtils.getLocalIntId());
+        CtClass enhanceClazz = classPool.makeClass(EnhanceUtils.class.getCanonicalName() + "Dispatcher" + IdUtils.getLocalIntId());
         enhanceClazz.addInterface(classPool.get(IEventReceiver.class.getCanonicalName()));
 
+        var targets = new Object[receivers.size()];
+        var constructorBody = new StringBuilder("{");
+        // 强制类型转换，转换为具体的Event类型的类型
+        var invokeMethodBody = new StringBuilder("{").append(StringUtils.format("{} event = ({})$1;", eventClazz.getName(), eventClazz.getName()));
+        for (var i = 0; i < receivers.size(); i++) {
+            var receiver = receivers.get(i);
+            var fieldName = "r" + i;
+
+            // 定义类中的成员，EventReceiverDefinition使用bean的具体类型，其它的观察者使用接口类型
+            String fieldType;
+            String invocation;
+            if (receiver instanceof EventReceiverDefinition) {
+                var definition = (EventReceiverDefinition) receiver;
+                targets[i] = definition.getBean();
+                fieldType = definition.getBean().getClass().getName();
+                invocation = StringUtils.format("this.{}.{}(event);", fieldName, definition.getMethod().getName());
+            } else {
+                targets[i] = receiver;
+                fieldType = IEventReceiver.class.getName();
+                invocation = StringUtils.format("this.{}.invoke(event);", fieldName);
+            }
+            CtField field = new CtField(classPool.get(fieldType), fieldName, enhanceClazz);
+            field.setModifiers(Modifier.PRIVATE + Modifier.FINAL);
+            enhanceClazz.addField(field);
+
+            constructorBody.append(StringUtils.format("this.{}=({})$1[{}];", fieldName, fieldType, i));
+            invokeMethodBody.append("try {").append(invocation).append("} catch (java.lang.Throwable t) {").append(EnhanceUtils.class.getName()).append(".logException(t);}");
+        }
+        constructorBody.append("}");
+        invokeMethodBody.append("}");
+
+        // 定义类的构造器，参数是所有观察者的调用对象
+        CtConstructor constructor = new CtConstructor(classPool.get(new String[]{Object[].class.getName()}), enhanceClazz);
+        constructor.setBody(constructorBody.toString());
+        constructor.setModifiers(Modifier.PUBLIC);
+        enhanceClazz.addConstructor(constructor);
+
+        // 定义类实现的接口方法
+        CtMethod invokeMethod = new CtMethod(classPool.get(void.class.getCanonicalName()), "invoke", classPool.get(new String[]{IEvent.class.getCanonicalName()}), enhanceClazz);
+        invokeMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        invokeMethod.setBody(invokeMethodBody.toString());
+        enhanceClazz.addMethod(invokeMethod);
+
+        // 释放缓存
+        enhanceClazz.detach();
+
+        Class<?> resultClazz = enhanceClazz.toClass(IEventReceiver.class);
+        Constructor<?> resultConstructor = resultClazz.getConstructor(Object[].class);
+        return (IEventReceiver) resultConstructor.newInstance(new Object[]{targets});
+    }
+
+    /**
+     * 给批量观察者生成一个直接调用bean中被EventReceiver标注的方法的IBatchEventReceiver
+     */
+    public static IBatchEventReceiver createBatchEventReceiver(BatchEventReceiverDefinition definition) throws NotFoundException, CannotCompileException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        var classPool = ClassPool.getDefault();
+
+        var bean = definition.getBean();
+        var beanClazzName = bean.getClass().getName();
+
+        // 定义类名称
+        CtClass enhanceClazz = classPool.makeClass(EnhanceUtils.class.getCanonicalName() + "Batch" + IdUtils.getLocalIntId());
+        enhanceClazz.addInterface(classPool.get(IBatchEventReceiver.class.getCanonicalName()));
+
         // 定义类中的一个成员
-        CtField field = new CtField(classPool.get(bean.getClass().getCanonicalName()), "bean", enhanceClazz);
-        field.setModifiers(Modifier.PRIVATE);
+        CtField field = new CtField(classPool.get(beanClazzName), "bean", enhanceClazz);
+        field.setModifiers(Modifier.PRIVATE + Modifier.FINAL);
         enhanceClazz.addField(field);
 
         // 定义类的构造器
-        CtConstructor constructor = new CtConstructor(classPool.get(new String[]{bean.getClass().getCanonicalName()}), enhanceClazz);
+        CtConstructor constructor = new CtConstructor(classPool.get(new String[]{beanClazzName}), enhanceClazz);
         constructor.setBody("{this.bean=$1;}");
         constructor.setModifiers(Modifier.PUBLIC);
         enhanceClazz.addConstructor(constructor);
 
         // 定义类实现的接口方法
-        CtMethod invokeMethod = new CtMethod(classPool.get(void.class.getCanonicalName()), "invoke", classPool.get(new String[]{IEvent.class.getCanonicalName()}), enhanceClazz);
+        CtMethod invokeMethod = new CtMethod(classPool.get(void.class.getCanonicalName()), "invoke", classPool.get(new String[]{List.class.getCanonicalName()}), enhanceClazz);
         invokeMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
-        String invokeMethodBody = "{this.bean." + method.getName() + "((" + clazz.getCanonicalName() + ")$1);}";// 强制类型转换，转换为具体的Event类型的类型
-        invokeMethod.setBody(invokeMethodBody);
+        invokeMethod.setBody(StringUtils.format("{this.bean.{}($1);}", definition.getMethod().getName()));
         enhanceClazz.addMethod(invokeMethod);
 
         // 释放缓存
         enhanceClazz.detach();
 
-        Class<?> resultClazz = enhanceClazz.toClass(IEventReceiver.class);
+        Class<?> resultClazz = enhanceClazz.toClass(IBatchEventReceiver.class);
         Constructor<?> resultConstructor = resultClazz.getConstructor(bean.getClass());
-        IEventReceiver receiver = (IEventReceiver) resultConstructor.newInstance(bean);
-        return receiver;
+        return (IBatchEventReceiver) resultConstructor.newInstance(bean);
+    }
+
+    /**
+     * 生成的分发器中观察者抛出的异常
+     */
+    public static void logException(Throwable t) {
+        if (t instanceof Exception) {
+            logger.error("eventBus unknown exception", t);
+        } else {
+            logger.error("eventBus unknown error", t);
+        }
     }
 }
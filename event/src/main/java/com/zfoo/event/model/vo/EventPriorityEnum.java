@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.model.vo;
+
+/**
+ * EventBus执行器中的优先级队列，高优先级的任务先执行
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public enum EventPriorityEnum {
+
+    /**
+     * 对延迟敏感的任务，比如战斗中的事件
+     */
+    CRITICAL,
+
+    /**
+     * 默认的优先级，普通的事件和任务
+     */
+    NORMAL,
+
+    /**
+     * 耗时的后台任务，比如数据库的批量持久化，缓存的刷新
+     * <p>
+     * 这些任务不能被丢弃，所以这个队列满了之后只能阻塞提交任务的线程，不能配置其它的拒绝策略
+     */
+    BACKGROUND
+
+}
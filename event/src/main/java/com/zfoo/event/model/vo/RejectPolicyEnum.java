@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event.model.vo;
+
+/**
+ * EventBus执行器的队列满了之后的处理策略
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public enum RejectPolicyEnum {
+
+    /**
+     * 抛出任务的线程阻塞等待队列有空位，形成背压；在执行器自己的线程中抛出的时候直接执行，避免死锁
+     */
+    BLOCK,
+
+    /**
+     * 在抛出任务的线程中直接执行
+     */
+    CALLER_RUNS,
+
+    /**
+     * 丢弃当前任务并打印日志
+     */
+    DISCARD,
+
+    /**
+     * 丢弃队列中最早的任务，再放入当前任务
+     */
+    DISCARD_OLDEST,
+
+    /**
+     * 抛出RejectedExecutionException
+     */
+    ABORT
+
+}
@@ -15,8 +15,9 @@ package com.zfoo.event.schema;
 
 import com.zfoo.event.manager.EventBus;
 import com.zfoo.event.model.anno.EventReceiver;
+import com.zfoo.event.model.event.ICoalescingEvent;
 import com.zfoo.event.model.event.IEvent;
-import com.zfoo.event.model.vo.EnhanceUtils;
+import com.zfoo.event.model.vo.BatchEventReceiverDefinition;
 import com.zfoo.event.model.vo.EventReceiverDefinition;
 import com.zfoo.protocol.collection.ArrayUtils;
 import com.zfoo.protocol.util.ReflectionUtils;
@@ -26,7 +27,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
 
 /**
  * 这是一个后置处理器，在boot项目中注册EventContext时，会import导入EventRegisterProcessor这个组件，这是一个后置处理器，
@@ -57,11 +61,18 @@ public class EventRegisterProcessor implements BeanPostProcessor {
                 if (paramClazzs.length != 1) {
                     throw new IllegalArgumentException(StringUtils.format("[class:{}] [method:{}] must have one parameter!", bean.getClass().getName(), method.getName()));
                 }
-                if (!IEvent.class.isAssignableFrom(paramClazzs[0])) {
-                    throw new IllegalArgumentException(StringUtils.format("[class:{}] [method:{}] must have one [IEvent] type parameter!", bean.getClass().getName(), method.getName()));
+
+                // 参数为List<Event>的是批量观察者，一次接收合并之后的事件
+                var batchFlag = paramClazzs[0] == List.class;
+                var paramClazz = batchFlag ? batchEventClazz(method) : paramClazzs[0];
+                if (paramClazz == null || !IEvent.class.isAssignableFrom(paramClazz)) {
+                    throw new IllegalArgumentException(StringUtils.format("[class:{}] [method:{}] must have one [IEvent] or [List<IEvent>] type parameter!", bean.getClass().getName(), method.getName()));
+                }
+                if (batchFlag && !ICoalescingEvent.class.isAssignableFrom(paramClazz)) {
+                    throw new IllegalArgumentException(StringUtils.format("[class:{}] [method:{}] batch receiver event must implement [{}]!", bean.getClass().getName(), method.getName(), ICoalescingEvent.class.getSimpleName()));
                 }
 
-                var eventClazz = (Class<? extends IEvent>) paramClazzs[0];
+                var eventClazz = (Class<? extends IEvent>) paramClazz;
                 var eventName = eventClazz.getCanonicalName();
                 var methodName = method.getName();
 
@@ -79,13 +90,23 @@ public class EventRegisterProcessor implements BeanPostProcessor {
                             , bean.getClass().getName(), methodName, eventName, expectedMethodName));
                 }
 
-                var receiverDefinition = new EventReceiverDefinition(bean, method, eventClazz);
-                var enhanceReceiverDefinition = EnhanceUtils.createEventReceiver(receiverDefinition);
-
                 //异步执行标志，false表示同步执行，true表示异步执行
                 var asyncFlag = method.getDeclaredAnnotation(EventReceiver.class).async();
+
+                if (batchFlag) {
+                    // 批量观察者在执行器中合并之后调用，不能同步执行
+                    if (!asyncFlag) {
+                        throw new IllegalArgumentException(StringUtils.format("[class:{}] [method:{}] [event:{}] batch receiver must use 'async = true'!", bean.getClass().getName(), methodName, eventName));
+                    }
+                    EventBus.registerBatchEventReceiver(eventClazz, new BatchEventReceiverDefinition(bean, method, eventClazz));
+                    continue;
+                }
+
+                // 不再给每一个观察者单独生成代理类，EventBus会给每一种事件生成一个直接调用所有观察者的分发器
+                var receiverDefinition = new EventReceiverDefinition(bean, method, eventClazz);
+
                 // key:class类型 value:观察者 注册Event的receiverMap中
-                EventBus.registerEventReceiver(eventClazz, enhanceReceiverDefinition, asyncFlag);
+                EventBus.registerEventReceiver(eventClazz, receiverDefinition, asyncFlag);
             }
         } catch (Throwable t) {
             throw new RuntimeException(t);
@@ -94,4 +115,13 @@ public class EventRegisterProcessor implements BeanPostProcessor {
         return bean;
     }
 
+    private Class<?> batchEventClazz(Method method) {
+        var type = method.getGenericParameterTypes()[0];
+        if (!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        var argumentType = ((ParameterizedType) type).getActualTypeArguments()[0];
+        return argumentType instanceof Class ? (Class<?>) argumentType : null;
+    }
+
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.event;
+
+import com.zfoo.event.manager.EventBus;
+import com.zfoo.event.model.anno.EventReceiver;
+import com.zfoo.event.model.event.ICoalescingEvent;
+import com.zfoo.event.model.event.IEvent;
+import com.zfoo.event.model.vo.BatchEventReceiverDefinition;
+import com.zfoo.event.model.vo.EventPriorityEnum;
+import com.zfoo.event.model.vo.EventReceiverDefinition;
+import com.zfoo.event.model.vo.RejectPolicyEnum;
+import com.zfoo.event.schema.EventRegisterProcessor;
+import com.zfoo.protocol.exception.RunException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+public class EventBusTest {
+
+    public static class MyReceiver {
+        private final List<String> messages;
+
+        public MyReceiver(List<String> messages) {
+            this.messages = messages;
+        }
+
+        public void onMyNoticeEvent(MyNoticeEvent event) {
+            messages.add(event.getMessage());
+        }
+    }
+
+    public static class MyErrorReceiver {
+        public void onMyNoticeEvent(MyNoticeEvent event) {
+            throw new RuntimeException("receiver error");
+        }
+    }
+
+    public static class MyBatchReceiver {
+        private final List<Integer> counts;
+
+        public MyBatchReceiver(List<Integer> counts) {
+            this.counts = counts;
+        }
+
+        @EventReceiver(async = true)
+        public void onMyCoalescingEvent(List<MyCoalescingEvent> events) {
+            events.forEach(it -> counts.add(it.count));
+        }
+    }
+
+    public static class MySyncBatchReceiver {
+        @EventReceiver
+        public void onMyCoalescingEvent(List<MyCoalescingEvent> events) {
+        }
+    }
+
+    // 不是public的观察者无法生成分发器
+    static class MyHiddenReceiver {
+        public void onMyHiddenEvent(MyHiddenEvent event) {
+        }
+    }
+
+    public static class MyHiddenEvent implements IEvent {
+    }
+
+    public static class MyCoalescingEvent implements ICoalescingEvent {
+        private final long uid;
+        private final int count;
+
+        public MyCoalescingEvent(long uid, int count) {
+            this.uid = uid;
+            this.count = count;
+        }
+
+        @Override
+        public Object coalesceKey() {
+            return uid;
+        }
+
+        // 合并的时候累加次数
+        @Override
+        public ICoalescingEvent merge(ICoalescingEvent previous) {
+            return new MyCoalescingEvent(uid, count + ((MyCoalescingEvent) previous).count);
+        }
+    }
+
+    public static class MyBoundedCoalescingEvent implements ICoalescingEvent {
+        private final int uid;
+
+        public MyBoundedCoalescingEvent(int uid) {
+            this.uid = uid;
+        }
+
+        @Override
+        public Object coalesceKey() {
+            return uid;
+        }
+    }
+
+    @Test
+    public void dispatcherTest() throws NoSuchMethodException {
+        var messages = new ArrayList<String>();
+        var method = MyReceiver.class.getMethod("onMyNoticeEvent", MyNoticeEvent.class);
+        var errorMethod = MyErrorReceiver.class.getMethod("onMyNoticeEvent", MyNoticeEvent.class);
+
+        EventBus.registerEventReceiver(MyNoticeEvent.class, new EventReceiverDefinition(new MyReceiver(messages), method, MyNoticeEvent.class), false);
+        EventBus.syncSubmit(MyNoticeEvent.valueOf("a"));
+        Assert.assertEquals(List.of("a"), messages);
+
+        // 注册新的观察者之后重新生成分发器，一个观察者抛出异常不影响后面的观察者
+        EventBus.registerEventReceiver(MyNoticeEvent.class, new EventReceiverDefinition(new MyErrorReceiver(), errorMethod, MyNoticeEvent.class), false);
+        EventBus.registerEventReceiver(MyNoticeEvent.class, event -> messages.add("lambda"), false);
+        EventBus.registerEventReceiver(MyNoticeEvent.class, new EventReceiverDefinition(new MyReceiver(messages), method, MyNoticeEvent.class), false);
+        EventBus.compileDispatchers();
+        EventBus.syncSubmit(MyNoticeEvent.valueOf("b"));
+        Assert.assertEquals(List.of("a", "b", "lambda", "b"), messages);
+    }
+
+    @Test
+    public void batchReceiverTest() throws NoSuchMethodException {
+        var counts = new ArrayList<Integer>();
+        var method = MyBatchReceiver.class.getMethod("onMyCoalescingEvent", List.class);
+        var definition = new BatchEventReceiverDefinition(new MyBatchReceiver(counts), method, MyCoalescingEvent.class);
+        definition.invoke(List.of(new MyCoalescingEvent(1, 1), new MyCoalescingEvent(2, 2)));
+        Assert.assertEquals(List.of(1, 2), counts);
+
+        // 批量观察者必须异步执行
+        try {
+            new EventRegisterProcessor().postProcessAfterInitialization(new MySyncBatchReceiver(), "mySyncBatchReceiver");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("async = true"));
+        }
+    }
+
+    @Test
+    public void compileDispatchersTest() throws NoSuchMethodException {
+        var method = MyHiddenReceiver.class.getMethod("onMyHiddenEvent", MyHiddenEvent.class);
+        var receiver = new EventReceiverDefinition(new MyHiddenReceiver(), method, MyHiddenEvent.class);
+        EventBus.registerEventReceiver(MyHiddenEvent.class, receiver, true);
+        try {
+            // 启动的时候生成分发器失败直接抛出异常
+            EventBus.compileDispatchers();
+            Assert.fail();
+        } catch (RunException e) {
+            Assert.assertTrue(e.getMessage().contains(MyHiddenEvent.class.getName()));
+        } finally {
+            // 取消注册，不影响其它生成分发器的测试
+            EventBus.unregisterEventReceiver(MyHiddenEvent.class, receiver, true);
+        }
+        EventBus.compileDispatchers();
+    }
+
+    @Test
+    public void coalesceTest() throws InterruptedException {
+        var events = new CopyOnWriteArrayList<MyCoalescingEvent>();
+        var batches = new CopyOnWriteArrayList<Integer>();
+        var done = new CountDownLatch(1);
+        EventBus.registerEventReceiver(MyCoalescingEvent.class, event -> events.add((MyCoalescingEvent) event), true);
+        EventBus.registerBatchEventReceiver(MyCoalescingEvent.class, list -> {
+            batches.add(list.size());
+            done.countDown();
+        });
+
+        // 执行器被阻塞的时候抛出的事件按照uid合并，两个uid在同一个执行器中，批量观察者一次收到两个事件
+        var blocker = new CountDownLatch(1);
+        var uid = 1L;
+        EventBus.execute(Long.hashCode(uid), () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (var i = 0; i < 1000; i++) {
+            EventBus.asyncSubmit(new MyCoalescingEvent(uid, 1));
+            EventBus.asyncSubmit(new MyCoalescingEvent(uid + EventBus.EXECUTORS_SIZE, 1));
+        }
+        blocker.countDown();
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(1000, events.get(0).count);
+        Assert.assertEquals(1000, events.get(1).count);
+        Assert.assertEquals(List.of(2), batches);
+    }
+
+    @Test
+    public void coalesceBoundedQueueTest() throws InterruptedException {
+        var uid = 5;
+        var done = new CountDownLatch(1);
+        EventBus.registerEventReceiver(MyBoundedCoalescingEvent.class, event -> done.countDown(), true);
+
+        var blocker = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        EventBus.execute(uid, () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // normal队列已经满了，drain任务也不能被丢弃，否则合并的事件永远不会被处理
+        EventBus.configureQueue(EventPriorityEnum.NORMAL, 1, RejectPolicyEnum.DISCARD);
+        try {
+            EventBus.execute(uid, () -> {
+            });
+            for (var i = 0; i < 100; i++) {
+                EventBus.asyncSubmit(new MyBoundedCoalescingEvent(uid));
+            }
+            EventBus.configureQueue(EventPriorityEnum.NORMAL, 1, RejectPolicyEnum.DISCARD_OLDEST);
+            EventBus.execute(uid, () -> {
+            });
+            blocker.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            blocker.countDown();
+            EventBus.configureQueue(EventPriorityEnum.NORMAL, Integer.MAX_VALUE, RejectPolicyEnum.BLOCK);
+        }
+    }
+
+    @Test
+    public void priorityTest() throws InterruptedException {
+        var hashcode = 3;
+        var blocker = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        EventBus.execute(hashcode, () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // normal队列最多放两个任务，多余的丢弃
+        EventBus.configureQueue(EventPriorityEnum.NORMAL, 2, RejectPolicyEnum.DISCARD);
+        var order = new CopyOnWriteArrayList<String>();
+        var done = new CountDownLatch(4);
+        for (var i = 0; i < 3; i++) {
+            var name = "normal" + i;
+            EventBus.execute(hashcode, () -> {
+                order.add(name);
+                done.countDown();
+            });
+        }
+        EventBus.execute(hashcode, () -> {
+            order.add("background");
+            done.countDown();
+        }, EventPriorityEnum.BACKGROUND);
+        EventBus.execute(hashcode, () -> {
+            order.add("critical");
+            done.countDown();
+        }, EventPriorityEnum.CRITICAL);
+        blocker.countDown();
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of("critical", "normal0", "normal1", "background"), order);
+        EventBus.configureQueue(EventPriorityEnum.NORMAL, Integer.MAX_VALUE, RejectPolicyEnum.BLOCK);
+    }
+
+    @Test
+    public void tryExecuteTest() throws InterruptedException {
+        var hashcode = 6;
+        var blocker = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        EventBus.execute(hashcode, () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // BACKGROUND队列满了的时候tryExecute不阻塞，直接返回false
+        EventBus.configureQueue(EventPriorityEnum.BACKGROUND, 1, RejectPolicyEnum.BLOCK);
+        try {
+            var done = new CountDownLatch(1);
+            Assert.assertTrue(EventBus.tryExecute(hashcode, done::countDown, EventPriorityEnum.BACKGROUND));
+            Assert.assertFalse(EventBus.tryExecute(hashcode, done::countDown, EventPriorityEnum.BACKGROUND));
+            blocker.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            blocker.countDown();
+            EventBus.configureQueue(EventPriorityEnum.BACKGROUND, Integer.MAX_VALUE, RejectPolicyEnum.BLOCK);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void backgroundRejectPolicyTest() {
+        // background队列中的持久化任务不能被丢弃
+        EventBus.configureQueue(EventPriorityEnum.BACKGROUND, 2, RejectPolicyEnum.DISCARD);
+    }
+
+}
@@ -18,6 +18,7 @@ import com.zfoo.protocol.collection.CollectionUtils;
 import com.zfoo.protocol.util.FileUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.scheduler.util.TimeUtils;
+import com.zfoo.util.metrics.MetricsUtils;
 import com.zfoo.util.net.NetUtils;
 
 import java.util.ArrayList;
@@ -104,6 +105,12 @@ public class Monitor {
                     , it.getName(), it.getRxpck(), it.getTxpck(), it.getRxBytes(), it.getTxBytes(), it.getInErrors(), it.getOutErrors(), it.getInDrops(), it.getCollisions(), TimeUtils.timeToString(it.getTimestamp())));
             builder.append(FileUtils.LS);
         });
+        var metrics = MetricsUtils.metrics();
+        if (!metrics.isEmpty()) {
+            builder.append("5.metrics:");
+            builder.append(FileUtils.LS);
+            metrics.forEach((name, value) -> builder.append(StringUtils.format("    [{}] {}", name, value)).append(FileUtils.LS));
+        }
         var pressures = toPressures();
         if (CollectionUtils.isNotEmpty(pressures)) {
             builder.append("summary of errors:");
@@ -22,14 +22,22 @@ import com.zfoo.scheduler.manager.SchedulerBus;
 import com.zfoo.util.SafeRunnable;
 import com.zfoo.util.ThreadUtils;
 import com.zfoo.util.math.RandomUtils;
+import com.zfoo.util.metrics.ExecutorMetrics;
+import com.zfoo.util.metrics.ExecutorRecorder;
+import com.zfoo.util.metrics.MetricsUtils;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -50,6 +58,11 @@ public final class TaskBus {
      */
     private static final ExecutorService[] executors;
 
+    /**
+     * 每个线程池的统计信息，记录任务的等待时间，执行时间和正在执行的协议
+     */
+    private static final ExecutorRecorder[] recorders;
+
     static {
         var localConfig = NetContext.getConfigManager().getLocalConfig();
         var providerConfig = localConfig.getProvider();
@@ -57,10 +70,14 @@ public final class TaskBus {
         EXECUTOR_SIZE = (providerConfig == null || StringUtils.isBlank(providerConfig.getThread())) ? (Runtime.getRuntime().availableProcessors() + 1) : Integer.parseInt(providerConfig.getThread());
 
         executors = new ExecutorService[EXECUTOR_SIZE];
+        recorders = new ExecutorRecorder[EXECUTOR_SIZE];
         for (int i = 0; i < executors.length; i++) {
             var namedThreadFactory = new TaskThreadFactory(i);
-            var executor = Executors.newSingleThreadExecutor(namedThreadFactory);
+            // 和Executors.newSingleThreadExecutor一样的单线程池，直接使用ThreadPoolExecutor是为了能够获取队列的大小
+            var executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), namedThreadFactory);
             executors[i] = executor;
+            recorders[i] = new ExecutorRecorder(StringUtils.format("task.executor.{}", i), () -> executor.getQueue().size());
+            MetricsUtils.register(recorders[i].getName(), recorders[i]::metrics);
         }
     }
 
@@ -115,12 +132,12 @@ public final class TaskBus {
             var session = task.getSession();
             var uid = session.getUid();
             if (uid <= 0) {
-                execute((int) session.getSid(), task);
+                execute(calTaskExecutorHash((int) session.getSid()), task, task.getPacket());
             } else {
-                execute(uid, task);
+                execute(calTaskExecutorHash(uid), task, task.getPacket());
             }
         } else {
-            execute(attachment.taskExecutorHash(), task);
+            execute(calTaskExecutorHash(attachment.taskExecutorHash()), task, task.getPacket());
         }
     }
 
@@ -142,13 +159,34 @@ public final class TaskBus {
     }
 
     public static void execute(int taskExecutorHash, Runnable runnable) {
-        executors[calTaskExecutorHash(taskExecutorHash)].execute(SafeRunnable.valueOf(runnable));
+        execute(calTaskExecutorHash(taskExecutorHash), runnable, null);
+    }
+
+    private static void execute(int index, Runnable runnable, Object source) {
+        var recorder = recorders[index];
+        try {
+            executors[index].execute(recorder.wrap(SafeRunnable.valueOf(runnable), source));
+        } catch (RejectedExecutionException e) {
+            recorder.recordRejected();
+            throw e;
+        }
     }
 
     public static void execute(Object argument, Runnable runnable) {
         execute(calTaskExecutorHash(argument), runnable);
     }
 
+    /**
+     * 所有task线程池的统计信息快照，包括队列中的任务数量，任务的等待时间和执行时间，正在执行的协议和执行最慢的协议
+     */
+    public static List<ExecutorMetrics> metrics() {
+        var list = new ArrayList<ExecutorMetrics>(recorders.length);
+        for (var recorder : recorders) {
+            list.add(recorder.metrics());
+        }
+        return list;
+    }
+
     // 在task，event，scheduler线程执行的异步请求，请求成功过后依然在相同的线程执行回调任务
     public static Executor currentThreadExecutor() {
         var threadId = Thread.currentThread().getId();
@@ -17,6 +17,7 @@ import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.zfoo.event.manager.EventBus;
+import com.zfoo.event.model.vo.EventPriorityEnum;
 import com.zfoo.protocol.collection.CollectionUtils;
 import com.zfoo.protocol.model.Pair;
 import com.zfoo.scheduler.manager.SchedulerBus;
@@ -111,7 +112,7 @@ public class SimpleCache<K, V> {
                     var result = batchLoadCallback.apply(list);
                     result.forEach(it -> cache.put(it.getKey(), it.getValue()));
                 }
-            });
+            }, EventPriorityEnum.BACKGROUND);
         }, refreshDuration, TimeUnit.MILLISECONDS);
 
 
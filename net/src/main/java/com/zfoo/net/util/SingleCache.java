@@ -14,6 +14,7 @@
 package com.zfoo.net.util;
 
 import com.zfoo.event.manager.EventBus;
+import com.zfoo.event.model.vo.EventPriorityEnum;
 import com.zfoo.scheduler.util.TimeUtils;
 
 import java.util.concurrent.locks.Lock;
@@ -61,7 +62,7 @@ public class SingleCache<V> {
             try {
                 if (now > refreshTime) {
                     refreshTime = now + refreshDuration;
-                    EventBus.asyncExecute(() -> cache = supplier.get());
+                    EventBus.asyncExecute(() -> cache = supplier.get(), EventPriorityEnum.BACKGROUND);
                 }
             } finally {
                 lock.unlock();
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.cache;
+
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.zfoo.orm.OrmContext;
+import com.zfoo.orm.cache.persister.PNode;
+import com.zfoo.orm.model.entity.IEntity;
+import com.zfoo.orm.model.vo.EntityCachesMetrics;
+import com.zfoo.orm.model.vo.EntityDef;
+import com.zfoo.orm.query.Page;
+import com.zfoo.protocol.collection.CollectionUtils;
+import com.zfoo.scheduler.util.TimeUtils;
+import com.zfoo.util.ThreadUtils;
+import com.zfoo.util.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 不同缓存实现共用的批量持久化和并发写检查
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public abstract class AbstractEntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> implements IEntityCaches<PK, E> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractEntityCaches.class);
+
+    private static final int BATCH_SIZE = 512;
+
+    protected final EntityDef entityDef;
+
+    // 统计信息，耗时的单位为纳秒
+    protected final Histogram loadHistogram = new Histogram();
+    protected final Histogram persistHistogram = new Histogram();
+    private final LongAdder totalPersistDocuments = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+    private volatile long lastPersistDocuments;
+
+    public AbstractEntityCaches(EntityDef entityDef) {
+        this.entityDef = entityDef;
+    }
+
+    /**
+     * @param dirtyCount         还没有写入数据库的实体数量，没有统计的时候为-1
+     * @param oldestWriteToDbTime 还没有写入数据库的实体中最早的一次写入数据库的时间，没有脏数据的时候为Long.MAX_VALUE
+     */
+    protected EntityCachesMetrics metrics(long size, long hitCount, long missCount, long evictionCount, long dirtyCount, long oldestWriteToDbTime) {
+        var oldestDirtyAge = dirtyCount < 0 ? -1 : (dirtyCount == 0 ? 0 : Math.max(0, TimeUtils.now() - oldestWriteToDbTime));
+        return EntityCachesMetrics.valueOf(entityDef.getClazz().getSimpleName(), size, hitCount, missCount, evictionCount
+                , loadHistogram.count(), nanoToMillis(loadHistogram.mean()), nanoToMillis(loadHistogram.percentile(0.99))
+                , persistHistogram.count(), nanoToMillis(persistHistogram.mean()), nanoToMillis(persistHistogram.percentile(0.99)), nanoToMillis(persistHistogram.max())
+                , lastPersistDocuments, totalPersistDocuments.sum(), fallbackCount.sum(), dirtyCount, oldestDirtyAge);
+    }
+
+    private static double nanoToMillis(long nano) {
+        return (double) nano * TimeUtils.MILLIS_PER_SECOND / TimeUtils.NANO_PER_SECOND;
+    }
+
+    /**
+     * 检查同一个实体是否被不同的线程更新
+     */
+    protected void checkConcurrentUpdate(PNode<E> currentPnode, E entity) {
+        var pnodeThreadId = currentPnode.getThreadId();
+        var currentThreadId = Thread.currentThread().getId();
+        if (pnodeThreadId != currentThreadId) {
+            if (pnodeThreadId == 0) {
+                currentPnode.setThreadId(currentThreadId);
+            } else {
+                var pnodeThread = ThreadUtils.findThread(pnodeThreadId);
+                if (pnodeThread == null) {
+                    logger.warn("[{}][id:{}]有并发写风险，第一次更新的线程[id:{}]，第2次更新的线程[id:{}]", entity.getClass().getSimpleName(), entity.id(), pnodeThreadId, currentThreadId);
+                } else {
+                    logger.warn("[{}][id:{}]有并发写风险，第一次更新的线程[id:{}][name:{}]，第2次更新的线程[id:{}][name:{}]"
+                            , entity.getClass().getSimpleName(), entity.id(), pnodeThreadId, pnodeThread.getName(), currentThreadId, Thread.currentThread().getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量写入数据库，批量写入失败的时候执行容错操作
+     */
+    protected void persistUpdateList(List<E> updateList) {
+        var startTime = System.nanoTime();
+        lastPersistDocuments = updateList.size();
+        totalPersistDocuments.add(updateList.size());
+
+        var page = Page.valueOf(1, BATCH_SIZE, updateList.size());
+        var maxPageSize = page.totalPage();
+
+        for (var currentPage = 1; currentPage <= maxPageSize; currentPage++) {
+            page.setPage(currentPage);
+            var currentUpdateList = page.currentPageList(updateList);
+            try {
+                var collection = OrmContext.getOrmManager().getCollection((Class<E>) entityDef.getClazz()).withWriteConcern(WriteConcern.ACKNOWLEDGED);
+
+                var batchList = currentUpdateList.stream()
+                        .map(it -> {
+                            var version = it.gvs();
+                            it.svs(version + 1);
+
+                            var filter = it.gvs() > 0
+                                    ? Filters.and(Filters.eq("_id", it.id()), Filters.eq("vs", version))
+                                    : Filters.eq("_id", it.id());
+
+                            return new ReplaceOneModel<>(filter, it);
+                        })
+                        .collect(Collectors.toList());
+
+                var result = collection.bulkWrite(batchList, new BulkWriteOptions().ordered(false));
+                if (result.getModifiedCount() == batchList.size()) {
+                    continue;
+                }
+
+                logger.error("在数据库[{}]的批量更新操作中需要更新的数量[{}]和最终更新的数量[{}]不相同，开始执行容错操作"
+                        , entityDef.getClazz().getSimpleName(), currentUpdateList.size(), result.getModifiedCount());
+                persistAllAndCompare(currentUpdateList);
+            } catch (Throwable t) {
+                logger.error("数据库[{}]批量更新操作未知异常，开始执行容错操作", entityDef.getClazz().getSimpleName(), t);
+                persistAllAndCompare(currentUpdateList);
+            }
+        }
+
+        persistHistogram.record(System.nanoTime() - startTime);
+    }
+
+    private void persistAllAndCompare(List<E> updateList) {
+        if (CollectionUtils.isEmpty(updateList)) {
+            return;
+        }
+
+        fallbackCount.increment();
+        var ids = updateList.stream().map(it -> it.id()).collect(Collectors.toList());
+
+        try {
+            var dbList = OrmContext.getQuery((Class<E>) entityDef.getClazz()).in("_id", ids).queryAll();
+            var dbMap = dbList.stream().collect(Collectors.toMap(key -> key.id(), value -> value));
+            for (var entity : updateList) {
+                var dbEntity = dbMap.get(entity.id());
+
+                if (dbEntity == null) {
+                    invalidate(entity.id());
+                    continue;
+                }
+
+                // 如果没有版本号，则写入数据库并清除缓存
+                if (entity.gvs() <= 0) {
+                    OrmContext.getAccessor().update(entity);
+                    invalidate(entity.id());
+                    continue;
+                }
+
+                // 如果版本号相同，说明已经更新到
+                if (dbEntity.gvs() == entity.gvs()) {
+                    invalidate(entity.id());
+                    continue;
+                }
+
+                // 如果数据库版本号较大，说明缓存的数据不是最新的，直接清除缓存，下次重新加载
+                if (dbEntity.gvs() > entity.gvs()) {
+                    invalidate(entity.id());
+                    continue;
+                }
+
+                // 如果数据库版本号较小，说明缓存的数据是最新的，直接写入数据库
+                if (dbEntity.gvs() < entity.gvs()) {
+                    OrmContext.getAccessor().update(entity);
+                    invalidate(entity.id());
+                    continue;
+                }
+            }
+        } catch (Throwable t) {
+            logger.error("数据库[{}]容错操作异常,", entityDef.getClazz().getSimpleName(), t);
+        }
+    }
+
+}
@@ -13,21 +13,17 @@
 package com.zfoo.orm.cache;
 
 import com.github.benmanes.caffeine.cache.*;
-import com.mongodb.WriteConcern;
-import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.ReplaceOneModel;
 import com.zfoo.orm.OrmContext;
 import com.zfoo.orm.model.entity.IEntity;
 import com.zfoo.orm.cache.persister.IOrmPersister;
 import com.zfoo.orm.cache.persister.PNode;
-import com.zfoo.orm.query.Page;
+import com.zfoo.orm.model.vo.EntityCachesMetrics;
 import com.zfoo.orm.model.vo.EntityDef;
 import com.zfoo.protocol.collection.CollectionUtils;
 import com.zfoo.protocol.util.AssertionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.scheduler.util.TimeUtils;
-import com.zfoo.util.ThreadUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
@@ -44,24 +40,20 @@ import java.util.stream.Collectors;
  * @author godotg
  * @version 3.0
  */
-public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> implements IEntityCaches<PK, E> {
+public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> extends AbstractEntityCaches<PK, E> {
 
     private static final Logger logger = LoggerFactory.getLogger(EntityCaches.class);
 
-    private static final int BATCH_SIZE = 512;
-
-    private final EntityDef entityDef;
-
     private final LoadingCache<PK, PNode<E>> cache;
 
     public EntityCaches(EntityDef entityDef) {
-        this.entityDef = entityDef;
+        super(entityDef);
 
         this.cache = Caffeine.newBuilder()
                 .expireAfterAccess(entityDef.getExpireMillisecond(), TimeUnit.MILLISECONDS)
                 .maximumSize(entityDef.getCacheSize())
                 .initialCapacity(CollectionUtils.comfortableCapacity(entityDef.getCacheSize()))
-                //.recordStats() // 开启统计信息开关，cache.stats()获取统计信息
+                .recordStats() // 开启统计信息开关，cache.stats()获取统计信息
                 .removalListener(new RemovalListener<PK, PNode<E>>() {
                     @Override
                     public void onRemoval(@Nullable PK pk, @Nullable PNode<E> pnode, @NonNull RemovalCause removalCause) {
@@ -89,7 +81,9 @@ public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> impl
                 .build(new CacheLoader<PK, PNode<E>>() {
                     @Override
                     public @Nullable PNode<E> load(@NonNull PK pk) {
+                        var startTime = System.nanoTime();
                         var entity = (E) OrmContext.getAccessor().load(pk, (Class<IEntity<?>>) entityDef.getClazz());
+                        loadHistogram.record(System.nanoTime() - startTime);
 
                         // 如果数据库中不存在则给一个默认值
                         if (entity == null) {
@@ -143,21 +137,7 @@ public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> impl
             cache.put(entity.id(), currentPnode);
         }
 
-        var pnodeThreadId = currentPnode.getThreadId();
-        var currentThreadId = Thread.currentThread().getId();
-        if (pnodeThreadId != currentThreadId) {
-            if (pnodeThreadId == 0) {
-                currentPnode.setThreadId(currentThreadId);
-            } else {
-                var pnodeThread = ThreadUtils.findThread(pnodeThreadId);
-                if (pnodeThread == null) {
-                    logger.warn("[{}][id:{}]有并发写风险，第一次更新的线程[id:{}]，第2次更新的线程[id:{}]", entity.getClass().getSimpleName(), entity.id(), pnodeThreadId, currentThreadId);
-                } else {
-                    logger.warn("[{}][id:{}]有并发写风险，第一次更新的线程[id:{}][name:{}]，第2次更新的线程[id:{}][name:{}]"
-                            , entity.getClass().getSimpleName(), entity.id(), pnodeThreadId, pnodeThread.getName(), currentThreadId, Thread.currentThread().getName());
-                }
-            }
-        }
+        checkConcurrentUpdate(currentPnode, entity);
 
         // 加100以防止，立刻加载并且立刻修改数据的情况发生时，服务器取到的时间戳相同
         currentPnode.setModifiedTime(TimeUtils.now() + 100);
@@ -202,42 +182,7 @@ public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> impl
                 return;
             }
 
-            var page = Page.valueOf(1, BATCH_SIZE, updateList.size());
-            var maxPageSize = page.totalPage();
-
-            for (var currentPage = 1; currentPage <= maxPageSize; currentPage++) {
-                page.setPage(currentPage);
-                var currentUpdateList = page.currentPageList(updateList);
-                try {
-                    var collection = OrmContext.getOrmManager().getCollection((Class<E>) entityDef.getClazz()).withWriteConcern(WriteConcern.ACKNOWLEDGED);
-
-                    var batchList = currentUpdateList.stream()
-                            .map(it -> {
-                                var version = it.gvs();
-                                it.svs(version + 1);
-
-                                var filter = it.gvs() > 0
-                                        ? Filters.and(Filters.eq("_id", it.id()), Filters.eq("vs", version))
-                                        : Filters.eq("_id", it.id());
-
-                                return new ReplaceOneModel<>(filter, it);
-                            })
-                            .collect(Collectors.toList());
-
-                    var result = collection.bulkWrite(batchList, new BulkWriteOptions().ordered(false));
-                    if (result.getModifiedCount() == batchList.size()) {
-                        continue;
-                    }
-
-                    logger.error("在数据库[{}]的批量更新操作中需要更新的数量[{}]和最终更新的数量[{}]不相同，开始执行容错操作"
-                            , entityDef.getClazz().getSimpleName(), currentUpdateList.size(), result.getModifiedCount());
-                    persistAllAndCompare(currentUpdateList);
-                } catch (Throwable t) {
-                    logger.error("数据库[{}]批量更新操作未知异常，开始执行容错操作", entityDef.getClazz().getSimpleName(), t);
-                    persistAllAndCompare(currentUpdateList);
-                }
-            }
-
+            persistUpdateList(updateList);
             updateList.clear();
 
         } catch (Exception e) {
@@ -248,55 +193,6 @@ public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> impl
         }
     }
 
-    private void persistAllAndCompare(List<E> updateList) {
-        if (CollectionUtils.isEmpty(updateList)) {
-            return;
-        }
-
-        var ids = updateList.stream().map(it -> it.id()).collect(Collectors.toList());
-
-        try {
-            var dbList = OrmContext.getQuery((Class<E>) entityDef.getClazz()).in("_id", ids).queryAll();
-            var dbMap = dbList.stream().collect(Collectors.toMap(key -> key.id(), value -> value));
-            for (var entity : updateList) {
-                var dbEntity = dbMap.get(entity.id());
-
-                if (dbEntity == null) {
-                    cache.invalidate(entity.id());
-                    continue;
-                }
-
-                // 如果没有版本号，则写入数据库并清除缓存
-                if (entity.gvs() <= 0) {
-                    OrmContext.getAccessor().update(entity);
-                    cache.invalidate(entity.id());
-                    continue;
-                }
-
-                // 如果版本号相同，说明已经更新到
-                if (dbEntity.gvs() == entity.gvs()) {
-                    cache.invalidate(entity.id());
-                    continue;
-                }
-
-                // 如果数据库版本号较大，说明缓存的数据不是最新的，直接清除缓存，下次重新加载
-                if (dbEntity.gvs() > entity.gvs()) {
-                    cache.invalidate(entity.id());
-                    continue;
-                }
-
-                // 如果数据库版本号较小，说明缓存的数据是最新的，直接写入数据库
-                if (dbEntity.gvs() < entity.gvs()) {
-                    OrmContext.getAccessor().update(entity);
-                    cache.invalidate(entity.id());
-                    continue;
-                }
-            }
-        } catch (Throwable t) {
-            logger.error("数据库[{}]容错操作异常,", entityDef.getClazz().getSimpleName(), t);
-        }
-    }
-
     @Override
     public List<E> allPresentCaches() {
         var allPnodes = cache.asMap().values();
@@ -324,4 +220,22 @@ public class EntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> impl
                 , entityDef.getClazz().getSimpleName(), stats.hitRate(), stats.hitCount(), stats.loadCount(), stats.averageLoadPenalty() / TimeUtils.NANO_PER_SECOND, stats.evictionCount());
     }
 
+    @Override
+    public EntityCachesMetrics metrics(boolean scanDirty) {
+        var stats = cache.stats();
+        if (!scanDirty) {
+            return metrics(cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.evictionCount(), -1, Long.MAX_VALUE);
+        }
+        // 遍历整个缓存
+        var dirtyCount = 0L;
+        var oldestWriteToDbTime = Long.MAX_VALUE;
+        for (var pnode : cache.asMap().values()) {
+            if (pnode.getModifiedTime() != pnode.getWriteToDbTime()) {
+                dirtyCount++;
+                oldestWriteToDbTime = Math.min(oldestWriteToDbTime, pnode.getWriteToDbTime());
+            }
+        }
+        return metrics(cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.evictionCount(), dirtyCount, oldestWriteToDbTime);
+    }
+
 }
@@ -13,6 +13,7 @@
 package com.zfoo.orm.cache;
 
 import com.zfoo.orm.model.entity.IEntity;
+import com.zfoo.orm.model.vo.EntityCachesMetrics;
 
 import java.util.List;
 import java.util.function.BiConsumer;
@@ -45,6 +46,20 @@ public interface IEntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>>
      */
     void persistAll();
 
+    /**
+     * 持久化切片的数量，每个切片可以单独的持久化，默认整个缓存是一个切片
+     */
+    default int sliceSize() {
+        return 1;
+    }
+
+    /**
+     * 持久化一个切片的缓存数据
+     */
+    default void persistSlice(int slice) {
+        persistAll();
+    }
+
     /**
      * 获取所有存在的缓存对象
      */
@@ -59,4 +74,18 @@ public interface IEntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>>
      */
     String recordStatus();
 
+    /**
+     * 缓存和持久化的统计信息快照，包括命中率，加载耗时，持久化耗时，写入的文档数量，容错次数和脏数据的积压情况
+     * <p>
+     * 统计脏数据需要遍历整个缓存，开销和缓存的数量成正比，周期性的输出（例如monitor）使用metrics(false)
+     */
+    default EntityCachesMetrics metrics() {
+        return metrics(true);
+    }
+
+    /**
+     * @param scanDirty 是否遍历缓存统计脏数据，false的时候dirtyCount和oldestDirtyAgeMillis为-1
+     */
+    EntityCachesMetrics metrics(boolean scanDirty);
+
 }
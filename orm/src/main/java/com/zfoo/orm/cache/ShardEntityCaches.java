@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.cache;
+
+import com.zfoo.orm.OrmContext;
+import com.zfoo.orm.cache.persister.IOrmPersister;
+import com.zfoo.orm.cache.persister.PNode;
+import com.zfoo.orm.model.entity.IEntity;
+import com.zfoo.orm.model.vo.EntityCachesMetrics;
+import com.zfoo.orm.model.vo.EntityDef;
+import com.zfoo.protocol.collection.CollectionUtils;
+import com.zfoo.protocol.util.AssertionUtils;
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.scheduler.util.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 分片缓存，使用和TaskBus.calTaskExecutorHash()相同的hash算法把实体分配到不同的分片，分片数量一般配置为TaskBus的线程数量。
+ * <p>
+ * 同一个玩家的请求总是在同一个Task线程处理，所以每个分片只会被一个Task线程访问，分片内部使用普通的LinkedHashMap，分片之间没有任何竞争。
+ * orm不依赖net，无法保证只有分片对应的Task线程访问分片，event和scheduler线程也可以合法的加载和更新实体，
+ * 所以每个分片还是有一个锁，实体的访问满足线程亲和性的时候只有这个分片的持久化切片会和Task线程竞争这个锁，平时都是无竞争的加锁。
+ * <p>
+ * 每个分片是一个单独的持久化切片，持久化器把每个切片放到不同的event线程中写入数据库，一个分片写数据库不会阻塞其它的分片。
+ * 被淘汰或者被清除的脏数据不会在Task线程中写入数据库，而是放到分片的待写入队列，由下一次持久化统一批量写入。
+ * 正在写入数据库的实体在写入完成之前一直可以被加载到，避免从数据库中加载到旧的数据。
+ * <p>
+ * 缓存的过期时间和Caffeine的expireAfterAccess一样从最后一次访问开始计算。
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class ShardEntityCaches<PK extends Comparable<PK>, E extends IEntity<PK>> extends AbstractEntityCaches<PK, E> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardEntityCaches.class);
+
+    private final Shard<PK, E>[] shards;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private static class ShardNode<E extends IEntity<?>> extends PNode<E> {
+        // 最近一次访问的时间，用来计算过期
+        private long accessTime;
+
+        public ShardNode(E entity) {
+            super(entity);
+            this.accessTime = getModifiedTime();
+        }
+    }
+
+    private static class Shard<PK, E extends IEntity<?>> {
+        private final Map<PK, ShardNode<E>> cache;
+
+        // 已经从缓存中移除但是还没有写入数据库的实体
+        private final Map<PK, E> pendingMap = new HashMap<>();
+
+        // 正在写入数据库的实体，写入完成之后才会移除
+        private final Map<PK, E> inflightMap = new HashMap<>();
+
+        // 同一个分片的持久化不能同时执行，比如定时持久化和停服时的持久化
+        private final Object persistLock = new Object();
+
+        private long evictionCount;
+
+        public Shard(int maxSize) {
+            this.cache = new LinkedHashMap<>(CollectionUtils.comfortableCapacity(maxSize), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PK, ShardNode<E>> eldest) {
+                    if (size() <= maxSize) {
+                        return false;
+                    }
+                    evictionCount++;
+                    removePnode(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        private void removePnode(PK pk, PNode<E> pnode) {
+            if (pnode.getWriteToDbTime() != pnode.getModifiedTime()) {
+                pendingMap.put(pk, pnode.getEntity());
+            }
+        }
+    }
+
+    public ShardEntityCaches(EntityDef entityDef) {
+        super(entityDef);
+
+        var shardNum = entityDef.getShard();
+        var shardSize = Math.max(1, entityDef.getCacheSize() / shardNum);
+        this.shards = new Shard[shardNum];
+        for (var i = 0; i < shardNum; i++) {
+            shards[i] = new Shard<>(shardSize);
+        }
+
+        var persisterDef = entityDef.getPersisterStrategy();
+        IOrmPersister persister = persisterDef.getType().createPersister(entityDef, this);
+        persister.start();
+    }
+
+    /**
+     * 和TaskBus.calTaskExecutorHash(Object argument)的算法保持一致
+     */
+    private Shard<PK, E> shard(PK pk) {
+        var hash = (pk instanceof Number) ? ((Number) pk).intValue() : pk.hashCode();
+        return shards[Math.abs(hash % shards.length)];
+    }
+
+    @Override
+    public E load(PK pk) {
+        AssertionUtils.notNull(pk);
+        var shard = shard(pk);
+        synchronized (shard) {
+            var pnode = shard.cache.get(pk);
+            if (pnode != null) {
+                hitCount.increment();
+                pnode.accessTime = TimeUtils.now();
+                return pnode.getEntity();
+            }
+
+            // 还没有写入数据库的实体重新放回缓存，避免从数据库中加载到旧的数据
+            var pendingEntity = shard.pendingMap.remove(pk);
+            if (pendingEntity != null) {
+                pnode = new ShardNode<>(pendingEntity);
+                pnode.setModifiedTime(TimeUtils.now() + 100);
+                shard.cache.put(pk, pnode);
+                return pendingEntity;
+            }
+
+            // 正在写入数据库的实体重新放回缓存，正在执行的持久化会写入这个实体，所以不是脏数据
+            var inflightEntity = shard.inflightMap.get(pk);
+            if (inflightEntity != null) {
+                shard.cache.put(pk, new ShardNode<>(inflightEntity));
+                return inflightEntity;
+            }
+        }
+
+        // 在锁外面加载数据库，不阻塞持久化线程
+        missCount.increment();
+        E entity = null;
+        try {
+            var startTime = System.nanoTime();
+            entity = (E) OrmContext.getAccessor().load(pk, (Class<IEntity<?>>) entityDef.getClazz());
+            loadHistogram.record(System.nanoTime() - startTime);
+        } catch (Throwable t) {
+            logger.error("数据库[{}]缓存[pk:{}]加载发生异常，返回默认值", entityDef.getClazz().getSimpleName(), pk, t);
+        }
+
+        // 如果数据库中不存在则给一个默认值
+        if (entity == null) {
+            entity = (E) entityDef.newEntity(pk);
+        }
+
+        synchronized (shard) {
+            var previousPnode = shard.cache.putIfAbsent(pk, new ShardNode<>(entity));
+            return previousPnode == null ? entity : previousPnode.getEntity();
+        }
+    }
+
+    @Override
+    public void update(E entity) {
+        AssertionUtils.notNull(entity);
+        var pk = entity.id();
+        var shard = shard(pk);
+
+        ShardNode<E> currentPnode;
+        synchronized (shard) {
+            currentPnode = shard.cache.get(pk);
+            if (currentPnode == null) {
+                shard.pendingMap.remove(pk);
+                currentPnode = new ShardNode<>(entity);
+                shard.cache.put(pk, currentPnode);
+            }
+            currentPnode.accessTime = TimeUtils.now();
+        }
+
+        checkConcurrentUpdate(currentPnode, entity);
+
+        // 加100以防止，立刻加载并且立刻修改数据的情况发生时，服务器取到的时间戳相同
+        currentPnode.setModifiedTime(TimeUtils.now() + 100);
+    }
+
+    @Override
+    public void invalidate(PK pk) {
+        AssertionUtils.notNull(pk);
+        var shard = shard(pk);
+        synchronized (shard) {
+            var pnode = shard.cache.remove(pk);
+            if (pnode != null) {
+                shard.removePnode(pk, pnode);
+            }
+        }
+    }
+
+    @Override
+    public void persistAll() {
+        for (var i = 0; i < shards.length; i++) {
+            persistSlice(i);
+        }
+    }
+
+    @Override
+    public int sliceSize() {
+        return shards.length;
+    }
+
+    /**
+     * 持久化一个分片
+     */
+    @Override
+    public void persistSlice(int slice) {
+        var shard = shards[slice];
+        synchronized (shard.persistLock) {
+            try {
+                var updateList = new ArrayList<E>();
+                var currentTime = TimeUtils.currentTimeMillis();
+                // 只在锁里面收集需要更新的实体，写数据库的时候不持有锁
+                synchronized (shard) {
+                    updateList.addAll(shard.pendingMap.values());
+                    shard.pendingMap.clear();
+
+                    var iterator = shard.cache.values().iterator();
+                    while (iterator.hasNext()) {
+                        var pnode = iterator.next();
+                        if (pnode.getModifiedTime() != pnode.getWriteToDbTime()) {
+                            pnode.setWriteToDbTime(currentTime);
+                            pnode.setModifiedTime(currentTime);
+                            updateList.add(pnode.getEntity());
+                            continue;
+                        }
+
+                        if (currentTime - pnode.accessTime >= entityDef.getExpireMillisecond()) {
+                            iterator.remove();
+                        }
+                    }
+
+                    updateList.forEach(it -> shard.inflightMap.put(it.id(), it));
+                }
+
+                if (updateList.isEmpty()) {
+                    return;
+                }
+
+                try {
+                    persistUpdateList(updateList);
+                } finally {
+                    synchronized (shard) {
+                        updateList.forEach(it -> shard.inflightMap.remove(it.id(), it));
+                    }
+                }
+            } catch (Throwable t) {
+                logger.error("数据库持久化器[{}]的分片[{}]持久化过程中异常退出", entityDef.getClazz().getSimpleName(), slice, t);
+            }
+        }
+    }
+
+    @Override
+    public List<E> allPresentCaches() {
+        var list = new ArrayList<E>();
+        for (var shard : shards) {
+            synchronized (shard) {
+                shard.cache.values().forEach(it -> list.add(it.getEntity()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void forEach(BiConsumer<PK, E> biConsumer) {
+        for (var shard : shards) {
+            List<ShardNode<E>> pnodes;
+            synchronized (shard) {
+                pnodes = new ArrayList<>(shard.cache.values());
+            }
+            pnodes.forEach(it -> biConsumer.accept(it.getEntity().id(), it.getEntity()));
+        }
+    }
+
+    @Override
+    public long size() {
+        var size = 0L;
+        for (var shard : shards) {
+            synchronized (shard) {
+                size += shard.cache.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String recordStatus() {
+        var pendingSize = 0L;
+        for (var shard : shards) {
+            synchronized (shard) {
+                pendingSize += shard.pendingMap.size();
+            }
+        }
+        return StringUtils.format("数据库[{}]分片缓存[shard:{}]，缓存数量[size:{}]，等待写入数据库的数量[pending:{}]"
+                , entityDef.getClazz().getSimpleName(), shards.length, size(), pendingSize);
+    }
+
+    @Override
+    public EntityCachesMetrics metrics(boolean scanDirty) {
+        var size = 0L;
+        var evictionCount = 0L;
+        var dirtyCount = scanDirty ? 0L : -1L;
+        var oldestWriteToDbTime = Long.MAX_VALUE;
+        for (var shard : shards) {
+            synchronized (shard) {
+                size += shard.cache.size();
+                evictionCount += shard.evictionCount;
+                if (!scanDirty) {
+                    continue;
+                }
+                // 遍历分片的缓存，持有分片的锁
+                for (var pnode : shard.cache.values()) {
+                    if (pnode.getModifiedTime() != pnode.getWriteToDbTime()) {
+                        dirtyCount++;
+                        oldestWriteToDbTime = Math.min(oldestWriteToDbTime, pnode.getWriteToDbTime());
+                    }
+                }
+                // 已经被淘汰但是还没有写入数据库的实体也是脏数据，下一次持久化一定会写入
+                dirtyCount += shard.pendingMap.size();
+            }
+        }
+        return metrics(size, hitCount.sum(), missCount.sum(), evictionCount, dirtyCount, oldestWriteToDbTime);
+    }
+
+}
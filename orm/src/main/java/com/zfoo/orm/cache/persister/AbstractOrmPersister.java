@@ -13,8 +13,14 @@
 
 package com.zfoo.orm.cache.persister;
 
-import com.zfoo.orm.cache.EntityCaches;
+import com.zfoo.event.manager.EventBus;
+import com.zfoo.event.model.vo.EventPriorityEnum;
+import com.zfoo.orm.cache.IEntityCaches;
 import com.zfoo.orm.model.vo.EntityDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author godotg
@@ -22,14 +28,56 @@ import com.zfoo.orm.model.vo.EntityDef;
  */
 public abstract class AbstractOrmPersister implements IOrmPersister {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractOrmPersister.class);
+
     protected EntityDef entityDef;
 
-    protected EntityCaches<?, ?> entityCaches;
+    protected IEntityCaches<?, ?> entityCaches;
+
+    /**
+     * 每个切片是否有还没有开始执行的持久化任务，有的话不用重复提交，等待执行的任务会把这段时间的修改一起写入数据库
+     */
+    private final AtomicBoolean[] pendingSlices;
 
 
-    public AbstractOrmPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches) {
+    public AbstractOrmPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches) {
         this.entityDef = entityDef;
         this.entityCaches = entityCaches;
+        this.pendingSlices = new AtomicBoolean[entityCaches.sliceSize()];
+        for (var i = 0; i < pendingSlices.length; i++) {
+            pendingSlices[i] = new AtomicBoolean(false);
+        }
+    }
+
+    /**
+     * 每个持久化切片在不同的event线程中写入数据库，分片缓存的每一个分片是一个切片
+     * <p>
+     * 在scheduler的线程中调用，BACKGROUND队列满了的时候不能阻塞scheduler的线程，这次的切片直接跳过，
+     * 没有写入的修改还在缓存中，下一次定时持久化的时候一起写入
+     */
+    protected void persist() {
+        var hash = entityDef.getClazz().hashCode();
+        for (var i = 0; i < pendingSlices.length; i++) {
+            var slice = i;
+            var pending = pendingSlices[slice];
+            if (!pending.compareAndSet(false, true)) {
+                continue;
+            }
+            boolean submitted;
+            try {
+                submitted = EventBus.tryExecute(hash + slice, () -> {
+                    pending.set(false);
+                    entityCaches.persistSlice(slice);
+                }, EventPriorityEnum.BACKGROUND);
+            } catch (RuntimeException e) {
+                pending.set(false);
+                throw e;
+            }
+            if (!submitted) {
+                pending.set(false);
+                logger.warn("[{}] persist slice [{}] is skipped because the background queue is full, it will be persisted next time", entityDef.getClazz().getSimpleName(), slice);
+            }
+        }
     }
 
 }
@@ -13,9 +13,8 @@
 
 package com.zfoo.orm.cache.persister;
 
-import com.zfoo.event.manager.EventBus;
 import com.zfoo.orm.OrmContext;
-import com.zfoo.orm.cache.EntityCaches;
+import com.zfoo.orm.cache.IEntityCaches;
 import com.zfoo.orm.model.vo.EntityDef;
 import com.zfoo.protocol.exception.ExceptionUtils;
 import com.zfoo.scheduler.manager.SchedulerBus;
@@ -44,8 +43,13 @@ public class CronOrmPersister extends AbstractOrmPersister {
      */
     private final CronExpression cronExpression;
 
+    /**
+     * 下一次持久化的时间
+     */
+    private long triggerTimestamp;
+
 
-    public CronOrmPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches) {
+    public CronOrmPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches) {
         super(entityDef, entityCaches);
         this.cronExpression = CronExpression.parse(entityDef.getPersisterStrategy().getConfig());
     }
@@ -59,8 +63,10 @@ public class CronOrmPersister extends AbstractOrmPersister {
     private void schedulePersist() {
         var delay = 0L;
         try {
-            var now = TimeUtils.now();
-            var nextTimestamp = TimeUtils.nextTimestampByCronExpression(cronExpression, now);
+            var now = TimeUtils.currentTimeMillis();
+            // 从上一次的触发时间开始计算，避免定时器比系统时间早一点触发的时候同一个时间点持久化两次
+            var nextTimestamp = TimeUtils.nextTimestampByCronExpression(cronExpression, Math.max(now, triggerTimestamp));
+            triggerTimestamp = nextTimestamp;
             delay = nextTimestamp - now;
 
             if (delay < 0) {
@@ -75,12 +81,12 @@ public class CronOrmPersister extends AbstractOrmPersister {
 
         if (!OrmContext.isStop()) {
             SchedulerBus.schedule(() -> {
-                if (!OrmContext.isStop()) {
-                    EventBus.execute(entityDef.getClazz().hashCode(), () -> {
-                        entityCaches.persistAll();
-                        schedulePersist();
-                    });
+                if (OrmContext.isStop()) {
+                    return;
                 }
+                // 在scheduler的回调中放入下一次的定时任务，持久化任务提交失败也不会中断之后的持久化
+                schedulePersist();
+                persist();
             }, delay, TimeUnit.MILLISECONDS);
         }
     }
@@ -13,9 +13,8 @@
 
 package com.zfoo.orm.cache.persister;
 
-import com.zfoo.event.manager.EventBus;
 import com.zfoo.orm.OrmContext;
-import com.zfoo.orm.cache.EntityCaches;
+import com.zfoo.orm.cache.IEntityCaches;
 import com.zfoo.orm.model.vo.EntityDef;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.scheduler.manager.SchedulerBus;
@@ -33,7 +32,7 @@ public class TimeOrmPersister extends AbstractOrmPersister {
      */
     private final long rate;
 
-    public TimeOrmPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches) {
+    public TimeOrmPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches) {
         super(entityDef, entityCaches);
         this.rate = Long.parseLong(entityDef.getPersisterStrategy().getConfig());
         if (this.rate <= 0) {
@@ -45,7 +44,7 @@ public class TimeOrmPersister extends AbstractOrmPersister {
     public void start() {
         SchedulerBus.scheduleAtFixedRate(() -> {
             if (!OrmContext.isStop()) {
-                EventBus.execute(entityDef.getClazz().hashCode(), () -> entityCaches.persistAll());
+                persist();
             }
         }, rate, TimeUnit.MILLISECONDS);
     }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.codec;
+
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+
+/**
+ * 增强的Codec中使用的读取方法，数字类型的读取和PojoCodec保持一致，兼容数据库中不同的数字存储类型
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public abstract class CodecUtils {
+
+    public static boolean readBoolean(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return false;
+        }
+        return reader.readBoolean();
+    }
+
+    public static byte readByte(BsonReader reader) {
+        return (byte) readInt(reader);
+    }
+
+    public static short readShort(BsonReader reader) {
+        return (short) readInt(reader);
+    }
+
+    public static int readInt(BsonReader reader) {
+        var bsonType = reader.getCurrentBsonType();
+        switch (bsonType) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return (int) reader.readInt64();
+            case DOUBLE:
+                return (int) reader.readDouble();
+            case DECIMAL128:
+                return reader.readDecimal128().bigDecimalValue().intValue();
+            case NULL:
+                reader.readNull();
+                return 0;
+            default:
+                throw new BsonInvalidOperationException("Invalid numeric type, found: " + bsonType);
+        }
+    }
+
+    public static long readLong(BsonReader reader) {
+        var bsonType = reader.getCurrentBsonType();
+        switch (bsonType) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DOUBLE:
+                return (long) reader.readDouble();
+            case DECIMAL128:
+                return reader.readDecimal128().bigDecimalValue().longValue();
+            case NULL:
+                reader.readNull();
+                return 0L;
+            default:
+                throw new BsonInvalidOperationException("Invalid numeric type, found: " + bsonType);
+        }
+    }
+
+    public static float readFloat(BsonReader reader) {
+        return (float) readDouble(reader);
+    }
+
+    public static double readDouble(BsonReader reader) {
+        var bsonType = reader.getCurrentBsonType();
+        switch (bsonType) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DOUBLE:
+                return reader.readDouble();
+            case DECIMAL128:
+                return reader.readDecimal128().bigDecimalValue().doubleValue();
+            case NULL:
+                reader.readNull();
+                return 0D;
+            default:
+                throw new BsonInvalidOperationException("Invalid numeric type, found: " + bsonType);
+        }
+    }
+
+    public static char readChar(BsonReader reader) {
+        var value = readString(reader);
+        if (value == null || value.isEmpty()) {
+            return Character.MIN_VALUE;
+        }
+        return value.charAt(0);
+    }
+
+    public static String readString(BsonReader reader) {
+        var bsonType = reader.getCurrentBsonType();
+        switch (bsonType) {
+            case NULL:
+                reader.readNull();
+                return null;
+            case SYMBOL:
+                return reader.readSymbol();
+            default:
+                return reader.readString();
+        }
+    }
+
+}
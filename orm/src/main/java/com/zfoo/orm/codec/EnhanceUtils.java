@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.codec;
+
+import com.zfoo.orm.model.entity.IEntity;
+import com.zfoo.orm.model.vo.EntityDef;
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.ReflectionUtils;
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.util.security.IdUtils;
+import javassist.*;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 为每一个Entity生成一个Codec，直接调用get和set方法读写BsonWriter和BsonReader，避免PojoCodec的反射开销
+ * <p>
+ * 基本类型和String直接读写，其它类型的属性使用启动时就确定好的Codec，生成的文档格式和PojoCodec保持一致
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public abstract class EnhanceUtils {
+
+    private static final String ID = "_id";
+
+    static {
+        // 适配Tomcat，因为Tomcat不是用的默认的类加载器，而Javassist用的是默认的加载器
+        var classArray = new Class<?>[]{
+                IEntity.class,
+                Codec.class,
+                BsonWriter.class,
+                BsonReader.class,
+                EncoderContext.class,
+                DecoderContext.class,
+                CodecUtils.class
+        };
+
+        var classPool = ClassPool.getDefault();
+
+        for (var clazz : classArray) {
+            if (classPool.find(clazz.getCanonicalName()) == null) {
+                ClassClassPath classPath = new ClassClassPath(clazz);
+                classPool.insertClassPath(classPath);
+            }
+        }
+    }
+
+    public static Codec<?> createEntityCodec(EntityDef entityDef, CodecRegistry registry) throws NotFoundException, CannotCompileException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        var classPool = ClassPool.getDefault();
+        var clazz = entityDef.getClazz();
+
+        if (classPool.find(clazz.getCanonicalName()) == null) {
+            classPool.insertClassPath(new ClassClassPath(clazz));
+        }
+
+        var fields = ReflectionUtils.notStaticAndTransientFields(clazz);
+        var codecs = new ArrayList<Codec<?>>();
+        var fieldCodecIndexes = new int[fields.size()];
+        for (var i = 0; i < fields.size(); i++) {
+            var field = fields.get(i);
+            if (isDirectType(field.getType())) {
+                fieldCodecIndexes[i] = -1;
+            } else {
+                fieldCodecIndexes[i] = codecs.size();
+                codecs.add(fieldCodec(field.getGenericType(), registry));
+            }
+        }
+
+        // 定义类名称
+        CtClass enhanceClazz = classPool.makeClass(EnhanceUtils.class.getCanonicalName() + clazz.getSimpleName() + IdUtils.getLocalIntId());
+        enhanceClazz.addInterface(classPool.get(Codec.class.getCanonicalName()));
+
+        // 定义类中的一个成员
+        CtField codecsField = new CtField(classPool.get(Codec[].class.getCanonicalName()), "codecs", enhanceClazz);
+        codecsField.setModifiers(Modifier.PRIVATE);
+        enhanceClazz.addField(codecsField);
+
+        // 定义类的构造器
+        CtConstructor constructor = new CtConstructor(classPool.get(new String[]{Codec[].class.getCanonicalName()}), enhanceClazz);
+        constructor.setBody("{this.codecs=$1;}");
+        constructor.setModifiers(Modifier.PUBLIC);
+        enhanceClazz.addConstructor(constructor);
+
+        // 定义类实现的接口方法
+        CtMethod encodeMethod = new CtMethod(classPool.get(void.class.getCanonicalName()), "encode"
+                , classPool.get(new String[]{BsonWriter.class.getCanonicalName(), Object.class.getCanonicalName(), EncoderContext.class.getCanonicalName()}), enhanceClazz);
+        encodeMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        encodeMethod.setBody(encodeMethodBody(clazz, fields, fieldCodecIndexes));
+        enhanceClazz.addMethod(encodeMethod);
+
+        CtMethod decodeMethod = new CtMethod(classPool.get(Object.class.getCanonicalName()), "decode"
+                , classPool.get(new String[]{BsonReader.class.getCanonicalName(), DecoderContext.class.getCanonicalName()}), enhanceClazz);
+        decodeMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        decodeMethod.setBody(decodeMethodBody(clazz, fields, fieldCodecIndexes));
+        enhanceClazz.addMethod(decodeMethod);
+
+        CtMethod encoderClassMethod = new CtMethod(classPool.get(Class.class.getCanonicalName()), "getEncoderClass", null, enhanceClazz);
+        encoderClassMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        encoderClassMethod.setBody("{return " + clazz.getCanonicalName() + ".class;}");
+        enhanceClazz.addMethod(encoderClassMethod);
+
+        // 释放缓存
+        enhanceClazz.detach();
+
+        Class<?> resultClazz = enhanceClazz.toClass(EnhanceUtils.class);
+        Constructor<?> resultConstructor = resultClazz.getConstructor(Codec[].class);
+        return (Codec<?>) resultConstructor.newInstance((Object) codecs.toArray(new Codec<?>[0]));
+    }
+
+    // see: PojoCodecImpl.encode()
+    private static String encodeMethodBody(Class<?> clazz, List<Field> fields, int[] fieldCodecIndexes) {
+        var clazzName = clazz.getCanonicalName();
+        var builder = new StringBuilder();
+        builder.append("{").append(clazzName + " entity = (" + clazzName + ")$2;");
+        builder.append("$1.writeStartDocument();");
+        for (var i = 0; i < fields.size(); i++) {
+            var field = fields.get(i);
+            var fieldType = field.getType();
+            var bsonName = bsonName(field);
+            var value = "value" + i;
+            var getValue = "entity." + ReflectionUtils.fieldToGetMethod(clazz, field) + "()";
+
+            if (fieldType == boolean.class) {
+                builder.append(StringUtils.format("$1.writeBoolean(\"{}\", {});", bsonName, getValue));
+            } else if (fieldType == byte.class || fieldType == short.class || fieldType == int.class) {
+                builder.append(StringUtils.format("$1.writeInt32(\"{}\", (int) {});", bsonName, getValue));
+            } else if (fieldType == long.class) {
+                builder.append(StringUtils.format("$1.writeInt64(\"{}\", {});", bsonName, getValue));
+            } else if (fieldType == float.class || fieldType == double.class) {
+                builder.append(StringUtils.format("$1.writeDouble(\"{}\", (double) {});", bsonName, getValue));
+            } else if (fieldType == char.class) {
+                builder.append(StringUtils.format("$1.writeString(\"{}\", String.valueOf({}));", bsonName, getValue));
+            } else if (fieldType == Byte.class || fieldType == Short.class || fieldType == Integer.class) {
+                builder.append(StringUtils.format("{} {} = {};", fieldType.getCanonicalName(), value, getValue));
+                builder.append(StringUtils.format("if ({} != null) {$1.writeInt32(\"{}\", {}.intValue());}", value, bsonName, value));
+            } else if (fieldType == Long.class) {
+                builder.append(StringUtils.format("{} {} = {};", fieldType.getCanonicalName(), value, getValue));
+                builder.append(StringUtils.format("if ({} != null) {$1.writeInt64(\"{}\", {}.longValue());}", value, bsonName, value));
+            } else if (fieldType == Float.class || fieldType == Double.class) {
+                builder.append(StringUtils.format("{} {} = {};", fieldType.getCanonicalName(), value, getValue));
+                builder.append(StringUtils.format("if ({} != null) {$1.writeDouble(\"{}\", {}.doubleValue());}", value, bsonName, value));
+            } else if (fieldType == String.class) {
+                builder.append(StringUtils.format("String {} = {};", value, getValue));
+                builder.append(StringUtils.format("if ({} != null) {$1.writeString(\"{}\", {});}", value, bsonName, value));
+            } else {
+                builder.append(StringUtils.format("Object {} = {};", value, getValue));
+                builder.append(StringUtils.format("if ({} != null) {$1.writeName(\"{}\"); $3.encodeWithChildContext(this.codecs[{}], $1, {});}"
+                        , value, bsonName, fieldCodecIndexes[i], value));
+            }
+        }
+        builder.append("$1.writeEndDocument();");
+        builder.append("}");
+        return builder.toString();
+    }
+
+    // see: PojoCodecImpl.decode()
+    private static String decodeMethodBody(Class<?> clazz, List<Field> fields, int[] fieldCodecIndexes) {
+        var clazzName = clazz.getCanonicalName();
+        var codecUtils = CodecUtils.class.getCanonicalName();
+        var bsonType = BsonType.class.getCanonicalName();
+        var builder = new StringBuilder();
+        builder.append("{").append(clazzName + " entity = new " + clazzName + "();");
+        builder.append("$1.readStartDocument();");
+        builder.append(StringUtils.format("while ($1.readBsonType() != {}.END_OF_DOCUMENT) {", bsonType));
+        builder.append("String name = $1.readName();");
+        for (var i = 0; i < fields.size(); i++) {
+            var field = fields.get(i);
+            var fieldType = field.getType();
+            var setValue = "entity." + ReflectionUtils.fieldToSetMethod(clazz, field);
+
+            builder.append(StringUtils.format("if (\"{}\".equals(name)) {", bsonName(field)));
+            if (fieldType.isPrimitive()) {
+                builder.append(StringUtils.format("{}({}.read{}($1));", setValue, codecUtils, StringUtils.capitalize(fieldType.getName())));
+            } else if (fieldType == String.class) {
+                builder.append(StringUtils.format("{}({}.readString($1));", setValue, codecUtils));
+            } else {
+                builder.append(StringUtils.format("if ($1.getCurrentBsonType() == {}.NULL) {$1.readNull(); {}(null);} else {", bsonType, setValue));
+                if (isDirectType(fieldType)) {
+                    var primitiveName = unboxName(fieldType);
+                    builder.append(StringUtils.format("{}({}.valueOf({}.read{}($1)));", setValue, fieldType.getCanonicalName(), codecUtils, primitiveName));
+                } else {
+                    builder.append(StringUtils.format("{}(({}) $2.decodeWithChildContext(this.codecs[{}], $1));", setValue, fieldType.getCanonicalName(), fieldCodecIndexes[i]));
+                }
+                builder.append("}");
+            }
+            builder.append("continue;}");
+        }
+        builder.append("$1.skipValue();");
+        builder.append("}");
+        builder.append("$1.readEndDocument();");
+        builder.append("return entity;");
+        builder.append("}");
+        return builder.toString();
+    }
+
+    /**
+     * 和PojoCodec的默认约定保持一致，名称为id的属性在数据库中对应_id
+     */
+    private static String bsonName(Field field) {
+        var fieldName = field.getName();
+        return fieldName.equals("id") || fieldName.equals(ID) ? ID : fieldName;
+    }
+
+    private static boolean isDirectType(Class<?> clazz) {
+        return clazz.isPrimitive() || clazz == String.class
+                || clazz == Byte.class || clazz == Short.class || clazz == Integer.class
+                || clazz == Long.class || clazz == Float.class || clazz == Double.class;
+    }
+
+    private static String unboxName(Class<?> clazz) {
+        if (clazz == Integer.class) {
+            return "Int";
+        }
+        return clazz.getSimpleName();
+    }
+
+    private static Codec<?> fieldCodec(Type type, CodecRegistry registry) {
+        if (type instanceof ParameterizedType) {
+            var parameterizedType = (ParameterizedType) type;
+            var rawType = parameterizedType.getRawType();
+            var types = parameterizedType.getActualTypeArguments();
+            if (List.class.equals(rawType)) {
+                return new ListCodec<>(fieldCodec(types[0], registry));
+            } else if (Set.class.equals(rawType)) {
+                return new SetCodec<>(fieldCodec(types[0], registry));
+            } else if (Map.class.equals(rawType) && String.class.equals(types[0])) {
+                return new MapCodec<>(fieldCodec(types[1], registry));
+            }
+        } else if (type instanceof Class) {
+            var clazz = (Class<?>) type;
+            // 数组和没有泛型的集合交给PojoCodec处理
+            if ((clazz.isArray() && clazz != byte[].class) || Iterable.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz)) {
+                throw new RunException("增强的Codec不支持[type:{}]类型", type);
+            }
+            return registry.get(clazz);
+        }
+        throw new RunException("增强的Codec不支持[type:{}]类型", type);
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.codec;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 泛型List的Codec，元素的Codec在启动的时候就已经确定，不需要在运行时根据元素的类型查找
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class ListCodec<T> implements Codec<List<T>> {
+
+    private final Codec<T> elementCodec;
+
+    public ListCodec(Codec<T> elementCodec) {
+        this.elementCodec = elementCodec;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, List<T> list, EncoderContext encoderContext) {
+        writer.writeStartArray();
+        for (var element : list) {
+            if (element == null) {
+                writer.writeNull();
+            } else {
+                encoderContext.encodeWithChildContext(elementCodec, writer, element);
+            }
+        }
+        writer.writeEndArray();
+    }
+
+    @Override
+    public List<T> decode(BsonReader reader, DecoderContext decoderContext) {
+        var list = new ArrayList<T>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                list.add(null);
+            } else {
+                list.add(decoderContext.decodeWithChildContext(elementCodec, reader));
+            }
+        }
+        reader.readEndArray();
+        return list;
+    }
+
+    @Override
+    public Class<List<T>> getEncoderClass() {
+        return (Class<List<T>>) (Class<?>) List.class;
+    }
+
+}
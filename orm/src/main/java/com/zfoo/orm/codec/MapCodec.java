@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.codec;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 泛型Map的Codec，Orm中Map的key只能是String类型
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class MapCodec<T> implements Codec<Map<String, T>> {
+
+    private final Codec<T> valueCodec;
+
+    public MapCodec(Codec<T> valueCodec) {
+        this.valueCodec = valueCodec;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Map<String, T> map, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        for (var entry : map.entrySet()) {
+            writer.writeName(entry.getKey());
+            var value = entry.getValue();
+            if (value == null) {
+                writer.writeNull();
+            } else {
+                encoderContext.encodeWithChildContext(valueCodec, writer, value);
+            }
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Map<String, T> decode(BsonReader reader, DecoderContext decoderContext) {
+        var map = new HashMap<String, T>();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            var key = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                map.put(key, null);
+            } else {
+                map.put(key, decoderContext.decodeWithChildContext(valueCodec, reader));
+            }
+        }
+        reader.readEndDocument();
+        return map;
+    }
+
+    @Override
+    public Class<Map<String, T>> getEncoderClass() {
+        return (Class<Map<String, T>>) (Class<?>) Map.class;
+    }
+
+}
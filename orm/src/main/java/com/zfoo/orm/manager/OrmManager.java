@@ -25,6 +25,8 @@ import com.mongodb.client.model.Indexes;
 import com.zfoo.orm.OrmContext;
 import com.zfoo.orm.cache.EntityCaches;
 import com.zfoo.orm.cache.IEntityCaches;
+import com.zfoo.orm.cache.ShardEntityCaches;
+import com.zfoo.orm.codec.EnhanceUtils;
 import com.zfoo.orm.model.anno.*;
 import com.zfoo.orm.model.config.OrmConfig;
 import com.zfoo.orm.model.entity.IEntity;
@@ -39,11 +41,15 @@ import com.zfoo.protocol.util.JsonUtils;
 import com.zfoo.protocol.util.ReflectionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.util.math.RandomUtils;
+import com.zfoo.util.metrics.MetricsUtils;
 import com.zfoo.util.net.HostAndPort;
 import org.bson.Document;
+import org.bson.codecs.Codec;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.type.AnnotationMetadata;
@@ -68,6 +74,8 @@ import java.util.stream.Collectors;
  */
 public class OrmManager implements IOrmManager {
 
+    private static final Logger logger = LoggerFactory.getLogger(OrmManager.class);
+
     private OrmConfig ormConfig;
 
     private MongoClient mongoClient;
@@ -95,7 +103,7 @@ public class OrmManager implements IOrmManager {
         var entityDefMap = scanEntityClass();
 
         for (var entityDef : entityDefMap.values()) {
-            var entityCaches = new EntityCaches(entityDef);
+            var entityCaches = entityDef.getShard() > 0 ? new ShardEntityCaches(entityDef) : new EntityCaches(entityDef);
             entityCachesMap.put(entityDef.getClazz(), entityCaches);
             allEntityCachesUsableMap.put(entityDef.getClazz(), false);
         }
@@ -104,9 +112,21 @@ public class OrmManager implements IOrmManager {
                 MongoClientSettings.getDefaultCodecRegistry(),
                 CodecRegistries.fromProviders(PojoCodecProvider.builder().automatic(true).build()));
 
+        // 为每一个Entity生成增强的Codec，无法增强的Entity继续使用PojoCodec
+        var entityCodecs = new ArrayList<Codec<?>>();
+        for (var entityDef : entityDefMap.values()) {
+            try {
+                entityCodecs.add(EnhanceUtils.createEntityCodec(entityDef, pojoCodecRegistry));
+            } catch (Throwable t) {
+                logger.warn("实体类Entity[{}]无法生成增强的Codec，使用默认的PojoCodec", entityDef.getClazz().getSimpleName(), t);
+            }
+        }
+
+        CodecRegistry codecRegistry = CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(entityCodecs), pojoCodecRegistry);
+
         var mongoBuilder = MongoClientSettings
                 .builder()
-                .codecRegistry(pojoCodecRegistry);
+                .codecRegistry(codecRegistry);
 
         // 设置数据库地址
         var hostConfig = ormConfig.getHost();
@@ -219,6 +239,9 @@ public class OrmManager implements IOrmManager {
                 .filter(it -> !it.getValue())
                 .map(it -> it.getKey())
                 .forEach(it -> entityCachesMap.remove(it));
+
+        // 注册缓存的统计信息，monitor会周期性的统一输出，不遍历缓存统计脏数据
+        entityCachesMap.forEach((clazz, entityCaches) -> MetricsUtils.register("orm.cache." + clazz.getSimpleName(), () -> entityCaches.metrics(false)));
     }
 
     @Override
@@ -320,6 +343,7 @@ public class OrmManager implements IOrmManager {
         var cacheStrategy = cacheStrategyOptional.get();
         var cacheSize = cacheStrategy.getSize();
         var expireMillisecond = cacheStrategy.getExpireMillisecond();
+        var shard = cacheStrategy.getShard();
 
         var idField = ReflectionUtils.getFieldsByAnnoInPOJOClass(clazz, Id.class)[0];
         ReflectionUtils.makeAccessible(idField);
@@ -352,7 +376,7 @@ public class OrmManager implements IOrmManager {
             indexTextDefMap.put(field.getName(), indexTextDef);
         }
 
-        return EntityDef.valueOf(idField, clazz, cacheSize, expireMillisecond, persisterStrategy, indexDefMap, indexTextDefMap);
+        return EntityDef.valueOf(idField, clazz, cacheSize, expireMillisecond, shard, persisterStrategy, indexDefMap, indexTextDefMap);
     }
 
     private void analyze(Class<?> clazz) {
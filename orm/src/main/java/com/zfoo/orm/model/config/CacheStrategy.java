@@ -23,6 +23,11 @@ public class CacheStrategy {
     private int size;
     private long expireMillisecond;
 
+    /**
+     * 分片的数量，大于0的时候使用和TaskBus相同的hash算法把实体分配到不同的分片，每个分片只被对应的Task线程访问
+     */
+    private int shard;
+
     public CacheStrategy() {
     }
 
@@ -32,6 +37,11 @@ public class CacheStrategy {
         this.expireMillisecond = expireMillisecond;
     }
 
+    public CacheStrategy(String strategy, int size, long expireMillisecond, int shard) {
+        this(strategy, size, expireMillisecond);
+        this.shard = shard;
+    }
+
     public String getStrategy() {
         return strategy;
     }
@@ -55,4 +65,12 @@ public class CacheStrategy {
     public void setExpireMillisecond(long expireMillisecond) {
         this.expireMillisecond = expireMillisecond;
     }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
 }
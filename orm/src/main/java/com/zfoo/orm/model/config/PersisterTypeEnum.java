@@ -13,7 +13,7 @@
 
 package com.zfoo.orm.model.config;
 
-import com.zfoo.orm.cache.EntityCaches;
+import com.zfoo.orm.cache.IEntityCaches;
 import com.zfoo.orm.cache.persister.CronOrmPersister;
 import com.zfoo.orm.cache.persister.IOrmPersister;
 import com.zfoo.orm.cache.persister.TimeOrmPersister;
@@ -28,19 +28,19 @@ public enum PersisterTypeEnum {
 
     QUEUE {
         @Override
-        public IOrmPersister createPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches) {
+        public IOrmPersister createPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches) {
             return null;
         }
     },
     CRON {
         @Override
-        public IOrmPersister createPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches) {
+        public IOrmPersister createPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches) {
             return new CronOrmPersister(entityDef, entityCaches);
         }
     },
     TIME {
         @Override
-        public IOrmPersister createPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches) {
+        public IOrmPersister createPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches) {
             return new TimeOrmPersister(entityDef, entityCaches);
         }
     };
@@ -55,6 +55,6 @@ public enum PersisterTypeEnum {
         throw new IllegalArgumentException(StringUtils.format("无效的持久化类型[persisterType:{}]", persisterType));
     }
 
-    public abstract IOrmPersister createPersister(EntityDef entityDef, EntityCaches<?, ?> entityCaches);
+    public abstract IOrmPersister createPersister(EntityDef entityDef, IEntityCaches<?, ?> entityCaches);
 
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.model.vo;
+
+import com.zfoo.protocol.util.StringUtils;
+
+/**
+ * EntityCaches的统计信息快照，时间的单位都是毫秒
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class EntityCachesMetrics {
+
+    private String entity;
+
+    private long size;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long loadCount;
+
+    private double loadMeanMillis;
+
+    private double loadP99Millis;
+
+    /**
+     * 执行了写数据库操作的持久化次数和耗时
+     */
+    private long persistCount;
+
+    private double persistMeanMillis;
+
+    private double persistP99Millis;
+
+    private double persistMaxMillis;
+
+    /**
+     * 最近一次持久化写入的文档数量，和总共写入的文档数量
+     */
+    private long lastPersistDocuments;
+
+    private long totalPersistDocuments;
+
+    /**
+     * 批量写入失败后执行容错操作persistAllAndCompare的次数
+     */
+    private long fallbackCount;
+
+    /**
+     * 当前还没有写入数据库的实体数量，和其中最久没有写入数据库的时间，没有遍历缓存统计的时候为-1
+     */
+    private long dirtyCount;
+
+    private long oldestDirtyAgeMillis;
+
+    public static EntityCachesMetrics valueOf(String entity, long size, long hitCount, long missCount, long evictionCount
+            , long loadCount, double loadMeanMillis, double loadP99Millis
+            , long persistCount, double persistMeanMillis, double persistP99Millis, double persistMaxMillis
+            , long lastPersistDocuments, long totalPersistDocuments, long fallbackCount, long dirtyCount, long oldestDirtyAgeMillis) {
+        var metrics = new EntityCachesMetrics();
+        metrics.entity = entity;
+        metrics.size = size;
+        metrics.hitCount = hitCount;
+        metrics.missCount = missCount;
+        metrics.evictionCount = evictionCount;
+        metrics.loadCount = loadCount;
+        metrics.loadMeanMillis = loadMeanMillis;
+        metrics.loadP99Millis = loadP99Millis;
+        metrics.persistCount = persistCount;
+        metrics.persistMeanMillis = persistMeanMillis;
+        metrics.persistP99Millis = persistP99Millis;
+        metrics.persistMaxMillis = persistMaxMillis;
+        metrics.lastPersistDocuments = lastPersistDocuments;
+        metrics.totalPersistDocuments = totalPersistDocuments;
+        metrics.fallbackCount = fallbackCount;
+        metrics.dirtyCount = dirtyCount;
+        metrics.oldestDirtyAgeMillis = oldestDirtyAgeMillis;
+        return metrics;
+    }
+
+    public double hitRate() {
+        var requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1D : (double) hitCount / requestCount;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public double getLoadMeanMillis() {
+        return loadMeanMillis;
+    }
+
+    public double getLoadP99Millis() {
+        return loadP99Millis;
+    }
+
+    public long getPersistCount() {
+        return persistCount;
+    }
+
+    public double getPersistMeanMillis() {
+        return persistMeanMillis;
+    }
+
+    public double getPersistP99Millis() {
+        return persistP99Millis;
+    }
+
+    public double getPersistMaxMillis() {
+        return persistMaxMillis;
+    }
+
+    public long getLastPersistDocuments() {
+        return lastPersistDocuments;
+    }
+
+    public long getTotalPersistDocuments() {
+        return totalPersistDocuments;
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount;
+    }
+
+    public long getDirtyCount() {
+        return dirtyCount;
+    }
+
+    public long getOldestDirtyAgeMillis() {
+        return oldestDirtyAgeMillis;
+    }
+
+    @Override
+    public String toString() {
+        var str = StringUtils.format("[{}] [size:{}] [hitRate:{}] [miss:{}] [eviction:{}] [load:{} mean:{}ms p99:{}ms] [persist:{} mean:{}ms p99:{}ms max:{}ms] [documents last:{} total:{}] [fallback:{}]"
+                , entity, size, String.format("%.4f", hitRate()), missCount, evictionCount, loadCount, loadMeanMillis, loadP99Millis
+                , persistCount, persistMeanMillis, persistP99Millis, persistMaxMillis, lastPersistDocuments, totalPersistDocuments, fallbackCount);
+        // 没有遍历缓存统计脏数据的时候不输出
+        return dirtyCount < 0 ? str : StringUtils.format("{} [dirty:{} oldest:{}ms]", str, dirtyCount, oldestDirtyAgeMillis);
+    }
+}
@@ -34,19 +34,22 @@ public class EntityDef {
 
     private long expireMillisecond;
 
+    private int shard;
+
     private PersisterStrategy persisterStrategy;
 
     private Map<String, IndexDef> indexDefMap;
 
     private Map<String, IndexTextDef> indexTextDefMap;
 
-    public static EntityDef valueOf(Field idField, Class<? extends IEntity<?>> clazz, int cacheSize, long expireMillisecond
+    public static EntityDef valueOf(Field idField, Class<? extends IEntity<?>> clazz, int cacheSize, long expireMillisecond, int shard
             , PersisterStrategy persisterStrategy, Map<String, IndexDef> indexDefMap, Map<String, IndexTextDef> indexTextDefMap) {
         var entityDef = new EntityDef();
         entityDef.idField = idField;
         entityDef.clazz = clazz;
         entityDef.cacheSize = cacheSize;
         entityDef.expireMillisecond = expireMillisecond;
+        entityDef.shard = shard;
         entityDef.persisterStrategy = persisterStrategy;
         entityDef.indexDefMap = indexDefMap;
         entityDef.indexTextDefMap = indexTextDefMap;
@@ -70,6 +73,10 @@ public class EntityDef {
         return expireMillisecond;
     }
 
+    public int getShard() {
+        return shard;
+    }
+
     public PersisterStrategy getPersisterStrategy() {
         return persisterStrategy;
     }
@@ -13,10 +13,12 @@
 
 package com.zfoo.orm.query;
 
+import com.mongodb.client.MongoCursor;
 import com.zfoo.orm.model.entity.IEntity;
 import com.zfoo.protocol.model.Pair;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 
 /**
@@ -52,8 +54,34 @@ public interface IQueryBuilder<E extends IEntity> {
 
     IQueryBuilder<E> gte(String fieldName, Object fieldValue);
 
+    /**
+     * 游标每次从数据库中拉取的文档数量，对所有的查询方法都生效
+     *
+     * @param batchSize 每批的文档数量，小于等于0使用数据库的默认值
+     */
+    IQueryBuilder<E> batchSize(int batchSize);
+
+    /**
+     * 只查询指定的字段，没有查询的字段为默认值，对所有的查询方法都生效
+     *
+     * @param fieldNames 需要查询的字段，_id默认会被查询
+     */
+    IQueryBuilder<E> projection(String... fieldNames);
+
     List<E> queryAll();
 
+    /**
+     * 流式查询，边从游标中读取边解码，不会一次性把所有的数据加载到内存中，适合扫描大的集合
+     *
+     * @param consumer 每一个查询到的实体的回调
+     */
+    void queryStream(Consumer<E> consumer);
+
+    /**
+     * 流式查询的游标，使用完后必须关闭，推荐使用try-with-resources
+     */
+    MongoCursor<E> queryCursor();
+
 
     /**
      * 分页查询，默认按照id排序
@@ -13,7 +13,10 @@
 
 package com.zfoo.orm.query;
 
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import com.zfoo.orm.OrmContext;
 import com.zfoo.orm.model.entity.IEntity;
 import com.zfoo.protocol.model.Pair;
@@ -21,6 +24,7 @@ import com.zfoo.protocol.util.StringUtils;
 import org.bson.conversions.Bson;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -28,6 +32,8 @@ public class MongoQueryBuilder<E extends IEntity<?>> implements IQueryBuilder<E>
 
     private final Class<E> entity;
     private Bson builder = Filters.empty();
+    private Bson projection;
+    private int batchSize;
 
     public MongoQueryBuilder(Class<E> entityClazz) {
         entity = entityClazz;
@@ -102,10 +108,33 @@ public class MongoQueryBuilder<E extends IEntity<?>> implements IQueryBuilder<E>
     }
 
     @Override
-    public List<E> queryAll() {
+    public IQueryBuilder<E> batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    @Override
+    public IQueryBuilder<E> projection(String... fieldNames) {
+        this.projection = Projections.include(Arrays.asList(fieldNames));
+        return this;
+    }
+
+    private FindIterable<E> find() {
         var collection = OrmContext.getOrmManager().getCollection(entity);
-        var list = new ArrayList<E>();
         var result = collection.find(builder);
+        if (batchSize > 0) {
+            result.batchSize(batchSize);
+        }
+        if (projection != null) {
+            result.projection(projection);
+        }
+        return result;
+    }
+
+    @Override
+    public List<E> queryAll() {
+        var list = new ArrayList<E>();
+        var result = find();
         result.forEach(new Consumer<IEntity<?>>() {
             @Override
             public void accept(IEntity<?> entity) {
@@ -121,7 +150,7 @@ public class MongoQueryBuilder<E extends IEntity<?>> implements IQueryBuilder<E>
 
         var p = Page.valueOf(page, itemsPerPage, collection.countDocuments());
 
-        var result = collection.find(builder);
+        var result = find();
         var list = new ArrayList<E>();
         result.skip(p.skipNum())
                 .limit(p.getItemsPerPage())
@@ -135,9 +164,22 @@ public class MongoQueryBuilder<E extends IEntity<?>> implements IQueryBuilder<E>
         return new Pair<>(p, list);
     }
 
+    @Override
+    public void queryStream(Consumer<E> consumer) {
+        try (var cursor = queryCursor()) {
+            while (cursor.hasNext()) {
+                consumer.accept(cursor.next());
+            }
+        }
+    }
+
+    @Override
+    public MongoCursor<E> queryCursor() {
+        return find().cursor();
+    }
+
     @Override
     public E queryFirst() {
-        var collection = OrmContext.getOrmManager().getCollection(entity);
-        return collection.find(builder).first();
+        return find().first();
     }
 }
@@ -125,6 +125,8 @@ public class OrmDefinitionParser implements BeanDefinitionParser {
             builder.addConstructorArgValue(environment.resolvePlaceholders(addressElement.getAttribute("strategy")));
             builder.addConstructorArgValue(environment.resolvePlaceholders(addressElement.getAttribute("size")));
             builder.addConstructorArgValue(environment.resolvePlaceholders(addressElement.getAttribute("expire-millisecond")));
+            var shard = environment.resolvePlaceholders(addressElement.getAttribute("shard"));
+            builder.addConstructorArgValue(StringUtils.isBlank(shard) ? "0" : shard);
 
             cacheStrategies.add(new BeanDefinitionHolder(builder.getBeanDefinition(), StringUtils.format("{}.{}", clazz.getCanonicalName(), i)));
         }
@@ -14,13 +14,23 @@
 package com.zfoo.orm.util;
 
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.zfoo.event.manager.EventBus;
 import com.zfoo.orm.OrmContext;
 import com.zfoo.protocol.collection.CollectionUtils;
 import com.zfoo.protocol.util.AssertionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 
@@ -30,12 +40,24 @@ import java.util.function.Consumer;
  */
 public abstract class MongoIdUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(MongoIdUtils.class);
+
     private static final long INIT_ID = 1L;
 
     private static final String COLLECTION_NAME = "uuid";
 
     private static final String COUNT = "count";
 
+    /**
+     * 号段模式默认每次从数据库中申请的id数量
+     */
+    private static final long DEFAULT_SEGMENT_STEP = 1000L;
+
+    /**
+     * 号段分配器，key为collectionName和documentName的组合
+     */
+    private static final Map<String, IdSegmentAllocator> segmentAllocatorMap = new ConcurrentHashMap<>();
+
 
     /**
      * 分布式唯一Id生成器，利用MongoDB数据库存储自增的ID，可以保证原子性，一致性。
@@ -72,6 +94,135 @@ public abstract class MongoIdUtils {
     }
 
 
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * 号段模式的分布式唯一Id生成器，和getIncrementIdFromMongo共用同一个计数文档，两者生成的id不会重复。
+     * <p>
+     * 每次通过一个$inc操作从MongoDB中申请step个id，然后在本地通过AtomicLong分配，号段快用完的时候会异步预取下一个号段。
+     * <p>
+     * 生成的id只保证唯一，不保证连续；进程关闭时没有用完的号段会被丢弃。
+     *
+     * @param collectionName 存储的集合名称
+     * @param documentName   文档id
+     * @param step           每次申请的号段大小，只有第一次调用时会生效
+     * @return 唯一id
+     */
+    public static long getSegmentIdFromMongo(String collectionName, String documentName, long step) {
+        AssertionUtils.isTrue(step > 0, "号段大小[step:{}]必须大于0", step);
+        var allocator = segmentAllocatorMap.computeIfAbsent(segmentKey(collectionName, documentName)
+                , it -> new IdSegmentAllocator(collectionName, documentName, step));
+        return allocator.nextId();
+    }
+
+    public static long getSegmentIdFromMongoDefault(String documentName) {
+        return getSegmentIdFromMongo(COLLECTION_NAME, documentName, DEFAULT_SEGMENT_STEP);
+    }
+
+    public static long getSegmentIdFromMongoDefault(Class<?> clazz) {
+        return getSegmentIdFromMongo(COLLECTION_NAME, StringUtils.uncapitalize(clazz.getSimpleName()), DEFAULT_SEGMENT_STEP);
+    }
+
+    /**
+     * 从数据库中申请一个号段，返回号段的最大值
+     */
+    private static long allocateSegmentFromMongo(String collectionName, String documentName, long step) {
+        var collection = OrmContext.getOrmManager().getCollection(collectionName);
+
+        var document = collection.findOneAndUpdate(Filters.eq("_id", documentName)
+                , new Document("$inc", new Document(COUNT, step))
+                , new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+
+        AssertionUtils.notNull(document);
+        return document.getLong(COUNT);
+    }
+
+    private static String segmentKey(String collectionName, String documentName) {
+        return collectionName + StringUtils.PERIOD + documentName;
+    }
+
+    private static class IdSegment {
+        // 最后一个分配出去的id
+        private final AtomicLong cursor;
+        private final long max;
+
+        public IdSegment(long min, long max) {
+            this.cursor = new AtomicLong(min - 1);
+            this.max = max;
+        }
+    }
+
+    private static class IdSegmentAllocator {
+        private final String collectionName;
+        private final String documentName;
+        private final long step;
+        // 号段剩余的id数量等于这个值时，开始异步预取下一个号段
+        private final long prefetchThreshold;
+
+        private volatile IdSegment segment = new IdSegment(INIT_ID, 0L);
+
+        private final AtomicReference<CompletableFuture<IdSegment>> nextSegment = new AtomicReference<>();
+
+        public IdSegmentAllocator(String collectionName, String documentName, long step) {
+            this.collectionName = collectionName;
+            this.documentName = documentName;
+            this.step = step;
+            this.prefetchThreshold = step / 5;
+        }
+
+        public long nextId() {
+            while (true) {
+                var currentSegment = segment;
+                var id = currentSegment.cursor.incrementAndGet();
+                if (id <= currentSegment.max) {
+                    if (currentSegment.max - id == prefetchThreshold) {
+                        prefetch();
+                    }
+                    return id;
+                }
+
+                synchronized (this) {
+                    if (segment == currentSegment) {
+                        segment = takeNextSegment();
+                    }
+                }
+            }
+        }
+
+        private IdSegment allocate() {
+            var max = allocateSegmentFromMongo(collectionName, documentName, step);
+            return new IdSegment(max - step + 1, max);
+        }
+
+        private void prefetch() {
+            var future = new CompletableFuture<IdSegment>();
+            if (!nextSegment.compareAndSet(null, future)) {
+                return;
+            }
+            EventBus.execute(documentName.hashCode(), () -> {
+                try {
+                    future.complete(allocate());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        }
+
+        private IdSegment takeNextSegment() {
+            // 预取的号段还没有返回的时候不要等待，因为预取任务可能正好排在当前线程的任务队列中，等待会造成死锁
+            var future = nextSegment.get();
+            if (future != null && future.isDone()) {
+                nextSegment.set(null);
+                try {
+                    return future.join();
+                } catch (Throwable t) {
+                    logger.error("预取[collection:{}][document:{}]的号段异常，改为同步申请号段", collectionName, documentName, t);
+                }
+            }
+            return allocate();
+        }
+    }
+
     // ----------------------------------------------------------------------------------------------------
 
     /**
@@ -91,7 +242,11 @@ public abstract class MongoIdUtils {
         setIncrementIdFromMongo(COLLECTION_NAME, documentName, value);
     }
 
+    /**
+     * 会同时丢弃当前进程中documentName对应的号段，其它进程中已经申请的号段不受影响
+     */
     public static void setIncrementIdFromMongo(String collectionName, String documentName, long value) {
+        segmentAllocatorMap.remove(segmentKey(collectionName, documentName));
         var collection = OrmContext.getOrmManager().getCollection(collectionName);
         var document = collection.findOneAndUpdate(Filters.eq("_id", documentName), new Document("$set", new Document(COUNT, value)));
 
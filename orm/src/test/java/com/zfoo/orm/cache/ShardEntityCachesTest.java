@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.zfoo.orm.cache;
+
+import com.zfoo.orm.OrmContext;
+import com.zfoo.orm.entity.UserEntity;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+@Ignore
+public class ShardEntityCachesTest {
+
+    @Test
+    public void test() {
+        var context = new ClassPathXmlApplicationContext("application-shard.xml");
+
+        var userEntityCaches = (IEntityCaches<Long, UserEntity>) OrmContext.getOrmManager().getEntityCaches(UserEntity.class);
+        Assert.assertTrue(userEntityCaches instanceof ShardEntityCaches);
+        Assert.assertEquals(8, userEntityCaches.sliceSize());
+
+        for (var i = 1; i <= 100; i++) {
+            var entity = userEntityCaches.load((long) i);
+            entity.setE("shard" + i);
+            entity.setC(i);
+            userEntityCaches.update(entity);
+        }
+
+        // 被清除的脏数据在写入数据库之前也能被加载到
+        userEntityCaches.invalidate(1L);
+        Assert.assertEquals("shard1", userEntityCaches.load(1L).getE());
+
+        userEntityCaches.persistAll();
+        for (var i = 1; i <= 100; i++) {
+            userEntityCaches.invalidate((long) i);
+            Assert.assertEquals("shard" + i, userEntityCaches.load((long) i).getE());
+        }
+        Assert.assertEquals(0, userEntityCaches.metrics().getDirtyCount());
+        context.close();
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.orm.codec;
+
+import com.mongodb.MongoClientSettings;
+import com.zfoo.orm.entity.MailEntity;
+import com.zfoo.orm.entity.UserEntity;
+import com.zfoo.orm.entity.bag.BagItem;
+import com.zfoo.orm.entity.bag.Item;
+import com.zfoo.orm.entity.bag.MapEntity;
+import com.zfoo.orm.model.entity.IEntity;
+import com.zfoo.orm.model.vo.EntityDef;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 增强的Codec和PojoCodec生成的文档必须相同
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class EnhanceCodecTest {
+
+    private static final CodecRegistry pojoCodecRegistry = CodecRegistries.fromRegistries(
+            MongoClientSettings.getDefaultCodecRegistry(),
+            CodecRegistries.fromProviders(PojoCodecProvider.builder().automatic(true).build()));
+
+    @Test
+    public void userEntityTest() throws Exception {
+        var entity = new UserEntity(1L, (byte) 2, (short) 3, 4, true, "e", null);
+        entity.setL(List.of(1, 2, 3));
+        var newEntity = assertSameDocument(UserEntity.class, entity);
+        Assert.assertEquals(entity.getId(), newEntity.getId());
+        Assert.assertEquals(entity.getA(), newEntity.getA());
+        Assert.assertEquals(entity.getB(), newEntity.getB());
+        Assert.assertEquals(entity.getC(), newEntity.getC());
+        Assert.assertEquals(entity.isD(), newEntity.isD());
+        Assert.assertEquals(entity.getE(), newEntity.getE());
+        Assert.assertNull(newEntity.getF());
+        Assert.assertEquals(entity.getL(), newEntity.getL());
+    }
+
+    @Test
+    public void mailEntityTest() throws Exception {
+        var entity = MailEntity.valueOf("mail", "user", "content", new Date());
+        var newEntity = assertSameDocument(MailEntity.class, entity);
+        Assert.assertEquals(entity.getCreateDate(), newEntity.getCreateDate());
+    }
+
+    @Test
+    public void mapEntityTest() throws Exception {
+        var item = new Item();
+        item.setA(1);
+        item.setB("b");
+        var bagItem = new BagItem();
+        bagItem.setId(2);
+        bagItem.setDesc("desc");
+        bagItem.getItemMap().put("item", item);
+        var entity = new MapEntity();
+        entity.setId(3L);
+        entity.getBagMap().put("bag", bagItem);
+        var baseMap = new HashMap<String, String>();
+        baseMap.put("key", "value");
+        entity.getBaseMap().put("base", baseMap);
+        var newEntity = assertSameDocument(MapEntity.class, entity);
+        Assert.assertEquals("b", newEntity.getBagMap().get("bag").getItemMap().get("item").getB());
+        Assert.assertEquals("value", newEntity.getBaseMap().get("base").get("key"));
+    }
+
+    private <E extends IEntity<?>> E assertSameDocument(Class<E> clazz, E entity) throws Exception {
+        var entityDef = EntityDef.valueOf(null, clazz, 0, 0, 0, null, null, null);
+        var enhanceCodec = (Codec<E>) EnhanceUtils.createEntityCodec(entityDef, pojoCodecRegistry);
+        var pojoCodec = pojoCodecRegistry.get(clazz);
+
+        var enhanceDocument = new BsonDocument();
+        enhanceCodec.encode(new BsonDocumentWriter(enhanceDocument), entity, EncoderContext.builder().build());
+        var pojoDocument = new BsonDocument();
+        pojoCodec.encode(new BsonDocumentWriter(pojoDocument), entity, EncoderContext.builder().build());
+        Assert.assertEquals(pojoDocument, enhanceDocument);
+
+        return enhanceCodec.decode(new BsonDocumentReader(pojoDocument), DecoderContext.builder().build());
+    }
+
+}
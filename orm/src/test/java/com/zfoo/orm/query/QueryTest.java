@@ -49,5 +49,14 @@ public class QueryTest {
         System.out.println(list);
     }
 
+    @Test
+    public void queryStreamTest() {
+        var context = new ClassPathXmlApplicationContext("application.xml");
+        OrmContext.getQuery(UserEntity.class)
+                .gte("c", 1)
+                .batchSize(1000)
+                .projection("c", "e")
+                .queryStream(it -> System.out.println(it));
+    }
 
 }
@@ -70,6 +70,17 @@ public class MongoIdUtilsTest {
         ThreadUtils.sleep(Long.MAX_VALUE);
     }
 
+    @Test
+    public void segmentIdTest() {
+        var context = new ClassPathXmlApplicationContext("application.xml");
+
+        var count = 0L;
+        for (int i = 0; i < 100_0000; i++) {
+            count = MongoIdUtils.getSegmentIdFromMongoDefault("mySegmentDocument");
+        }
+        System.out.println(count);
+    }
+
     @Test
     public void reset() {
         var context = new ClassPathXmlApplicationContext("application.xml");
@@ -104,6 +104,14 @@ public class HashMapLongLong implements Map<Long, Long> {
         return index == -1 ? null : values[index];
     }
 
+    /**
+     * 不存在的时候返回defaultValue，避免装箱
+     */
+    public long getPrimitive(long key, long defaultValue) {
+        var index = indexOf(key);
+        return index == -1 ? defaultValue : values[index];
+    }
+
     @Override
     public Long put(Long key, Long value) {
         return putPrimitive(ArrayUtils.longValue(key), ArrayUtils.longValue(value));
@@ -13,51 +13,161 @@
 package com.zfoo.protocol.collection.lpmap;
 
 import com.zfoo.protocol.IPacket;
+import com.zfoo.protocol.collection.HashSetLong;
+import com.zfoo.protocol.util.IOUtils;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 /**
+ * 写操作使用synchronized串行执行，读操作（get，getFrom，getMaxIndex，forEach）不加锁，可以在多个线程中并发读，
+ * forEach和getFrom是弱一致的，遍历的过程中可以看到遍历开始之后的写入
+ * <p>
+ * db文件中无效数据的比例超过compactGarbageRatio的时候在后台线程中压缩，复制有效数据的时候不持有锁，
+ * 复制过程中被修改的key记录在dirtyKeys中，最后在锁中重新复制这些key并替换文件
+ * <p>
+ * 开启group commit（batchSize大于0）的时候，put只写入内存中的缓存，后台线程最多每隔maxDelayMillis把缓存一次性写入文件，
+ * 需要确认数据已经落盘的地方使用putAsync，多个putAsync共用一次fsync
+ *
  * @author godotg
  * @version 3.0
  */
 public class ConcurrentFileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
 
+    private static final double DEFAULT_COMPACT_GARBAGE_RATIO = 0.5D;
+    private static final long DEFAULT_COMPACT_MIN_SIZE = 64L * IOUtils.BYTES_PER_MB;
 
     private final FileChannelMap<V> fileChannelMap;
 
+    private final String name;
+
+    private final double compactGarbageRatio;
+
+    // db文件小于这个大小的时候不自动压缩
+    private final long compactMinSize;
+
+    // 正在压缩的时候不为null，压缩过程中被修改过的key
+    private HashSetLong dirtyKeys;
+
+    // 压缩过程中调用了clear或者close，复制的数据已经失效
+    private boolean compactCancelled;
+
+    private CompletableFuture<Void> compactFuture;
+
+    // 缓存的写入最多等待的时间
+    private final long maxDelayMillis;
+
+    // 有后台线程的时候putAsync才交给后台线程fsync，否则在当前线程中直接写入文件并且fsync
+    private final boolean flushThread;
+
+    // 等待fsync的putAsync
+    private List<SyncWaiter> syncWaiters = new ArrayList<>();
+
+    private boolean closed;
+
     public ConcurrentFileChannelMap(String dbPath, Class<V> clazz) {
-        fileChannelMap = new FileChannelMap<>(dbPath, clazz);
+        this(dbPath, clazz, 0, 0L, FsyncPolicy.never(), DEFAULT_COMPACT_GARBAGE_RATIO, DEFAULT_COMPACT_MIN_SIZE);
+    }
+
+    public ConcurrentFileChannelMap(String dbPath, Class<V> clazz, double compactGarbageRatio, long compactMinSize) {
+        this(dbPath, clazz, 0, 0L, FsyncPolicy.never(), compactGarbageRatio, compactMinSize);
+    }
+
+    public ConcurrentFileChannelMap(String dbPath, Class<V> clazz, int batchSize, long maxDelayMillis, FsyncPolicy fsyncPolicy) {
+        this(dbPath, clazz, batchSize, maxDelayMillis, fsyncPolicy, DEFAULT_COMPACT_GARBAGE_RATIO, DEFAULT_COMPACT_MIN_SIZE);
+    }
+
+    /**
+     * @param batchSize      缓存的写入超过这个大小的时候直接写入文件，0表示不开启group commit，每次put都直接写入文件
+     * @param maxDelayMillis 缓存的写入最多等待多久写入文件，putAsync最多等待多久fsync，0表示putAsync在当前线程中直接fsync
+     * @param fsyncPolicy    写入文件之后的fsync策略
+     */
+    public ConcurrentFileChannelMap(String dbPath, Class<V> clazz, int batchSize, long maxDelayMillis, FsyncPolicy fsyncPolicy, double compactGarbageRatio, long compactMinSize) {
+        fileChannelMap = new FileChannelMap<>(dbPath, clazz, batchSize, fsyncPolicy);
+        this.name = clazz.getSimpleName();
+        this.maxDelayMillis = maxDelayMillis;
+        this.compactGarbageRatio = compactGarbageRatio;
+        this.compactMinSize = compactMinSize;
+
+        // 不开启group commit但是maxDelayMillis大于0的时候，后台线程让多个putAsync共用一次fsync
+        this.flushThread = batchSize > 0 || maxDelayMillis > 0 || fsyncPolicy.getMode() == FsyncPolicy.Mode.INTERVAL;
+        if (flushThread) {
+            var thread = new Thread(this::flushLoop, "lpmap-flush-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
     }
 
     @Override
     public synchronized V put(long key, V value) {
-        return fileChannelMap.put(key, value);
+        var previousValue = fileChannelMap.put(key, value);
+        modified(key);
+        return previousValue;
     }
 
     @Override
     public synchronized V putIfAbsent(long key, V packet) {
-        return fileChannelMap.put(key, packet);
+        var previousValue = fileChannelMap.put(key, packet);
+        modified(key);
+        return previousValue;
+    }
+
+    /**
+     * 返回的future在数据写入文件并且fsync之后完成，一批写入共用一次fsync
+     */
+    public CompletableFuture<V> putAsync(long key, V value) {
+        var future = new CompletableFuture<V>();
+        synchronized (this) {
+            var previousValue = fileChannelMap.put(key, value);
+            modified(key);
+            if (flushThread && maxDelayMillis > 0 && !closed) {
+                syncWaiters.add(new SyncWaiter((CompletableFuture<Object>) (CompletableFuture<?>) future, previousValue));
+                if (syncWaiters.size() == 1) {
+                    notifyAll();
+                }
+                return future;
+            }
+            fileChannelMap.flush();
+            fileChannelMap.sync();
+            future.complete(previousValue);
+        }
+        return future;
+    }
+
+    /**
+     * 立刻把缓存的写入写入文件
+     */
+    public synchronized void flush() {
+        fileChannelMap.flush();
     }
 
     @Override
     public synchronized V delete(long key) {
-        return fileChannelMap.delete(key);
+        var previousValue = fileChannelMap.delete(key);
+        modified(key);
+        return previousValue;
     }
 
     @Override
-    public synchronized V get(long key) {
+    public V get(long key) {
         return fileChannelMap.get(key);
     }
 
-    public synchronized List<V> getFrom(long startKey, long endKey) {
+    public List<V> getFrom(long startKey, long endKey) {
         return fileChannelMap.getFrom(startKey, endKey);
     }
 
+    public void forEach(long startKey, long endKey, BiConsumer<Long, V> biConsumer) {
+        fileChannelMap.forEach(startKey, endKey, biConsumer);
+    }
+
     @Override
-    public synchronized long getMaxIndex() {
+    public long getMaxIndex() {
         return fileChannelMap.getMaxIndex();
     }
 
@@ -68,17 +178,180 @@ public class ConcurrentFileChannelMap<V extends IPacket> implements LpMap<V>, Cl
 
     @Override
     public synchronized void clear() {
+        compactCancelled = dirtyKeys != null;
         fileChannelMap.clear();
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        fileChannelMap.close();
+    public void close() throws IOException {
+        List<SyncWaiter> waiters;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            compactCancelled = dirtyKeys != null;
+            notifyAll();
+            waiters = syncWaiters;
+            syncWaiters = new ArrayList<>();
+            try {
+                fileChannelMap.close();
+            } catch (IOException | RuntimeException e) {
+                waiters.forEach(it -> it.future.completeExceptionally(e));
+                throw e;
+            }
+        }
+        waiters.forEach(it -> it.future.complete(it.value));
     }
 
     @Override
-    public synchronized void forEach(BiConsumer<Long, V> biConsumer) {
+    public void forEach(BiConsumer<Long, V> biConsumer) {
         fileChannelMap.forEach(biConsumer);
     }
 
+    public synchronized double garbageRatio() {
+        return fileChannelMap.garbageRatio();
+    }
+
+    /**
+     * 在后台线程中压缩，已经在压缩中的时候返回正在进行的压缩
+     */
+    public synchronized CompletableFuture<Void> compactAsync() {
+        if (compactFuture != null && !compactFuture.isDone()) {
+            return compactFuture;
+        }
+        var future = new CompletableFuture<Void>();
+        compactFuture = future;
+        dirtyKeys = new HashSetLong();
+        compactCancelled = false;
+
+        var thread = new Thread(() -> {
+            try {
+                compact();
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, "lpmap-compact-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    // group commit的后台线程，等待maxDelayMillis或者有putAsync的时候把缓存写入文件
+    private void flushLoop() {
+        while (true) {
+            List<SyncWaiter> waiters;
+            Throwable error = null;
+            synchronized (this) {
+                try {
+                    if (syncWaiters.isEmpty()) {
+                        wait(Math.max(maxDelayMillis, 1L));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                try {
+                    fileChannelMap.flush();
+                    if (!syncWaiters.isEmpty()) {
+                        fileChannelMap.sync();
+                    }
+                } catch (Throwable t) {
+                    // 写入失败的时候数据还在缓存中，下一次继续重试，等待的putAsync直接失败
+                    error = t;
+                }
+                waiters = syncWaiters;
+                syncWaiters = new ArrayList<>();
+            }
+            // 在锁外完成future，避免回调在锁中执行
+            for (var waiter : waiters) {
+                if (error == null) {
+                    waiter.future.complete(waiter.value);
+                } else {
+                    waiter.future.completeExceptionally(error);
+                }
+            }
+            if (error != null) {
+                synchronized (this) {
+                    try {
+                        wait(Math.max(maxDelayMillis, 1L));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class SyncWaiter {
+        private final CompletableFuture<Object> future;
+        private final Object value;
+
+        private SyncWaiter(CompletableFuture<Object> future, Object value) {
+            this.future = future;
+            this.value = value;
+        }
+    }
+
+    private void modified(long key) {
+        if (dirtyKeys != null) {
+            dirtyKeys.add(key);
+            return;
+        }
+        if (fileChannelMap.garbageRatio() > compactGarbageRatio && fileChannelMap.dbSize() >= compactMinSize) {
+            compactAsync();
+        }
+    }
+
+    private void compact() throws IOException {
+        FileChannelMapCompactor compactor = null;
+        try {
+            FileChannel dbFileChannel;
+            FileChannel indexFileChannel;
+            long indexSize;
+            synchronized (this) {
+                fileChannelMap.flush();
+                compactor = fileChannelMap.newCompactor();
+                dbFileChannel = fileChannelMap.dbFileChannel;
+                indexFileChannel = fileChannelMap.indexFileChannel;
+                indexSize = indexFileChannel.size();
+            }
+
+            // 复制的时候不持有锁，FileChannel的positional read可以和写并发
+            compactor.copyAll(dbFileChannel, indexFileChannel, indexSize);
+
+            synchronized (this) {
+                if (compactCancelled) {
+                    compactor.abort();
+                    return;
+                }
+                fileChannelMap.flush();
+                for (var key : dirtyKeys) {
+                    compactor.copy(fileChannelMap.dbFileChannel, fileChannelMap.indexFileChannel, key);
+                }
+                fileChannelMap.commitCompactor(compactor);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (compactor != null) {
+                compactor.abort();
+            }
+            synchronized (this) {
+                // clear或者close导致的复制失败不算异常
+                if (compactCancelled) {
+                    return;
+                }
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                dirtyKeys = null;
+            }
+        }
+    }
+
 }
@@ -14,6 +14,9 @@ package com.zfoo.protocol.collection.lpmap;
 
 import com.zfoo.protocol.IPacket;
 import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.collection.ArrayListLong;
+import com.zfoo.protocol.collection.ArrayUtils;
+import com.zfoo.protocol.collection.HashMapLongLong;
 import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.registration.IProtocolRegistration;
 import com.zfoo.protocol.util.FileUtils;
@@ -21,6 +24,7 @@ import com.zfoo.protocol.util.IOUtils;
 import com.zfoo.protocol.util.StringUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
 
 import java.io.Closeable;
@@ -29,16 +33,36 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 
 /**
+ * get可以和其它的get以及一个写线程并发调用，写操作（put，delete，flush，compact，clear）之间需要外部同步
+ * <p>
+ * 读不加锁：还没有写入文件的值在pendingValues中，写文件和替换文件的时候writeSequence为奇数，
+ * 读文件前后writeSequence没有变化才说明读到的index和db是一致的，否则重新读
+ *
  * @author godotg
  * @version 3.0
  */
 public class FileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
 
+    // index文件中每个key占用的大小，[db文件中的位置][值的大小]
+    protected static final int INDEX_SIZE = 16;
+
+    // write-ahead log超过这个大小的时候fsync db和index，然后清空日志
+    private static final long WAL_CHECKPOINT_SIZE = 4L * IOUtils.BYTES_PER_MB;
+
+    // 范围读取的时候一次读取的index数量
+    private static final int RANGE_BATCH_SIZE = 4096;
+    // 范围读取的时候db文件中间隔小于这个大小的数据合并成一次读
+    private static final int RANGE_READ_GAP = 4 * IOUtils.BYTES_PER_KB;
+    // 范围读取的时候一次顺序读的最大大小
+    private static final int RANGE_READ_SIZE = IOUtils.BYTES_PER_MB;
+
     private final File dbFile;
     protected RandomAccessFile dbFileRandomAccess;
     protected FileChannel dbFileChannel;
@@ -47,35 +71,84 @@ public class FileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
     protected RandomAccessFile indexFileRandomAccess;
     protected FileChannel indexFileChannel;
 
-    protected long maxIndex;
+    // 先写入值再发布maxIndex，读线程看到的maxIndex以内的值都已经在pendingValues或者文件中
+    protected volatile long maxIndex;
+
+    // 写文件、压缩替换文件、clear的时候加1变成奇数，结束的时候再加1变成偶数，只有写线程修改
+    protected volatile long writeSequence;
+
+    // db文件中有效数据的大小，被覆盖和删除的数据不算在内
+    protected long liveBytes;
 
     protected IProtocolRegistration protocolRegistration;
 
     protected ByteBuf indexBuffer;
     protected ByteBuf dbBuffer;
 
+    // 已经写入db文件的数据的结尾，缓存中的数据从这个位置开始写
+    protected long dbPosition;
+
+    // 缓存的写入超过batchSize的时候一次性写入文件，0表示每次put都直接写入文件
+    protected final int batchSize;
+    protected final FsyncPolicy fsyncPolicy;
+    protected long lastSyncTime = System.currentTimeMillis();
+    // 有写入了文件但是还没有fsync的数据
+    protected boolean unsynced;
+
+    // 还没有写入文件的值，pendingBuffer用来一次性写入db文件，pendingValues给读线程使用，长度为0表示被删除
+    protected ByteBuf pendingBuffer;
+    protected final ArrayListLong pendingKeys = new ArrayListLong(16);
+    protected final HashMapLongLong pendingPositions = new HashMapLongLong();
+    protected final ConcurrentHashMap<Long, byte[]> pendingValues = new ConcurrentHashMap<>();
+
+    // fsyncPolicy开启了write-ahead log的时候不为null
+    protected FileChannelMapWal wal;
+
     public FileChannelMap(String dbPath, Class<V> clazz) {
+        this(dbPath, clazz, 0, FsyncPolicy.never());
+    }
+
+    /**
+     * @param batchSize   缓存的写入超过这个大小的时候批量写入文件，0表示每次put都直接写入文件，可以调用flush主动写入
+     * @param fsyncPolicy 写入文件之后的fsync策略
+     */
+    public FileChannelMap(String dbPath, Class<V> clazz, int batchSize, FsyncPolicy fsyncPolicy) {
+        this.batchSize = batchSize;
+        this.fsyncPolicy = fsyncPolicy;
         try {
             this.dbFile = FileUtils.getOrCreateFile(dbPath, StringUtils.format("{}.db", clazz.getSimpleName()));
-            this.dbFileRandomAccess = new RandomAccessFile(dbFile, "rw");
-            this.dbFileChannel = this.dbFileRandomAccess.getChannel();
-
             this.indexFile = FileUtils.getOrCreateFile(dbPath, StringUtils.format("{}.index", clazz.getSimpleName()));
-            this.indexFileRandomAccess = new RandomAccessFile(indexFile, "rw");
-            this.indexFileChannel = this.indexFileRandomAccess.getChannel();
+            FileChannelMapCompactor.recover(dbFile, indexFile);
+            openChannel();
+            // 上一次没有正常关闭的时候重放日志，没有开启write-ahead log的时候重放之后删除日志
+            wal = FileChannelMapWal.recover(dbFile, dbFileChannel, indexFileChannel, fsyncPolicy.isWal());
 
             var protocolId = ProtocolManager.protocolId(clazz);
             protocolRegistration = ProtocolManager.getProtocol(protocolId);
 
-            indexBuffer = ByteBufAllocator.DEFAULT.ioBuffer(16);
+            indexBuffer = ByteBufAllocator.DEFAULT.ioBuffer(INDEX_SIZE);
             dbBuffer = ByteBufAllocator.DEFAULT.ioBuffer(100);
+            pendingBuffer = ByteBufAllocator.DEFAULT.ioBuffer(Math.max(batchSize, 128));
 
-            maxIndex = indexFileChannel.size() / 16;
+            dbPosition = dbFileChannel.size();
+            maxIndex = indexFileChannel.size() / INDEX_SIZE;
+            liveBytes = scanLiveBytes();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    protected void openChannel() throws IOException {
+        this.dbFileRandomAccess = new RandomAccessFile(dbFile, "rw");
+        this.dbFileChannel = this.dbFileRandomAccess.getChannel();
+        this.indexFileRandomAccess = new RandomAccessFile(indexFile, "rw");
+        this.indexFileChannel = this.indexFileRandomAccess.getChannel();
+    }
+
+    protected void closeChannel() {
+        IOUtils.closeIO(indexFileRandomAccess, indexFileChannel, dbFileRandomAccess, dbFileChannel);
+    }
+
 
     @Override
     public V put(long key, V packet) {
@@ -84,11 +157,11 @@ public class FileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
         V previousValue = null;
         if (key <= maxIndex) {
             previousValue = get(key);
+            setKeyValue(key, packet);
         } else {
+            setKeyValue(key, packet);
             maxIndex = key;
         }
-
-        setKeyValue(key, packet);
         return previousValue;
     }
 
@@ -109,24 +182,50 @@ public class FileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
     public V get(long key) {
         checkKey(key);
 
-        if (key > maxIndex) {
-            return null;
+        while (true) {
+            var sequence = writeSequence;
+            if (key > maxIndex) {
+                return null;
+            }
+
+            var bytes = pendingValues.get(key);
+            if (bytes != null) {
+                return bytes.length == 0 ? null : (V) protocolRegistration.read(Unpooled.wrappedBuffer(bytes));
+            }
+
+            // 正在写文件的时候等写完再读
+            if ((sequence & 1) == 0) {
+                var value = readFile(key);
+                if (sequence == writeSequence) {
+                    return value;
+                }
+            }
+            Thread.yield();
         }
+    }
 
+    // 每次读使用自己的buffer，FileChannel的positional read可以并发调用
+    private V readFile(long key) {
+        var buffer = ByteBufAllocator.DEFAULT.ioBuffer(INDEX_SIZE);
         try {
-            clearByteBuf();
-            indexBuffer.writeBytes(indexFileChannel, key * 16L, 16);
-            var packetPosition = indexBuffer.readLong();
-            var packetSize = indexBuffer.readLong();
-            if (packetSize <= 0) {
+            if (buffer.writeBytes(indexFileChannel, key * INDEX_SIZE, INDEX_SIZE) < INDEX_SIZE) {
+                return null;
+            }
+            var packetPosition = buffer.readLong();
+            var packetSize = buffer.readLong();
+            if (packetSize <= 0 || packetSize > Integer.MAX_VALUE) {
                 return null;
             }
 
-            dbBuffer.writeBytes(dbFileChannel, packetPosition, (int) packetSize);
-            var packet = protocolRegistration.read(dbBuffer);
-            return (V) packet;
+            buffer.clear();
+            if (buffer.writeBytes(dbFileChannel, packetPosition, (int) packetSize) < packetSize) {
+                return null;
+            }
+            return (V) protocolRegistration.read(buffer);
         } catch (Exception e) {
             return null;
+        } finally {
+            ReferenceCountUtil.release(buffer);
         }
     }
 
@@ -149,13 +248,142 @@ public class FileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
         }
 
         var list = new ArrayList<V>();
-        for (var i = startKey; i < endKey; i++) {
-            var value = get(i);
-            if (value != null) {
-                list.add(value);
+        forEach(startKey, endKey, (key, value) -> list.add(value));
+        return list;
+    }
+
+    /**
+     * 按照key的顺序遍历从startKey到endKey的值，一次读取一段index，db文件中相邻的数据合并成一次顺序读，适合日志回放这种范围读取
+     *
+     * @param startKey inclusive
+     * @param endKey   exclusive
+     */
+    public void forEach(long startKey, long endKey, BiConsumer<Long, V> biConsumer) {
+        checkKey(startKey);
+        checkKey(endKey);
+
+        var values = new Object[RANGE_BATCH_SIZE];
+        var rangeIndexBuffer = ByteBufAllocator.DEFAULT.ioBuffer(RANGE_BATCH_SIZE * INDEX_SIZE);
+        var rangeDbBuffer = ByteBufAllocator.DEFAULT.ioBuffer(RANGE_READ_GAP);
+        try {
+            for (var batchStartKey = startKey; batchStartKey < endKey; ) {
+                var sequence = writeSequence;
+                var batchEndKey = Math.min(Math.min(endKey, maxIndex + 1), batchStartKey + RANGE_BATCH_SIZE);
+                if (batchStartKey >= batchEndKey) {
+                    return;
+                }
+
+                // 和get一样，读文件的前后writeSequence没有变化才说明这一批读到的数据是一致的
+                var success = false;
+                if ((sequence & 1) == 0) {
+                    try {
+                        readRange(batchStartKey, batchEndKey, values, rangeIndexBuffer, rangeDbBuffer);
+                        success = sequence == writeSequence;
+                    } catch (IOException e) {
+                        if (sequence == writeSequence) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+
+                if (success) {
+                    for (var i = 0; i < batchEndKey - batchStartKey; i++) {
+                        if (values[i] != null) {
+                            biConsumer.accept(batchStartKey + i, (V) values[i]);
+                        }
+                    }
+                    batchStartKey = batchEndKey;
+                } else {
+                    Thread.yield();
+                }
+                Arrays.fill(values, null);
+            }
+        } finally {
+            ReferenceCountUtil.release(rangeIndexBuffer);
+            ReferenceCountUtil.release(rangeDbBuffer);
+        }
+    }
+
+    private void readRange(long startKey, long endKey, Object[] values, ByteBuf rangeIndexBuffer, ByteBuf rangeDbBuffer) throws IOException {
+        var count = (int) (endKey - startKey);
+
+        // 一次读取这一批key的index，还没有写入index文件的key只可能在缓存中
+        var indexPosition = startKey * INDEX_SIZE;
+        var indexLength = (int) Math.max(0L, Math.min((long) count * INDEX_SIZE, indexFileChannel.size() - indexPosition));
+        indexLength -= indexLength % INDEX_SIZE;
+        readFully(indexFileChannel, rangeIndexBuffer, indexPosition, indexLength);
+        var fileCount = rangeIndexBuffer.readableBytes() / INDEX_SIZE;
+
+        var positions = new long[count];
+        var sizes = new int[count];
+        var offsets = new int[count];
+        var length = 0;
+        var sorted = true;
+        for (var i = 0; i < count; i++) {
+            var bytes = pendingValues.get(startKey + i);
+            if (bytes != null) {
+                values[i] = bytes.length == 0 ? null : read(Unpooled.wrappedBuffer(bytes));
+                continue;
+            }
+            if (i >= fileCount) {
+                continue;
+            }
+            var packetPosition = rangeIndexBuffer.getLong(i * INDEX_SIZE);
+            var packetSize = rangeIndexBuffer.getLong(i * INDEX_SIZE + 8);
+            if (packetSize <= 0 || packetSize > Integer.MAX_VALUE) {
+                continue;
             }
+            sorted &= length == 0 || packetPosition >= positions[offsets[length - 1]];
+            positions[i] = packetPosition;
+            sizes[i] = (int) packetSize;
+            offsets[length++] = i;
+        }
+
+        // 顺序追加的数据通常已经按照位置排好序，被覆盖过的key才需要重新排序
+        if (!sorted) {
+            var boxedOffsets = new Integer[length];
+            for (var i = 0; i < length; i++) {
+                boxedOffsets[i] = offsets[i];
+            }
+            Arrays.sort(boxedOffsets, (a, b) -> Long.compare(positions[a], positions[b]));
+            for (var i = 0; i < length; i++) {
+                offsets[i] = boxedOffsets[i];
+            }
+        }
+
+        // 位置相邻的数据合并成一次读
+        for (var runStart = 0; runStart < length; ) {
+            var runPosition = positions[offsets[runStart]];
+            var runEndPosition = runPosition + sizes[offsets[runStart]];
+            var runEnd = runStart + 1;
+            while (runEnd < length) {
+                var offset = offsets[runEnd];
+                var endPosition = positions[offset] + sizes[offset];
+                if (positions[offset] - runEndPosition > RANGE_READ_GAP || endPosition - runPosition > RANGE_READ_SIZE) {
+                    break;
+                }
+                runEndPosition = Math.max(runEndPosition, endPosition);
+                runEnd++;
+            }
+
+            readFully(dbFileChannel, rangeDbBuffer, runPosition, (int) (runEndPosition - runPosition));
+            for (var i = runStart; i < runEnd; i++) {
+                var offset = offsets[i];
+                var index = (int) (positions[offset] - runPosition);
+                if (index + sizes[offset] <= rangeDbBuffer.readableBytes()) {
+                    values[offset] = read(rangeDbBuffer.slice(index, sizes[offset]));
+                }
+            }
+            runStart = runEnd;
+        }
+    }
+
+    private V read(ByteBuf buffer) {
+        try {
+            return (V) protocolRegistration.read(buffer);
+        } catch (Exception e) {
+            return null;
         }
-        return list;
     }
 
 
@@ -172,70 +400,387 @@ public class FileChannelMap<V extends IPacket> implements LpMap<V>, Closeable {
 
     @Override
     public void forEach(BiConsumer<Long, V> biConsumer) {
-        for (var i = 0L; i <= getMaxIndex(); i++) {
-            var value = get(i);
-            if (value != null) {
-                biConsumer.accept(i, value);
+        forEach(0L, Long.MAX_VALUE, biConsumer);
+    }
+
+    /**
+     * db文件中无效数据的比例，超过一定比例的时候可以调用compact
+     */
+    public double garbageRatio() {
+        var dbSize = dbSize();
+        return dbSize <= 0 ? 0D : 1D - (double) liveBytes / dbSize;
+    }
+
+    /**
+     * db文件的大小，包括还没有写入文件的数据
+     */
+    public long dbSize() {
+        return dbPosition + pendingBuffer.readableBytes();
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * 把有效的数据按照key的顺序复制到新的文件中并替换原来的文件，回收被覆盖和删除的数据占用的空间，同时让读取有更好的局部性
+     */
+    public void compact() {
+        FileChannelMapCompactor compactor = null;
+        try {
+            flush();
+            compactor = newCompactor();
+            compactor.copyAll(dbFileChannel, indexFileChannel, indexFileChannel.size());
+            commitCompactor(compactor);
+        } catch (IOException e) {
+            if (compactor != null) {
+                compactor.abort();
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected FileChannelMapCompactor newCompactor() throws IOException {
+        return new FileChannelMapCompactor(dbFile, indexFile);
+    }
+
+    protected void commitCompactor(FileChannelMapCompactor compactor) throws IOException {
+        writeSequence++;
+        try {
+            closeChannel();
+            try {
+                compactor.commit();
+            } finally {
+                // 替换失败的时候完成或者丢弃这次压缩，然后重新打开文件
+                try {
+                    FileChannelMapCompactor.recover(dbFile, indexFile);
+                } finally {
+                    openChannel();
+                }
             }
+        } finally {
+            writeSequence++;
+        }
+        liveBytes = compactor.getLiveBytes();
+        dbPosition = dbFileChannel.size();
+        // 压缩之后的文件已经fsync，包含了日志中所有的记录
+        unsynced = false;
+        lastSyncTime = System.currentTimeMillis();
+        if (wal != null) {
+            wal.checkpoint();
         }
     }
 
     @Override
     public void clear() {
+        writeSequence++;
         try {
             maxIndex = 0;
+            liveBytes = 0;
+            dbPosition = 0;
+            clearPending();
+            if (wal != null) {
+                wal.checkpoint();
+            }
             indexFileRandomAccess.setLength(0);
             dbFileRandomAccess.setLength(0);
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            writeSequence++;
         }
 
     }
 
     @Override
     public void close() throws IOException {
-        IOUtils.closeIO(indexFileRandomAccess, indexFileChannel, dbFileRandomAccess, dbFileChannel);
-        ReferenceCountUtil.release(indexBuffer);
-        ReferenceCountUtil.release(dbBuffer);
+        try {
+            flush();
+            sync();
+            if (wal != null) {
+                wal.checkpoint();
+            }
+        } finally {
+            if (wal != null) {
+                wal.close();
+            }
+            closeChannel();
+            ReferenceCountUtil.release(indexBuffer);
+            ReferenceCountUtil.release(dbBuffer);
+            ReferenceCountUtil.release(pendingBuffer);
+        }
     }
 
-    protected void setKeyValue(long key, V value) {
-        try {
-            clearByteBuf();
+    /**
+     * 把缓存的写入一次性写入文件，db文件只有一次顺序写，index文件连续的key合并成一次写，然后按照fsyncPolicy决定是否fsync
+     * <p>
+     * 开启了write-ahead log的时候先把这一批写入追加到日志中，需要fsync的时候在写入db和index之前先fsync日志
+     */
+    public void flush() {
+        if (pendingKeys.isEmpty()) {
+            if (unsynced && fsyncPolicy.shouldSync(lastSyncTime, System.currentTimeMillis())) {
+                sync();
+            }
+            return;
+        }
 
-            protocolRegistration.write(dbBuffer, value);
+        // key排序去重，同一个key只保留最后一次写入
+        var keys = pendingKeys.toArrayPrimitive();
+        Arrays.sort(keys);
+        var length = 0;
+        for (var key : keys) {
+            if (length == 0 || keys[length - 1] != key) {
+                keys[length++] = key;
+            }
+        }
 
+        var shouldSync = fsyncPolicy.shouldSync(lastSyncTime, System.currentTimeMillis());
+        if (wal != null) {
+            try {
+                var values = new byte[length][];
+                for (var i = 0; i < length; i++) {
+                    values[i] = pendingValues.get(keys[i]);
+                }
+                wal.append(keys, values, length);
+                if (shouldSync) {
+                    wal.force();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        writeSequence++;
+        try {
             // db文件
-            var packetPosition = dbFileChannel.size();
-            // db文件数据的起始位置
-            indexBuffer.writeLong(packetPosition);
-            // db文件的值的大小
-            indexBuffer.writeLong(dbBuffer.readableBytes());
-            indexFileChannel.write(indexBuffer.nioBuffer(), key * 16);
-            dbFileChannel.write(dbBuffer.nioBuffer(), packetPosition);
+            writeFully(dbFileChannel, pendingBuffer, dbPosition);
 
-        } catch (Exception e) {
+            // index文件，连续的key一次写入
+            clearByteBuf();
+            var runStartKey = -1L;
+            var lastKey = -1L;
+            for (var i = 0; i < length; i++) {
+                var key = keys[i];
+                if (lastKey >= 0 && key != lastKey + 1) {
+                    writeFully(indexFileChannel, dbBuffer, runStartKey * INDEX_SIZE);
+                    dbBuffer.clear();
+                }
+                if (dbBuffer.readableBytes() == 0) {
+                    runStartKey = key;
+                }
+                dbBuffer.writeLong(pendingPositions.getPrimitive(key, 0L));
+                dbBuffer.writeLong(pendingValues.get(key).length);
+                lastKey = key;
+            }
+            writeFully(indexFileChannel, dbBuffer, runStartKey * INDEX_SIZE);
+
+            dbPosition += pendingBuffer.readableBytes();
+            clearPending();
+            unsynced = true;
+        } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
             clearByteBuf();
+            writeSequence++;
+        }
+
+        if (shouldSync) {
+            sync();
+        }
+        if (wal != null && wal.size() >= WAL_CHECKPOINT_SIZE) {
+            checkpoint();
         }
     }
 
-    protected void resetKey(long key) {
+    /**
+     * fsync db和index，然后清空write-ahead log，崩溃之后只需要重放checkpoint之后的日志
+     */
+    public void checkpoint() {
+        if (wal == null) {
+            return;
+        }
+        sync();
         try {
-            clearByteBuf();
+            wal.checkpoint();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 强制把已经写入文件的数据刷到磁盘，不包括还在缓存中的数据
+     */
+    public void sync() {
+        if (!unsynced) {
+            return;
+        }
+        try {
+            if (wal != null) {
+                wal.force();
+            }
+            dbFileChannel.force(false);
+            indexFileChannel.force(false);
+            unsynced = false;
+            lastSyncTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public int pendingBytes() {
+        return pendingBuffer.readableBytes();
+    }
+
+    protected void setKeyValue(long key, V value) {
+        try {
+            liveBytes -= packetSize(key);
 
-            indexBuffer.writeLong(0L);
-            indexBuffer.writeLong(0L);
-            indexFileChannel.write(indexBuffer.nioBuffer(), key * 16);
+            // 不开启group commit并且没有缓存的写入的时候直接写入文件，不需要复制到pendingValues，也不需要排序key
+            if (batchSize <= 0 && pendingKeys.isEmpty()) {
+                writeKeyValue(key, value);
+                return;
+            }
+
+            var packetPosition = dbSize();
+            var start = pendingBuffer.writerIndex();
+            protocolRegistration.write(pendingBuffer, value);
+            var packetSize = pendingBuffer.writerIndex() - start;
+            liveBytes += packetSize;
 
+            var bytes = new byte[packetSize];
+            pendingBuffer.getBytes(start, bytes);
+            addPending(key, packetPosition, bytes);
         } catch (Exception e) {
             throw new RuntimeException(e);
+        }
+    }
+
+    // 单个key的写入，db文件和index文件各写一次
+    private void writeKeyValue(long key, V value) throws IOException {
+        clearByteBuf();
+        try {
+            protocolRegistration.write(dbBuffer, value);
+            var packetSize = dbBuffer.readableBytes();
+            indexBuffer.writeLong(dbPosition);
+            indexBuffer.writeLong(packetSize);
+
+            var shouldSync = fsyncPolicy.shouldSync(lastSyncTime, System.currentTimeMillis());
+            if (wal != null) {
+                var bytes = new byte[packetSize];
+                dbBuffer.getBytes(dbBuffer.readerIndex(), bytes);
+                wal.append(new long[]{key}, new byte[][]{bytes}, 1);
+                if (shouldSync) {
+                    wal.force();
+                }
+            }
+
+            writeSequence++;
+            try {
+                writeFully(dbFileChannel, dbBuffer, dbPosition);
+                writeFully(indexFileChannel, indexBuffer, key * INDEX_SIZE);
+                dbPosition += packetSize;
+                liveBytes += packetSize;
+                unsynced = true;
+            } finally {
+                writeSequence++;
+            }
+
+            if (shouldSync) {
+                sync();
+            }
+            if (wal != null && wal.size() >= WAL_CHECKPOINT_SIZE) {
+                checkpoint();
+            }
         } finally {
             clearByteBuf();
         }
     }
 
+    protected void resetKey(long key) {
+        try {
+            liveBytes -= packetSize(key);
+            addPending(key, 0L, ArrayUtils.EMPTY_BYTE_ARRAY);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void addPending(long key, long packetPosition, byte[] bytes) {
+        pendingKeys.addPrimitive(key);
+        pendingPositions.putPrimitive(key, packetPosition);
+        pendingValues.put(key, bytes);
+        if (pendingBuffer.readableBytes() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void clearPending() {
+        pendingBuffer.clear();
+        pendingKeys.clear();
+        pendingPositions.clear();
+        pendingValues.clear();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuf buffer, long position, int length) throws IOException {
+        buffer.clear();
+        while (buffer.readableBytes() < length) {
+            if (buffer.writeBytes(channel, position + buffer.readableBytes(), length - buffer.readableBytes()) < 0) {
+                return;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuf buffer, long position) throws IOException {
+        var nioBuffer = buffer.nioBuffer();
+        var length = nioBuffer.remaining();
+        while (nioBuffer.hasRemaining()) {
+            channel.write(nioBuffer, position + length - nioBuffer.remaining());
+        }
+    }
+
+    // key当前的值在db文件中的大小，没有值返回0
+    protected long packetSize(long key) throws IOException {
+        var bytes = pendingValues.get(key);
+        if (bytes != null) {
+            return bytes.length;
+        }
+        var position = key * INDEX_SIZE;
+        if (position + INDEX_SIZE > indexFileChannel.size()) {
+            return 0L;
+        }
+        clearByteBuf();
+        indexBuffer.writeBytes(indexFileChannel, position, INDEX_SIZE);
+        indexBuffer.skipBytes(8);
+        var packetSize = indexBuffer.readLong();
+        clearByteBuf();
+        return Math.max(packetSize, 0L);
+    }
+
+    private long scanLiveBytes() throws IOException {
+        var indexSize = indexFileChannel.size();
+        var buffer = ByteBufAllocator.DEFAULT.ioBuffer(4096 * INDEX_SIZE);
+        try {
+            var live = 0L;
+            for (var position = 0L; position + INDEX_SIZE <= indexSize; ) {
+                buffer.clear();
+                var length = (int) Math.min(buffer.capacity(), indexSize - position);
+                length -= length % INDEX_SIZE;
+                var count = buffer.writeBytes(indexFileChannel, position, length);
+                if (count <= 0) {
+                    break;
+                }
+                while (buffer.readableBytes() >= INDEX_SIZE) {
+                    buffer.skipBytes(8);
+                    live += Math.max(buffer.readLong(), 0L);
+                }
+                position += count - buffer.readableBytes();
+            }
+            return live;
+        } finally {
+            ReferenceCountUtil.release(buffer);
+        }
+    }
+
     protected void clearByteBuf() {
         indexBuffer.clear();
         dbBuffer.clear();
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+import com.zfoo.protocol.util.IOUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * FileChannelMap的压缩，把有效的记录按照key的顺序复制到新的.db和.index文件中，然后替换掉原来的文件
+ * <p>
+ * 两个文件的替换不是原子的，所以复制完成之后先创建一个.done标记文件再替换，打开FileChannelMap的时候调用recover：
+ * 有.done标记说明复制已经完成，继续完成替换；没有.done标记说明复制没有完成，直接删除复制了一半的文件
+ *
+ * @author godotg
+ * @version 3.0
+ */
+class FileChannelMapCompactor implements Closeable {
+
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String DONE_SUFFIX = ".done";
+
+    // 每次读取的index的数量
+    private static final int CHUNK_KEYS = 4096;
+
+    private final File dbFile;
+    private final File indexFile;
+    private final File compactDbFile;
+    private final File compactIndexFile;
+    private final File doneFile;
+
+    private final RandomAccessFile dbRandomAccess;
+    private final FileChannel dbChannel;
+    private final RandomAccessFile indexRandomAccess;
+    private final FileChannel indexChannel;
+
+    private final ByteBuf readBuffer = ByteBufAllocator.DEFAULT.ioBuffer(CHUNK_KEYS * FileChannelMap.INDEX_SIZE);
+    private final ByteBuf writeBuffer = ByteBufAllocator.DEFAULT.ioBuffer(CHUNK_KEYS * FileChannelMap.INDEX_SIZE);
+
+    private long liveBytes;
+
+    private boolean closed;
+
+    FileChannelMapCompactor(File dbFile, File indexFile) throws IOException {
+        this.dbFile = dbFile;
+        this.indexFile = indexFile;
+        this.compactDbFile = new File(dbFile.getAbsolutePath() + COMPACT_SUFFIX);
+        this.compactIndexFile = new File(indexFile.getAbsolutePath() + COMPACT_SUFFIX);
+        this.doneFile = doneFile(dbFile);
+
+        Files.deleteIfExists(compactDbFile.toPath());
+        Files.deleteIfExists(compactIndexFile.toPath());
+        this.dbRandomAccess = new RandomAccessFile(compactDbFile, "rw");
+        this.dbChannel = dbRandomAccess.getChannel();
+        this.indexRandomAccess = new RandomAccessFile(compactIndexFile, "rw");
+        this.indexChannel = indexRandomAccess.getChannel();
+    }
+
+    /**
+     * 打开FileChannelMap之前调用，完成或者丢弃上一次没有完成的压缩
+     */
+    static void recover(File dbFile, File indexFile) throws IOException {
+        var compactDbFile = new File(dbFile.getAbsolutePath() + COMPACT_SUFFIX);
+        var compactIndexFile = new File(indexFile.getAbsolutePath() + COMPACT_SUFFIX);
+        var doneFile = doneFile(dbFile);
+        if (doneFile.exists()) {
+            if (compactDbFile.exists()) {
+                move(compactDbFile, dbFile);
+            }
+            if (compactIndexFile.exists()) {
+                move(compactIndexFile, indexFile);
+            }
+            Files.delete(doneFile.toPath());
+        } else {
+            Files.deleteIfExists(compactDbFile.toPath());
+            Files.deleteIfExists(compactIndexFile.toPath());
+        }
+    }
+
+    /**
+     * 按照key的顺序复制[0, indexSize / 16)中所有有效的记录，复制的过程中可以有并发的读写，被并发修改的key需要再调用copy(key)
+     */
+    void copyAll(FileChannel srcDbChannel, FileChannel srcIndexChannel, long indexSize) throws IOException {
+        var srcDbSize = srcDbChannel.size();
+        var chunkSize = CHUNK_KEYS * FileChannelMap.INDEX_SIZE;
+        indexSize -= indexSize % FileChannelMap.INDEX_SIZE;
+        for (var start = 0L; start < indexSize; start += chunkSize) {
+            var length = (int) Math.min(chunkSize, indexSize - start);
+            readBuffer.clear();
+            while (readBuffer.readableBytes() < length) {
+                if (readBuffer.writeBytes(srcIndexChannel, start + readBuffer.readableBytes(), length - readBuffer.readableBytes()) < 0) {
+                    break;
+                }
+            }
+
+            writeBuffer.clear();
+            while (readBuffer.readableBytes() >= FileChannelMap.INDEX_SIZE) {
+                var position = readBuffer.readLong();
+                var size = readBuffer.readLong();
+                // 被并发修改的index可能读到不完整的值，这些key会在copy(key)中重新复制
+                if (size > 0 && position >= 0 && position + size <= srcDbSize) {
+                    writeBuffer.writeLong(transfer(srcDbChannel, position, size));
+                    writeBuffer.writeLong(size);
+                    liveBytes += size;
+                } else {
+                    writeBuffer.writeLong(0L);
+                    writeBuffer.writeLong(0L);
+                }
+            }
+            writeFully(indexChannel, writeBuffer, start);
+        }
+    }
+
+    /**
+     * 重新复制一个key当前的值，用于复制过程中被修改过的key
+     */
+    void copy(FileChannel srcDbChannel, FileChannel srcIndexChannel, long key) throws IOException {
+        var indexPosition = key * FileChannelMap.INDEX_SIZE;
+
+        // 减去之前复制的值
+        var copiedEntry = readEntry(indexChannel, indexPosition);
+        if (copiedEntry != null && copiedEntry[1] > 0) {
+            liveBytes -= copiedEntry[1];
+        }
+
+        var entry = readEntry(srcIndexChannel, indexPosition);
+        writeBuffer.clear();
+        if (entry != null && entry[1] > 0) {
+            writeBuffer.writeLong(transfer(srcDbChannel, entry[0], entry[1]));
+            writeBuffer.writeLong(entry[1]);
+            liveBytes += entry[1];
+        } else {
+            writeBuffer.writeLong(0L);
+            writeBuffer.writeLong(0L);
+        }
+        writeFully(indexChannel, writeBuffer, indexPosition);
+    }
+
+    /**
+     * 调用之前原来的文件的channel必须已经关闭
+     */
+    void commit() throws IOException {
+        dbChannel.force(true);
+        indexChannel.force(true);
+        close();
+
+        Files.createFile(doneFile.toPath());
+        move(compactDbFile, dbFile);
+        move(compactIndexFile, indexFile);
+        Files.delete(doneFile.toPath());
+    }
+
+    void abort() {
+        close();
+        try {
+            Files.deleteIfExists(compactDbFile.toPath());
+            Files.deleteIfExists(compactIndexFile.toPath());
+        } catch (IOException e) {
+            // 下次打开的时候recover会再删除
+        }
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOUtils.closeIO(dbChannel, dbRandomAccess, indexChannel, indexRandomAccess);
+        ReferenceCountUtil.release(readBuffer);
+        ReferenceCountUtil.release(writeBuffer);
+    }
+
+    // 使用transferTo在内核中复制，返回在新的db文件中的位置
+    private long transfer(FileChannel srcDbChannel, long position, long size) throws IOException {
+        var newPosition = dbChannel.position();
+        var transferred = 0L;
+        while (transferred < size) {
+            var count = srcDbChannel.transferTo(position + transferred, size - transferred, dbChannel);
+            if (count <= 0) {
+                throw new IOException("Unexpected end of db file at position " + (position + transferred));
+            }
+            transferred += count;
+        }
+        return newPosition;
+    }
+
+    private long[] readEntry(FileChannel channel, long indexPosition) throws IOException {
+        if (indexPosition + FileChannelMap.INDEX_SIZE > channel.size()) {
+            return null;
+        }
+        readBuffer.clear();
+        while (readBuffer.readableBytes() < FileChannelMap.INDEX_SIZE) {
+            if (readBuffer.writeBytes(channel, indexPosition + readBuffer.readableBytes(), FileChannelMap.INDEX_SIZE - readBuffer.readableBytes()) < 0) {
+                return null;
+            }
+        }
+        return new long[]{readBuffer.readLong(), readBuffer.readLong()};
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuf buffer, long position) throws IOException {
+        var nioBuffer = buffer.nioBuffer();
+        while (nioBuffer.hasRemaining()) {
+            channel.write(nioBuffer, position + (buffer.readableBytes() - nioBuffer.remaining()));
+        }
+    }
+
+    private static File doneFile(File dbFile) {
+        return new File(dbFile.getAbsolutePath() + COMPACT_SUFFIX + DONE_SUFFIX);
+    }
+
+    private static void move(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+import com.zfoo.protocol.util.IOUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * FileChannelMap的write-ahead log，每次写入db和index之前先把这一批写入追加到.wal文件中，
+ * 崩溃的时候db和index可能只写了一半，重新打开的时候重放.wal中上一次checkpoint之后的记录就可以恢复到一致的状态
+ * <p>
+ * 文件头：[int magic][int version][long 第一条记录的序号]
+ * <p>
+ * 记录：[int crc32][int 值的长度][long 序号][long key][值]，值的长度为0表示删除，crc32校验crc32之后的所有内容，
+ * 恢复的时候遇到校验失败或者序号不连续的记录说明是没有写完的尾部，直接截断
+ * <p>
+ * db和index fsync之后调用checkpoint清空.wal，所以恢复的时间只和没有checkpoint的尾部的大小有关，和map的大小无关
+ *
+ * @author godotg
+ * @version 3.0
+ */
+class FileChannelMapWal implements Closeable {
+
+    private static final int MAGIC = 0x5A57414C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    private final RandomAccessFile walRandomAccess;
+    private final FileChannel walChannel;
+
+    private final ByteBuf buffer = ByteBufAllocator.DEFAULT.ioBuffer(4 * IOUtils.BYTES_PER_KB);
+    private final CRC32 crc32 = new CRC32();
+
+    // 下一条记录的序号
+    private long nextSequence;
+    // 下一条记录在.wal文件中的位置
+    private long position;
+    // 有写入了文件但是还没有fsync的记录
+    private boolean unsynced;
+
+    private boolean closed;
+
+    private FileChannelMapWal(File walFile) throws IOException {
+        this.walRandomAccess = new RandomAccessFile(walFile, "rw");
+        this.walChannel = walRandomAccess.getChannel();
+    }
+
+    static File walFile(File dbFile) {
+        var path = dbFile.getAbsolutePath();
+        return new File(path.substring(0, path.length() - ".db".length()) + ".wal");
+    }
+
+    /**
+     * 打开.wal文件并且把上一次checkpoint之后的记录重放到db和index中，db和index的channel必须已经打开
+     *
+     * @param keep false表示重放之后删除.wal文件，不再使用write-ahead log
+     * @return keep为false的时候返回null
+     */
+    static FileChannelMapWal recover(File dbFile, FileChannel dbChannel, FileChannel indexChannel, boolean keep) throws IOException {
+        var walFile = walFile(dbFile);
+        if (!keep && !walFile.exists()) {
+            return null;
+        }
+
+        var wal = new FileChannelMapWal(walFile);
+        try {
+            wal.replay(dbChannel, indexChannel);
+        } catch (IOException | RuntimeException e) {
+            wal.close();
+            throw e;
+        }
+        if (keep) {
+            return wal;
+        }
+        wal.close();
+        Files.delete(walFile.toPath());
+        return null;
+    }
+
+    private void replay(FileChannel dbChannel, FileChannel indexChannel) throws IOException {
+        var walSize = walChannel.size();
+        if (walSize < HEADER_SIZE || !readFully(0, HEADER_SIZE) || buffer.readInt() != MAGIC) {
+            // 没有文件头说明是新文件或者在写文件头的时候崩溃，这时候还没有任何记录
+            nextSequence = 0;
+            checkpoint();
+            return;
+        }
+        buffer.skipBytes(4);
+        nextSequence = buffer.readLong();
+        position = HEADER_SIZE;
+
+        var replayed = false;
+        var dbPosition = dbChannel.size();
+        var indexBuffer = ByteBufAllocator.DEFAULT.ioBuffer(FileChannelMap.INDEX_SIZE);
+        try {
+            while (position + RECORD_HEADER_SIZE <= walSize && readFully(position, RECORD_HEADER_SIZE)) {
+                var crc = buffer.readInt();
+                var valueLength = buffer.readInt();
+                var sequence = buffer.readLong();
+                var key = buffer.readLong();
+                if (valueLength < 0 || sequence != nextSequence || key < 0 || position + RECORD_HEADER_SIZE + valueLength > walSize) {
+                    break;
+                }
+                if (!readFully(position, RECORD_HEADER_SIZE + valueLength) || crc != checksum(buffer, 4, RECORD_HEADER_SIZE - 4 + valueLength)) {
+                    break;
+                }
+
+                // 值追加到db文件的末尾，重复重放同一条记录只会多一些无效数据
+                indexBuffer.clear();
+                if (valueLength > 0) {
+                    writeFully(dbChannel, buffer.slice(RECORD_HEADER_SIZE, valueLength), dbPosition);
+                    indexBuffer.writeLong(dbPosition);
+                    dbPosition += valueLength;
+                } else {
+                    indexBuffer.writeLong(0L);
+                }
+                indexBuffer.writeLong(valueLength);
+                writeFully(indexChannel, indexBuffer, key * FileChannelMap.INDEX_SIZE);
+
+                replayed = true;
+                position += RECORD_HEADER_SIZE + valueLength;
+                nextSequence++;
+            }
+        } finally {
+            ReferenceCountUtil.release(indexBuffer);
+        }
+
+        if (replayed) {
+            dbChannel.force(false);
+            indexChannel.force(false);
+        }
+        // 重放之后db和index已经包含了所有的记录，没有写完的尾部也一起丢弃
+        checkpoint();
+    }
+
+    /**
+     * 在写入db和index之前调用，把一批记录一次性追加到.wal文件中
+     */
+    void append(long[] keys, byte[][] values, int length) throws IOException {
+        buffer.clear();
+        for (var i = 0; i < length; i++) {
+            var start = buffer.writerIndex();
+            var value = values[i];
+            buffer.writeInt(0);
+            buffer.writeInt(value.length);
+            buffer.writeLong(nextSequence++);
+            buffer.writeLong(keys[i]);
+            buffer.writeBytes(value);
+            buffer.setInt(start, checksum(buffer, start + 4, buffer.writerIndex() - start - 4));
+        }
+        writeFully(walChannel, buffer, position);
+        position += buffer.readableBytes();
+        unsynced = true;
+    }
+
+    void force() throws IOException {
+        if (unsynced) {
+            walChannel.force(false);
+            unsynced = false;
+        }
+    }
+
+    /**
+     * 调用之前db和index必须已经fsync，清空.wal文件，下一条记录的序号从文件头中继续
+     */
+    void checkpoint() throws IOException {
+        buffer.clear();
+        buffer.writeInt(MAGIC);
+        buffer.writeInt(VERSION);
+        buffer.writeLong(nextSequence);
+        walRandomAccess.setLength(HEADER_SIZE);
+        writeFully(walChannel, buffer, 0);
+        walChannel.force(false);
+        position = HEADER_SIZE;
+        unsynced = false;
+    }
+
+    long size() {
+        return position;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOUtils.closeIO(walChannel, walRandomAccess);
+        ReferenceCountUtil.release(buffer);
+    }
+
+    private boolean readFully(long readPosition, int length) throws IOException {
+        buffer.clear();
+        while (buffer.readableBytes() < length) {
+            if (buffer.writeBytes(walChannel, readPosition + buffer.readableBytes(), length - buffer.readableBytes()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int checksum(ByteBuf byteBuf, int index, int length) {
+        crc32.reset();
+        crc32.update(byteBuf.nioBuffer(index, length));
+        return (int) crc32.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuf byteBuf, long position) throws IOException {
+        var nioBuffer = byteBuf.nioBuffer();
+        while (nioBuffer.hasRemaining()) {
+            channel.write(nioBuffer, position + (byteBuf.readableBytes() - nioBuffer.remaining()));
+        }
+    }
+}
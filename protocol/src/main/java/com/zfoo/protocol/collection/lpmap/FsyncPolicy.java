@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+/**
+ * 文件LpMap的fsync策略
+ * <p>
+ * NEVER：只写入操作系统的page cache，由操作系统决定什么时候刷盘，宕机可能丢失数据，进程崩溃不会丢失数据
+ * <p>
+ * INTERVAL：距离上一次fsync超过intervalMillis的时候fsync，最多丢失intervalMillis的数据
+ * <p>
+ * BATCH：每一次批量写入之后都fsync
+ * <p>
+ * withWal：写入db和index之前先写入write-ahead log，崩溃之后重新打开的时候重放，db和index不会出现写了一半的不一致的状态，
+ * 配合BATCH的时候每次写入db和index之前先fsync日志，宕机也能保证一致
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class FsyncPolicy {
+
+    public enum Mode {
+        NEVER,
+        INTERVAL,
+        BATCH
+    }
+
+    private static final FsyncPolicy NEVER_POLICY = new FsyncPolicy(Mode.NEVER, 0L, false);
+    private static final FsyncPolicy BATCH_POLICY = new FsyncPolicy(Mode.BATCH, 0L, false);
+
+    private final Mode mode;
+
+    private final long intervalMillis;
+
+    private final boolean wal;
+
+    private FsyncPolicy(Mode mode, long intervalMillis, boolean wal) {
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+        this.wal = wal;
+    }
+
+    public static FsyncPolicy never() {
+        return NEVER_POLICY;
+    }
+
+    public static FsyncPolicy everyBatch() {
+        return BATCH_POLICY;
+    }
+
+    public static FsyncPolicy interval(long intervalMillis) {
+        return new FsyncPolicy(Mode.INTERVAL, intervalMillis, false);
+    }
+
+    /**
+     * 相同的fsync策略，同时开启write-ahead log
+     */
+    public FsyncPolicy withWal() {
+        return new FsyncPolicy(mode, intervalMillis, true);
+    }
+
+    public boolean shouldSync(long lastSyncTime, long now) {
+        switch (mode) {
+            case BATCH:
+                return true;
+            case INTERVAL:
+                return now - lastSyncTime >= intervalMillis;
+            default:
+                return false;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public boolean isWal() {
+        return wal;
+    }
+
+    @Override
+    public String toString() {
+        var str = mode == Mode.INTERVAL ? mode + "(" + intervalMillis + "ms)" : mode.toString();
+        return wal ? str + "+WAL" : str;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+import com.zfoo.protocol.IPacket;
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.registration.IProtocolRegistration;
+import com.zfoo.protocol.util.FileUtils;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * 和FileChannelMap的文件格式相同，.db和.index文件按照固定大小的segment映射到内存中，get只需要计算地址然后直接在映射的内存上反序列化，
+ * 不需要系统调用和拷贝，适合读多写少的回放和归档服务
+ * <p>
+ * 映射的时候文件会被扩展到segment的整数倍，close的时候截断为实际的大小。打开期间.length文件中记录db和index文件实际使用的长度，
+ * 没有close就宕机的话重新打开的时候按照记录的长度截断，maxIndex不会包含扩展出来的key；正常close之后删除.length文件，文件格式和FileChannelMap相同
+ * <p>
+ * 非线程安全
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class MappedLpMap<V extends IPacket> implements LpMap<V>, Closeable {
+
+    private static final int INDEX_SIZE = 16;
+
+    // .length文件的格式，dbPosition和indexLength
+    private static final int LENGTH_SIZE = 16;
+
+    private static final int DEFAULT_DB_SEGMENT_SIZE = 64 * IOUtils.BYTES_PER_MB;
+    private static final int DEFAULT_INDEX_SEGMENT_SIZE = 16 * IOUtils.BYTES_PER_MB;
+
+    private final RandomAccessFile dbFileRandomAccess;
+    private final FileChannel dbFileChannel;
+    private final List<MappedByteBuffer> dbSegments = new ArrayList<>();
+    private final int dbSegmentSize;
+    // db文件下一次写入的位置
+    private long dbPosition;
+
+    private final RandomAccessFile indexFileRandomAccess;
+    private final FileChannel indexFileChannel;
+    private final List<MappedByteBuffer> indexSegments = new ArrayList<>();
+    private final int indexSegmentSize;
+    // index文件已经使用的长度
+    private long indexLength;
+
+    private long maxIndex;
+
+    private final File lengthFile;
+    private final RandomAccessFile lengthFileRandomAccess;
+    private final FileChannel lengthFileChannel;
+    private final MappedByteBuffer lengthBuffer;
+
+    private final IProtocolRegistration protocolRegistration;
+
+    private final ByteBuf writeBuffer;
+
+    public MappedLpMap(String dbPath, Class<V> clazz) {
+        this(dbPath, clazz, DEFAULT_DB_SEGMENT_SIZE, DEFAULT_INDEX_SEGMENT_SIZE);
+    }
+
+    public MappedLpMap(String dbPath, Class<V> clazz, int dbSegmentSize, int indexSegmentSize) {
+        if (indexSegmentSize % INDEX_SIZE != 0) {
+            throw new RunException("index segment size [{}] must be a multiple of [{}]", indexSegmentSize, INDEX_SIZE);
+        }
+        try {
+            var dbFile = FileUtils.getOrCreateFile(dbPath, StringUtils.format("{}.db", clazz.getSimpleName()));
+            this.dbFileRandomAccess = new RandomAccessFile(dbFile, "rw");
+            this.dbFileChannel = dbFileRandomAccess.getChannel();
+            this.dbSegmentSize = dbSegmentSize;
+
+            var indexFile = FileUtils.getOrCreateFile(dbPath, StringUtils.format("{}.index", clazz.getSimpleName()));
+            this.indexFileRandomAccess = new RandomAccessFile(indexFile, "rw");
+            this.indexFileChannel = indexFileRandomAccess.getChannel();
+            this.indexSegmentSize = indexSegmentSize;
+
+            this.lengthFile = FileUtils.getOrCreateFile(dbPath, StringUtils.format("{}.length", clazz.getSimpleName()));
+            this.lengthFileRandomAccess = new RandomAccessFile(lengthFile, "rw");
+            this.lengthFileChannel = lengthFileRandomAccess.getChannel();
+            var crashed = lengthFileChannel.size() == LENGTH_SIZE;
+            this.lengthBuffer = lengthFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, LENGTH_SIZE);
+            if (crashed) {
+                // 上一次没有close，文件的大小是segment的整数倍，按照记录的实际长度截断
+                this.dbPosition = lengthBuffer.getLong(0);
+                this.indexLength = lengthBuffer.getLong(8);
+                dbFileRandomAccess.setLength(dbPosition);
+                indexFileRandomAccess.setLength(indexLength);
+            } else {
+                this.dbPosition = dbFileChannel.size();
+                this.indexLength = indexFileChannel.size();
+                updateLength();
+            }
+
+            var protocolId = ProtocolManager.protocolId(clazz);
+            this.protocolRegistration = ProtocolManager.getProtocol(protocolId);
+            this.writeBuffer = ByteBufAllocator.DEFAULT.heapBuffer(128);
+
+            this.maxIndex = indexLength / INDEX_SIZE;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    @Override
+    public V put(long key, V packet) {
+        checkKey(key);
+
+        V previousValue = null;
+        if (key <= maxIndex) {
+            previousValue = get(key);
+        } else {
+            maxIndex = key;
+        }
+
+        var position = writeRecord(packet);
+        writeIndex(key, position, writeBuffer.readableBytes());
+        writeBuffer.clear();
+        return previousValue;
+    }
+
+    @Override
+    public V delete(long key) {
+        checkKey(key);
+
+        if (key > maxIndex) {
+            return null;
+        }
+
+        var previousValue = get(key);
+        if (previousValue != null) {
+            writeIndex(key, 0L, 0L);
+        }
+        return previousValue;
+    }
+
+    @Override
+    public V get(long key) {
+        checkKey(key);
+
+        var indexPosition = key * INDEX_SIZE;
+        if (key > maxIndex || indexPosition + INDEX_SIZE > indexLength) {
+            return null;
+        }
+
+        var segment = indexSegment(indexPosition);
+        var offset = (int) (indexPosition % indexSegmentSize);
+        var packetPosition = segment.getLong(offset);
+        var packetSize = segment.getLong(offset + 8);
+        if (packetSize <= 0) {
+            return null;
+        }
+
+        var buffer = readRecord(packetPosition, (int) packetSize);
+        try {
+            return (V) protocolRegistration.read(buffer);
+        } finally {
+            ReferenceCountUtil.release(buffer);
+        }
+    }
+
+    /**
+     * 获取从startKey到endKey的值
+     *
+     * @param startKey inclusive
+     * @param endKey   exclusive
+     * @return list
+     */
+    public List<V> getFrom(long startKey, long endKey) {
+        checkKey(startKey);
+        checkKey(endKey);
+
+        if (startKey >= endKey) {
+            throw new RunException("range error startKey < endKey");
+        }
+        if (startKey > maxIndex) {
+            return Collections.emptyList();
+        }
+
+        var list = new ArrayList<V>();
+        for (var i = startKey; i < endKey; i++) {
+            var value = get(i);
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public long getMaxIndex() {
+        return maxIndex;
+    }
+
+    @Override
+    public long getIncrementIndex() {
+        maxIndex++;
+        return maxIndex;
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, V> biConsumer) {
+        for (var i = 0L; i <= getMaxIndex(); i++) {
+            var value = get(i);
+            if (value != null) {
+                biConsumer.accept(i, value);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            unmap();
+            maxIndex = 0;
+            dbPosition = 0;
+            indexLength = 0;
+            updateLength();
+            indexFileRandomAccess.setLength(0);
+            dbFileRandomAccess.setLength(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 把映射的内存刷到磁盘
+     */
+    public void flush() {
+        dbSegments.stream().filter(Objects::nonNull).forEach(MappedByteBuffer::force);
+        indexSegments.stream().filter(Objects::nonNull).forEach(MappedByteBuffer::force);
+        lengthBuffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        unmap();
+        // 去掉映射时扩展的部分，和FileChannelMap的文件保持一致
+        dbFileRandomAccess.setLength(dbPosition);
+        indexFileRandomAccess.setLength(indexLength);
+        PlatformDependent.freeDirectBuffer(lengthBuffer);
+        IOUtils.closeIO(indexFileRandomAccess, indexFileChannel, dbFileRandomAccess, dbFileChannel, lengthFileRandomAccess, lengthFileChannel);
+        // 文件已经截断为实际的大小，不再需要.length文件，FileChannelMap也可以直接打开
+        FileUtils.deleteFile(lengthFile);
+        ReferenceCountUtil.release(writeBuffer);
+    }
+
+    private long writeRecord(V packet) {
+        writeBuffer.clear();
+        protocolRegistration.write(writeBuffer, packet);
+        var size = writeBuffer.readableBytes();
+
+        // 记录不跨越segment，放不下的时候直接从下一个segment开始写
+        var offset = (int) (dbPosition % dbSegmentSize);
+        if (size <= dbSegmentSize && offset + size > dbSegmentSize) {
+            dbPosition += dbSegmentSize - offset;
+        }
+
+        var position = dbPosition;
+        if (size > dbSegmentSize) {
+            // 比segment还大的记录直接写文件，读取的时候拷贝
+            try {
+                dbFileChannel.write(writeBuffer.nioBuffer(), position);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            var segment = dbSegment(position).duplicate();
+            segment.position((int) (position % dbSegmentSize));
+            segment.put(writeBuffer.nioBuffer());
+        }
+        dbPosition += size;
+        updateLength();
+        return position;
+    }
+
+    private ByteBuf readRecord(long position, int size) {
+        var offset = (int) (position % dbSegmentSize);
+        if (offset + size <= dbSegmentSize) {
+            // 直接包装映射的内存，没有拷贝
+            var segment = dbSegment(position).duplicate();
+            segment.position(offset).limit(offset + size);
+            return Unpooled.wrappedBuffer(segment);
+        }
+
+        // 跨越segment的记录（FileChannelMap写入的文件，或者比segment还大的记录）
+        var buffer = ByteBufAllocator.DEFAULT.heapBuffer(size);
+        try {
+            buffer.writeBytes(dbFileChannel, position, size);
+        } catch (IOException e) {
+            ReferenceCountUtil.release(buffer);
+            throw new RuntimeException(e);
+        }
+        return buffer;
+    }
+
+    private void writeIndex(long key, long packetPosition, long packetSize) {
+        var indexPosition = key * INDEX_SIZE;
+        var segment = indexSegment(indexPosition);
+        var offset = (int) (indexPosition % indexSegmentSize);
+        segment.putLong(offset, packetPosition);
+        segment.putLong(offset + 8, packetSize);
+        indexLength = Math.max(indexLength, indexPosition + INDEX_SIZE);
+        updateLength();
+    }
+
+    private void updateLength() {
+        lengthBuffer.putLong(0, dbPosition);
+        lengthBuffer.putLong(8, indexLength);
+    }
+
+    private MappedByteBuffer dbSegment(long position) {
+        return segment(dbSegments, dbFileChannel, dbSegmentSize, position);
+    }
+
+    private MappedByteBuffer indexSegment(long position) {
+        return segment(indexSegments, indexFileChannel, indexSegmentSize, position);
+    }
+
+    private MappedByteBuffer segment(List<MappedByteBuffer> segments, FileChannel channel, int segmentSize, long position) {
+        var segmentIndex = (int) (position / segmentSize);
+        if (segmentIndex < segments.size()) {
+            var segment = segments.get(segmentIndex);
+            if (segment != null) {
+                return segment;
+            }
+        }
+        while (segments.size() <= segmentIndex) {
+            segments.add(null);
+        }
+        try {
+            var segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) segmentIndex * segmentSize, segmentSize);
+            segments.set(segmentIndex, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void unmap() {
+        for (var segment : dbSegments) {
+            if (segment != null) {
+                PlatformDependent.freeDirectBuffer(segment);
+            }
+        }
+        for (var segment : indexSegments) {
+            if (segment != null) {
+                PlatformDependent.freeDirectBuffer(segment);
+            }
+        }
+        dbSegments.clear();
+        indexSegments.clear();
+    }
+
+}
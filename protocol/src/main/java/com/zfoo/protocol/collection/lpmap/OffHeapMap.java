@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+import com.zfoo.protocol.IPacket;
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.collection.HashMapLongLong;
+import com.zfoo.protocol.registration.IProtocolRegistration;
+import com.zfoo.protocol.util.IOUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * value序列化之后保存在堆外内存中，get的时候再反序列化，适合保存千万级别的数据（邮件，聊天记录），不会增加GC的负担
+ * <p>
+ * 堆外内存按照slab分配，每条记录的格式为[int length][packet]，key到记录地址的索引使用基础类型的HashMapLongLong，
+ * 地址的高32位为slab的位置，低32位为记录在slab中的偏移。覆盖和删除的记录不会立刻回收，一个slab中的记录全部失效之后释放整个slab
+ * <p>
+ * 非线程安全，使用完之后需要调用close释放堆外内存
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class OffHeapMap<V extends IPacket> implements LpMap<V>, Closeable {
+
+    private static final int DEFAULT_SLAB_SIZE = 4 * IOUtils.BYTES_PER_MB;
+
+    private static final long ABSENT = -1L;
+
+    private final IProtocolRegistration protocolRegistration;
+
+    private final int slabSize;
+
+    private final HashMapLongLong addressMap;
+
+    private final List<ByteBuf> slabs = new ArrayList<>();
+    // 每个slab中还有效的字节数，为0的时候释放slab
+    private int[] liveBytes = new int[16];
+    // 当前正在写入的slab
+    private int currentSlab = -1;
+
+    // 序列化的临时缓存
+    private final ByteBuf writeBuffer = ByteBufAllocator.DEFAULT.heapBuffer(128);
+
+    private long maxIndex = 0;
+
+    public OffHeapMap(Class<V> clazz) {
+        this(clazz, DEFAULT_SLAB_SIZE, 128);
+    }
+
+    public OffHeapMap(Class<V> clazz, int slabSize, int initialCapacity) {
+        var protocolId = ProtocolManager.protocolId(clazz);
+        this.protocolRegistration = ProtocolManager.getProtocol(protocolId);
+        this.slabSize = slabSize;
+        this.addressMap = new HashMapLongLong(initialCapacity);
+    }
+
+
+    @Override
+    public V put(long key, V packet) {
+        checkKey(key);
+
+        if (key > maxIndex) {
+            maxIndex = key;
+        }
+
+        var previousAddress = addressMap.getPrimitive(key, ABSENT);
+        var previousValue = previousAddress == ABSENT ? null : read(previousAddress);
+
+        addressMap.putPrimitive(key, write(packet));
+
+        if (previousAddress != ABSENT) {
+            free(previousAddress);
+        }
+        return previousValue;
+    }
+
+    @Override
+    public V delete(long key) {
+        checkKey(key);
+        if (key > maxIndex) {
+            return null;
+        }
+
+        var address = addressMap.getPrimitive(key, ABSENT);
+        if (address == ABSENT) {
+            return null;
+        }
+
+        var previousValue = read(address);
+        addressMap.removePrimitive(key);
+        free(address);
+        return previousValue;
+    }
+
+    @Override
+    public V get(long key) {
+        checkKey(key);
+        var address = addressMap.getPrimitive(key, ABSENT);
+        return address == ABSENT ? null : read(address);
+    }
+
+    @Override
+    public long getMaxIndex() {
+        return maxIndex;
+    }
+
+    @Override
+    public long getIncrementIndex() {
+        maxIndex++;
+        return maxIndex;
+    }
+
+    @Override
+    public void clear() {
+        maxIndex = 0;
+        addressMap.clear();
+        releaseSlabs();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, V> biConsumer) {
+        for (var entry : addressMap.entrySet()) {
+            biConsumer.accept(entry.getKey(), read(entry.getValue()));
+        }
+    }
+
+    public int size() {
+        return addressMap.size();
+    }
+
+    /**
+     * 当前占用的堆外内存的大小
+     */
+    public long capacity() {
+        var capacity = 0L;
+        for (var slab : slabs) {
+            if (slab != null) {
+                capacity += slab.capacity();
+            }
+        }
+        return capacity;
+    }
+
+    @Override
+    public void close() {
+        addressMap.clear();
+        releaseSlabs();
+        ReferenceCountUtil.release(writeBuffer);
+    }
+
+    private long write(V packet) {
+        writeBuffer.clear();
+        protocolRegistration.write(writeBuffer, packet);
+        var length = writeBuffer.readableBytes();
+        var recordSize = length + 4;
+
+        var slab = currentSlab < 0 ? null : slabs.get(currentSlab);
+        if (slab == null || slab.writableBytes() < recordSize) {
+            currentSlab = allocateSlab(Math.max(slabSize, recordSize));
+            slab = slabs.get(currentSlab);
+        }
+
+        var offset = slab.writerIndex();
+        slab.writeInt(length);
+        slab.writeBytes(writeBuffer);
+        liveBytes[currentSlab] += recordSize;
+        return ((long) currentSlab << 32) | offset;
+    }
+
+    private V read(long address) {
+        var slab = slabs.get((int) (address >>> 32));
+        var offset = (int) address;
+        var length = slab.getInt(offset);
+        // slice不会拷贝数据，直接在堆外内存上反序列化
+        return (V) protocolRegistration.read(slab.slice(offset + 4, length));
+    }
+
+    private void free(long address) {
+        var slabIndex = (int) (address >>> 32);
+        var slab = slabs.get(slabIndex);
+        liveBytes[slabIndex] -= slab.getInt((int) address) + 4;
+        if (liveBytes[slabIndex] <= 0 && slabIndex != currentSlab) {
+            ReferenceCountUtil.release(slab);
+            slabs.set(slabIndex, null);
+            liveBytes[slabIndex] = 0;
+        }
+    }
+
+    private int allocateSlab(int capacity) {
+        // 当前的slab没有有效数据了，切换之后就可以释放
+        if (currentSlab >= 0 && liveBytes[currentSlab] <= 0) {
+            ReferenceCountUtil.release(slabs.get(currentSlab));
+            slabs.set(currentSlab, null);
+        }
+
+        var slab = PooledByteBufAllocator.DEFAULT.directBuffer(capacity, capacity);
+        var slabIndex = slabs.indexOf(null);
+        if (slabIndex < 0) {
+            slabIndex = slabs.size();
+            slabs.add(slab);
+        } else {
+            slabs.set(slabIndex, slab);
+        }
+        if (slabIndex >= liveBytes.length) {
+            liveBytes = Arrays.copyOf(liveBytes, liveBytes.length << 1);
+        }
+        liveBytes[slabIndex] = 0;
+        return slabIndex;
+    }
+
+    private void releaseSlabs() {
+        for (var slab : slabs) {
+            ReferenceCountUtil.release(slab);
+        }
+        slabs.clear();
+        Arrays.fill(liveBytes, 0);
+        currentSlab = -1;
+    }
+}
@@ -14,13 +14,20 @@ package com.zfoo.protocol.collection.lpmap;
 
 import com.zfoo.protocol.ProtocolManager;
 import com.zfoo.protocol.collection.lpmap.model.MyPacket;
+import com.zfoo.protocol.util.FileUtils;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -70,4 +77,139 @@ public class ConcurrentFileChannelMapTest {
             Assert.assertEquals(myPacket, packet);
         }
     }
+
+    @Test
+    public void compactTest() throws Exception {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "concurrentCompactDb";
+        FileUtils.deleteFile(new File(dbPath));
+        // 无效数据超过一半的时候自动压缩
+        var map = new ConcurrentFileChannelMap<MyPacket>(dbPath, MyPacket.class, 0.5D, 0L);
+        var count = 10000;
+        for (var i = 0; i < count; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+
+        // 压缩的同时并发的修改
+        var future = map.compactAsync();
+        for (var i = 0; i < count; i++) {
+            map.put(i, MyPacket.valueOf(-i, String.valueOf(i)));
+        }
+        future.get();
+
+        for (var i = 0; i < count; i++) {
+            Assert.assertEquals(MyPacket.valueOf(-i, String.valueOf(i)), map.get(i));
+        }
+        map.compactAsync().get();
+        Assert.assertEquals(0D, map.garbageRatio(), 0.000001D);
+        map.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void groupCommitTest() throws Exception {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "groupCommitDb";
+        FileUtils.deleteFile(new File(dbPath));
+        // 每128条或者10毫秒合并写入一次，putAsync共用一次fsync
+        var map = new ConcurrentFileChannelMap<MyPacket>(dbPath, MyPacket.class, 128, 10L, FsyncPolicy.everyBatch());
+        var count = 10000;
+        var futures = new ArrayList<CompletableFuture<MyPacket>>();
+        for (var i = 0; i < count; i++) {
+            var myPacket = MyPacket.valueOf(i, String.valueOf(i));
+            futures.add(map.putAsync(i, myPacket));
+            // 还没有写入文件的数据也可以读到
+            Assert.assertEquals(myPacket, map.get(i));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        map.delete(0);
+        Assert.assertNull(map.get(0));
+        map.close();
+
+        var newMap = new ConcurrentFileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertNull(newMap.get(0));
+        for (var i = 1; i < count; i++) {
+            Assert.assertEquals(MyPacket.valueOf(i, String.valueOf(i)), newMap.get(i));
+        }
+        newMap.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void putAsyncWithoutBatchTest() throws Exception {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "putAsyncDb";
+        FileUtils.deleteFile(new File(dbPath));
+        // 不开启group commit，每次put直接写入文件，putAsync最多等待10毫秒共用一次fsync
+        var map = new ConcurrentFileChannelMap<MyPacket>(dbPath, MyPacket.class, 0, 10L, FsyncPolicy.everyBatch());
+        var count = 1000;
+        var futures = new ArrayList<CompletableFuture<MyPacket>>();
+        for (var i = 0; i < count; i++) {
+            futures.add(map.putAsync(i, MyPacket.valueOf(i, String.valueOf(i))));
+        }
+        for (var future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(MyPacket.valueOf(1, String.valueOf(1)), map.putAsync(1, MyPacket.valueOf(-1, "1")).get(10, TimeUnit.SECONDS));
+        map.close();
+
+        var newMap = new ConcurrentFileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertEquals(MyPacket.valueOf(-1, "1"), newMap.get(1));
+        for (var i = 2; i < count; i++) {
+            Assert.assertEquals(MyPacket.valueOf(i, String.valueOf(i)), newMap.get(i));
+        }
+        newMap.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void concurrentReadTest() throws Exception {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "concurrentReadDb";
+        FileUtils.deleteFile(new File(dbPath));
+        // 同时开启group commit和自动压缩，读线程会读到缓存中的值，也会遇到文件被替换
+        var map = new ConcurrentFileChannelMap<MyPacket>(dbPath, MyPacket.class, 128, 5L, FsyncPolicy.never(), 0.3D, 0L);
+        var count = 1000;
+        for (var i = 0; i < count; i++) {
+            map.put(i, MyPacket.valueOf(0, String.valueOf(i)));
+        }
+
+        var running = new AtomicBoolean(true);
+        var errorCount = new AtomicInteger(0);
+        var countdown = new CountDownLatch(EXECUTOR_SIZE);
+        for (int i = 0; i < EXECUTOR_SIZE; i++) {
+            new Thread(() -> {
+                var random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    var key = random.nextInt(count);
+                    var packet = map.get(key);
+                    if (packet == null || !packet.getB().equals(String.valueOf(key))) {
+                        errorCount.incrementAndGet();
+                    }
+                }
+                countdown.countDown();
+            }).start();
+        }
+
+        for (var version = 1; version <= 100; version++) {
+            for (var i = 0; i < count; i++) {
+                map.put(i, MyPacket.valueOf(version, String.valueOf(i)));
+            }
+        }
+        running.set(false);
+        countdown.await();
+        Assert.assertEquals(0, errorCount.get());
+
+        for (var i = 0; i < count; i++) {
+            Assert.assertEquals(MyPacket.valueOf(100, String.valueOf(i)), map.get(i));
+        }
+        map.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
 }
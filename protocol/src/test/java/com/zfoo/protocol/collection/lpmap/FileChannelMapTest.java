@@ -14,11 +14,15 @@ package com.zfoo.protocol.collection.lpmap;
 
 import com.zfoo.protocol.collection.lpmap.model.MyPacket;
 import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.util.FileUtils;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Set;
 
 /**
@@ -42,6 +46,29 @@ public class FileChannelMapTest {
         map.put(3, myPacket);
     }
 
+    @Test
+    public void deleteMaxKeyTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "deleteMaxKeyDb";
+        FileUtils.deleteFile(new File(dbPath));
+
+        // 删除最大的key之后重新打开，自增id不能重复使用被删除的key
+        var map = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        for (var i = 0; i < 10; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+        map.delete(9);
+        map.close();
+
+        var newMap = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertNull(newMap.get(9));
+        Assert.assertEquals(11, newMap.getIncrementIndex());
+        newMap.close();
+
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
     @Test
     public void readTest() {
         ProtocolManager.initProtocol(Set.of(MyPacket.class));
@@ -88,4 +115,114 @@ public class FileChannelMapTest {
             Assert.assertEquals(myPacket, packet);
         }
     }
+
+    @Test
+    public void compactTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "compactDb";
+        FileUtils.deleteFile(new File(dbPath));
+        var map = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        for (var i = 0; i < 1000; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+        for (var i = 0; i < 1000; i++) {
+            map.put(i, MyPacket.valueOf(-i, String.valueOf(i)));
+        }
+        for (var i = 0; i < 500; i++) {
+            map.delete(i);
+        }
+        Assert.assertTrue(map.garbageRatio() > 0.7D);
+
+        var dbSize = map.dbSize();
+        map.compact();
+        Assert.assertEquals(0D, map.garbageRatio(), 0.000001D);
+        Assert.assertTrue(map.dbSize() < dbSize / 3);
+        Assert.assertNull(map.get(0));
+        Assert.assertEquals(MyPacket.valueOf(-999, "999"), map.get(999));
+        map.close();
+
+        // 重新打开之后统计的有效数据不变
+        map = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertEquals(0D, map.garbageRatio(), 0.000001D);
+        Assert.assertEquals(500, map.getFrom(0, 1000).size());
+        map.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void rangeTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "rangeDb";
+        FileUtils.deleteFile(new File(dbPath));
+        // 缓存一部分写入，范围读取的时候同时会读到文件和缓存中的值
+        var map = new FileChannelMap<MyPacket>(dbPath, MyPacket.class, 64 * 1024, FsyncPolicy.never());
+        var count = 10000;
+        for (var i = 0; i < count; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+        // 覆盖和删除之后db文件中的数据不再按照key的顺序排列
+        for (var i = 0; i < count; i += 3) {
+            map.put(i, MyPacket.valueOf(-i, String.valueOf(i)));
+        }
+        for (var i = 0; i < count; i += 7) {
+            map.delete(i);
+        }
+
+        var keys = new ArrayList<Long>();
+        map.forEach(100, 9000, (key, value) -> {
+            Assert.assertEquals(map.get(key), value);
+            keys.add(key);
+        });
+        var expectKeys = new ArrayList<Long>();
+        for (var i = 100L; i < 9000L; i++) {
+            if (map.get(i) != null) {
+                expectKeys.add(i);
+            }
+        }
+        Assert.assertEquals(expectKeys, keys);
+        Assert.assertEquals(expectKeys.size(), map.getFrom(100, 9000).size());
+        map.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void walTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "walDb";
+        FileUtils.deleteFile(new File(dbPath));
+        var map = new FileChannelMap<MyPacket>(dbPath, MyPacket.class, 1024, FsyncPolicy.never().withWal());
+        var count = 1000;
+        for (var i = 0; i < count; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+        map.delete(7);
+        map.flush();
+
+        // 模拟崩溃：不调用close，index写了一半，日志的尾部也只写了一半
+        try (var index = new RandomAccessFile(new File(dbPath, "MyPacket.index"), "rw");
+             var wal = new RandomAccessFile(new File(dbPath, "MyPacket.wal"), "rw")) {
+            index.seek(5 * 16);
+            index.writeLong(Long.MAX_VALUE);
+            index.writeLong(12345);
+            index.setLength(index.length() - 20);
+            wal.seek(wal.length());
+            wal.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+
+        // 重新打开的时候重放日志，不开启write-ahead log的时候重放之后删除日志
+        var newMap = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertFalse(new File(dbPath, "MyPacket.wal").exists());
+        Assert.assertNull(newMap.get(7));
+        for (var i = 0; i < count; i++) {
+            if (i != 7) {
+                Assert.assertEquals(MyPacket.valueOf(i, String.valueOf(i)), newMap.get(i));
+            }
+        }
+        newMap.close();
+        map.close();
+        FileUtils.deleteFile(new File(dbPath));
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.collection.lpmap.model.MyPacket;
+import com.zfoo.protocol.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+@Ignore
+public class MappedLpMapTest {
+
+    @Test
+    public void test() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "mappedDb";
+        FileUtils.deleteFile(new File(dbPath));
+
+        // segment很小，记录会被写到多个segment中
+        var map = new MappedLpMap<MyPacket>(dbPath, MyPacket.class, 64, 64);
+        for (var i = 0; i < 100; i++) {
+            Assert.assertNull(map.put(i, MyPacket.valueOf(i, String.valueOf(i))));
+        }
+        Assert.assertEquals(MyPacket.valueOf(1, "1"), map.put(1, MyPacket.valueOf(-1, "overwrite")));
+        Assert.assertEquals(MyPacket.valueOf(2, "2"), map.delete(2));
+        Assert.assertNull(map.get(2));
+        Assert.assertEquals(99, map.getFrom(0, 100).size());
+        map.close();
+
+        // 和FileChannelMap的文件格式相同
+        var fileChannelMap = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertEquals(MyPacket.valueOf(-1, "overwrite"), fileChannelMap.get(1));
+        Assert.assertEquals(MyPacket.valueOf(99, "99"), fileChannelMap.get(99));
+        Assert.assertNull(fileChannelMap.get(2));
+        fileChannelMap.put(100, MyPacket.valueOf(100, "100"));
+        fileChannelMap.close();
+
+        map = new MappedLpMap<MyPacket>(dbPath, MyPacket.class, 64, 64);
+        Assert.assertEquals(MyPacket.valueOf(100, "100"), map.get(100));
+        Assert.assertEquals(MyPacket.valueOf(50, "50"), map.get(50));
+        map.close();
+
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void crashTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "mappedCrashDb";
+        FileUtils.deleteFile(new File(dbPath));
+
+        // 不调用close模拟宕机，index文件停留在segment的整数倍
+        var map = new MappedLpMap<MyPacket>(dbPath, MyPacket.class, 1024, 1024);
+        for (var i = 0; i < 10; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+        map.flush();
+
+        var newMap = new MappedLpMap<MyPacket>(dbPath, MyPacket.class, 1024, 1024);
+        Assert.assertEquals(10, newMap.getMaxIndex());
+        Assert.assertEquals(MyPacket.valueOf(9, "9"), newMap.get(9));
+        Assert.assertEquals(11, newMap.getIncrementIndex());
+        newMap.close();
+
+        var fileChannelMap = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertEquals(10, fileChannelMap.getMaxIndex());
+        fileChannelMap.close();
+
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void deleteMaxKeyTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var dbPath = "mappedDeleteDb";
+        FileUtils.deleteFile(new File(dbPath));
+
+        // 删除最大的key之后宕机，重新打开的时候自增id不能重复使用被删除的key
+        var map = new MappedLpMap<MyPacket>(dbPath, MyPacket.class, 1024, 1024);
+        for (var i = 0; i < 10; i++) {
+            map.put(i, MyPacket.valueOf(i, String.valueOf(i)));
+        }
+        map.delete(9);
+        map.flush();
+
+        var newMap = new MappedLpMap<MyPacket>(dbPath, MyPacket.class, 1024, 1024);
+        Assert.assertNull(newMap.get(9));
+        Assert.assertEquals(11, newMap.getIncrementIndex());
+        newMap.close();
+
+        var fileChannelMap = new FileChannelMap<MyPacket>(dbPath, MyPacket.class);
+        Assert.assertEquals(11, fileChannelMap.getIncrementIndex());
+        fileChannelMap.close();
+
+        FileUtils.deleteFile(new File(dbPath));
+    }
+
+    @Test
+    public void benchmarkTest() throws IOException {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var map = new MappedLpMap<MyPacket>("db", MyPacket.class);
+        var count = 1000_0000;
+        for (var i = 0; i < count; i++) {
+            var myPacket = MyPacket.valueOf(i, String.valueOf(i));
+            map.put(i, myPacket);
+        }
+
+        for (var i = 0; i < count; i++) {
+            var myPacket = MyPacket.valueOf(i, String.valueOf(i));
+            var packet = map.get(i);
+            Assert.assertEquals(myPacket, packet);
+        }
+        map.close();
+    }
+}
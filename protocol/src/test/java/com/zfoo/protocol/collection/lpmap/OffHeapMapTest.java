@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.collection.lpmap;
+
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.collection.lpmap.model.MyPacket;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+@Ignore
+public class OffHeapMapTest {
+
+    @Test
+    public void test() {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var map = new OffHeapMap<MyPacket>(MyPacket.class, 64, 16);
+        for (var i = 0; i < 100; i++) {
+            Assert.assertNull(map.put(i, MyPacket.valueOf(i, String.valueOf(i))));
+        }
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals(99, map.getMaxIndex());
+        Assert.assertEquals(MyPacket.valueOf(50, "50"), map.get(50));
+        Assert.assertNull(map.get(100));
+
+        Assert.assertEquals(MyPacket.valueOf(1, "1"), map.put(1, MyPacket.valueOf(-1, "overwrite")));
+        Assert.assertEquals(MyPacket.valueOf(-1, "overwrite"), map.get(1));
+        Assert.assertEquals(MyPacket.valueOf(2, "2"), map.delete(2));
+        Assert.assertNull(map.get(2));
+        Assert.assertNull(map.delete(2));
+
+        // 全部删除之后除了正在写入的slab都会被释放
+        var capacity = map.capacity();
+        for (var i = 0; i < 100; i++) {
+            map.delete(i);
+        }
+        Assert.assertTrue(map.capacity() < capacity);
+        Assert.assertEquals(0, map.size());
+
+        map.close();
+    }
+
+    @Test
+    public void benchmarkTest() {
+        ProtocolManager.initProtocol(Set.of(MyPacket.class));
+
+        var map = new OffHeapMap<MyPacket>(MyPacket.class);
+        var count = 1000_0000;
+        for (var i = 0; i < count; i++) {
+            var myPacket = MyPacket.valueOf(i, String.valueOf(i));
+            map.put(i, myPacket);
+        }
+
+        for (var i = 0; i < count; i++) {
+            var myPacket = MyPacket.valueOf(i, String.valueOf(i));
+            var packet = map.get(i);
+            Assert.assertEquals(myPacket, packet);
+        }
+        map.close();
+    }
+}
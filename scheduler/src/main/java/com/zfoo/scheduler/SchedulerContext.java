@@ -17,6 +17,7 @@ import com.zfoo.protocol.collection.ArrayUtils;
 import com.zfoo.protocol.util.ReflectionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.scheduler.manager.SchedulerBus;
+import com.zfoo.scheduler.manager.TimingWheel;
 import com.zfoo.scheduler.model.anno.Scheduler;
 import com.zfoo.scheduler.model.vo.SchedulerDefinition;
 import com.zfoo.util.ThreadUtils;
@@ -70,6 +71,11 @@ public class SchedulerContext implements ApplicationListener<ApplicationContextE
         stop = true;
 
         try {
+            Field wheelField = SchedulerBus.class.getDeclaredField("timingWheel");
+            ReflectionUtils.makeAccessible(wheelField);
+            var timingWheel = (TimingWheel) ReflectionUtils.getField(wheelField, null);
+            timingWheel.stop();
+
             Field field = SchedulerBus.class.getDeclaredField("executor");
             ReflectionUtils.makeAccessible(field);
             var executor = (ScheduledExecutorService) ReflectionUtils.getField(field, null);
@@ -13,24 +13,27 @@
 
 package com.zfoo.scheduler.manager;
 
-import com.zfoo.protocol.collection.CollectionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.scheduler.SchedulerContext;
 import com.zfoo.scheduler.model.vo.SchedulerDefinition;
 import com.zfoo.scheduler.util.TimeUtils;
 import com.zfoo.util.SafeRunnable;
 import com.zfoo.util.ThreadUtils;
+import com.zfoo.util.metrics.ExecutorMetrics;
+import com.zfoo.util.metrics.ExecutorRecorder;
+import com.zfoo.util.metrics.MetricsUtils;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Instant;
-import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 所有的定时任务都放在毫秒精度的分层时间轮TimingWheel中，时间轮的线程只负责派发到期的任务，
+ * 任务默认在scheduler的单线程中执行，也可以指定执行器，比如通过hash派发到TaskBus或者EventBus的线程，避免一个很慢的任务影响其它的任务
+ *
  * @author godotg
  * @version 3.0
  */
@@ -40,34 +43,44 @@ public abstract class SchedulerBus {
 
     private static final List<SchedulerDefinition> schedulerDefList = new CopyOnWriteArrayList<>();
     /**
-     * scheduler默认只有一个单线程的线程池
+     * scheduler默认只有一个单线程的线程池，直接使用ScheduledThreadPoolExecutor是为了能够获取队列的大小
      */
-    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory(1));
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new SchedulerThreadFactory(1));
 
     /**
-     * executor创建的线程id号
+     * 统计scheduler执行的任务，等待时间是实际执行的时间比计划执行的时间晚了多久，队列的大小包括时间轮中还没有到期的任务
      */
-    private static long threadId = 0;
+    private static final ExecutorRecorder recorder = new ExecutorRecorder("scheduler.executor", () -> executor.getQueue().size() + SchedulerBus.timingWheel.size());
+
+    private static final TimingWheel timingWheel = new TimingWheel(runnable -> {
+        var thread = new FastThreadLocalThread(ThreadUtils.currentThreadGroup(), runnable, "scheduler-wheel");
+        thread.setDaemon(false);
+        thread.setPriority(Thread.NORM_PRIORITY);
+        thread.setUncaughtExceptionHandler((t, e) -> logger.error(t.toString(), e));
+        return thread;
+    }, executor, recorder);
 
     /**
-     * 上一次trigger触发时间
+     * executor创建的线程id号
      */
-    private static long lastTriggerTimestamp = 0L;
-
+    private static long threadId = 0;
 
     /**
-     * 在scheduler中，最小的triggerTimestamp
+     * 上一次检查系统时间的时候的时间戳和nanoTime，用来发现有人修改过机器时间
      */
-    private static long minTriggerTimestamp = 0L;
+    private static long lastCheckTimestamp = System.currentTimeMillis();
+    private static long lastCheckNanoTime = System.nanoTime();
 
     static {
+        MetricsUtils.register(recorder.getName(), recorder::metrics);
+
         executor.scheduleAtFixedRate(() -> {
             try {
-                triggerPerSecond();
+                checkClock();
             } catch (Exception e) {
-                logger.error("scheduler triggers an error.", e);
+                logger.error("scheduler check clock error.", e);
             }
-        }, 0, TimeUtils.MILLIS_PER_SECOND, TimeUnit.MILLISECONDS);
+        }, TimeUtils.MILLIS_PER_SECOND, TimeUtils.MILLIS_PER_SECOND, TimeUnit.MILLISECONDS);
 
         executor.scheduleAtFixedRate(TimeUtils::currentTimeMillis, 0, 20, TimeUnit.MILLISECONDS);
     }
@@ -96,106 +109,159 @@ public abstract class SchedulerBus {
 
     }
 
+    /**
+     * 时间轮是按照nanoTime计时的，有人向前或者向后调整过机器时间，需要按照新的时间重新计算cron任务的触发时间
+     */
+    private static void checkClock() {
+        var timestamp = TimeUtils.currentTimeMillis();
+        var nanoTime = System.nanoTime();
+        var diff = (timestamp - lastCheckTimestamp) - TimeUnit.NANOSECONDS.toMillis(nanoTime - lastCheckNanoTime);
+        lastCheckTimestamp = timestamp;
+        lastCheckNanoTime = nanoTime;
+        if (Math.abs(diff) < TimeUtils.MILLIS_PER_SECOND) {
+            return;
+        }
 
-    public static void refreshMinTriggerTimestamp() {
-        var minTimestamp = Long.MAX_VALUE;
-        for (var scheduler : schedulerDefList) {
-            if (scheduler.getTriggerTimestamp() < minTimestamp) {
-                minTimestamp = scheduler.getTriggerTimestamp();
+        logger.warn("system clock has been adjusted by [{}] milliseconds, recalculate the trigger time of all the cron schedulers", diff);
+        for (var schedulerDef : schedulerDefList) {
+            synchronized (schedulerDef) {
+                var timeout = schedulerDef.getTimeout();
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+                scheduleCron(schedulerDef, timestamp);
             }
         }
-        minTriggerTimestamp = minTimestamp;
     }
 
     /**
-     * 每一秒执行一次，如果这个任务执行时间过长超过，比如10秒，执行完成后，不会再执行10次
+     * 计算下一次的触发时间并放入时间轮，调用的时候需要持有schedulerDef的锁
      */
-    private static void triggerPerSecond() {
-        var currentTimeMillis = TimeUtils.currentTimeMillis();
-
-        if (CollectionUtils.isEmpty(schedulerDefList)) {
+    private static void scheduleCron(SchedulerDefinition schedulerDef, long timestamp) {
+        var triggerTimestamp = TimeUtils.nextTimestampByCronExpression(schedulerDef.getCronExpression(), timestamp);
+        schedulerDef.setTriggerTimestamp(triggerTimestamp);
+        if (triggerTimestamp == Long.MAX_VALUE) {
+            schedulerDef.setTimeout(null);
             return;
         }
+        var delay = Math.max(0, triggerTimestamp - TimeUtils.currentTimeMillis());
+        var cronTask = new CronTask(schedulerDef);
+        cronTask.timeout = timingWheel.newTimeout(cronTask, schedulerDef.getName(), delay, 0, TimeUnit.MILLISECONDS, schedulerDef.getExecutor());
+        schedulerDef.setTimeout(cronTask.timeout);
+    }
 
+    private static final class CronTask implements Runnable {
 
-        // 有人向前调整过机器时间，重新计算scheduler里的triggerTimestamp
-        // var diff = timestamp - lastTriggerTimestamp;
-        if (currentTimeMillis < lastTriggerTimestamp) {
-            for (SchedulerDefinition schedulerDef : schedulerDefList) {
-                var nextTriggerTimestamp = TimeUtils.nextTimestampByCronExpression(schedulerDef.getCronExpression(), currentTimeMillis);
-                schedulerDef.setTriggerTimestamp(nextTriggerTimestamp);
-            }
-            refreshMinTriggerTimestamp();
-        }
+        private final SchedulerDefinition schedulerDef;
 
-        // diff > 0, 没有人调整时间或者有人向后调整过机器时间，可以忽略，因为向后调整时间时间戳一定会大于triggerTimestamp，所以一定会触发
-        lastTriggerTimestamp = currentTimeMillis;
+        private TimingWheel.Timeout timeout;
 
-        // 如果minSchedulerTriggerTimestamp大于timestamp，说明没有可执行的scheduler
-        if (currentTimeMillis < minTriggerTimestamp) {
-            return;
+        private CronTask(SchedulerDefinition schedulerDef) {
+            this.schedulerDef = schedulerDef;
         }
 
-        var minTimestamp = Long.MAX_VALUE;
-        var timestampZonedDataTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(currentTimeMillis), TimeUtils.DEFAULT_ZONE_ID);
-        for (var scheduler : schedulerDefList) {
-            var triggerTimestamp = scheduler.getTriggerTimestamp();
-            if (triggerTimestamp <= currentTimeMillis) {
-                // 到达触发时间，则执行runnable方法
-                try {
-                    scheduler.getScheduler().invoke();
-                } catch (Throwable t) {
-                    logger.error("scheduler任务调度未知异常", t);
-                }
-                // 重新设置下一次的触发时间戳
-                triggerTimestamp = TimeUtils.nextTimestampByCronExpression(scheduler.getCronExpression(), timestampZonedDataTime);
-                scheduler.setTriggerTimestamp(triggerTimestamp);
+        @Override
+        public void run() {
+            try {
+                schedulerDef.getScheduler().invoke();
+            } catch (Throwable t) {
+                logger.error("scheduler任务调度未知异常", t);
             }
-            if (triggerTimestamp < minTimestamp) {
-                minTimestamp = scheduler.getTriggerTimestamp();
+
+            synchronized (schedulerDef) {
+                // 修改过机器时间之后已经重新放入了时间轮
+                if (schedulerDef.getTimeout() != timeout || timeout.isCancelled()) {
+                    return;
+                }
+                // 从这次的触发时间开始计算，避免系统时间比时间轮慢一点的时候同一个时间点触发两次
+                scheduleCron(schedulerDef, Math.max(TimeUtils.currentTimeMillis(), schedulerDef.getTriggerTimestamp()));
             }
         }
-        minTriggerTimestamp = minTimestamp;
     }
 
     public static void registerScheduler(SchedulerDefinition scheduler) {
+        if (SchedulerContext.isStop()) {
+            return;
+        }
+
         schedulerDefList.add(scheduler);
-        refreshMinTriggerTimestamp();
+        synchronized (scheduler) {
+            scheduleCron(scheduler, TimeUtils.currentTimeMillis());
+        }
     }
 
 
     /**
      * 不断执行的周期循环任务
      */
-    public static void scheduleAtFixedRate(Runnable runnable, long period, TimeUnit unit) {
+    public static TimingWheel.Timeout scheduleAtFixedRate(Runnable runnable, long period, TimeUnit unit) {
+        return scheduleAtFixedRate(runnable, period, unit, null);
+    }
+
+    /**
+     * 不断执行的周期循环任务，上一次执行完成之后才会开始下一个周期，执行不过来的周期会被跳过
+     *
+     * @param executor 执行任务的执行器，为null的时候在scheduler的线程执行
+     */
+    public static TimingWheel.Timeout scheduleAtFixedRate(Runnable runnable, long period, TimeUnit unit, Executor executor) {
         if (SchedulerContext.isStop()) {
-            return;
+            return null;
         }
 
-        executor.scheduleAtFixedRate(SafeRunnable.valueOf(runnable), 0, period, unit);
+        return timingWheel.newTimeout(SafeRunnable.valueOf(runnable), null, 0, period, unit, executor);
     }
 
 
     /**
      * 固定延迟执行的任务
      */
-    public static void schedule(Runnable runnable, long delay, TimeUnit unit) {
+    public static TimingWheel.Timeout schedule(Runnable runnable, long delay, TimeUnit unit) {
+        return schedule(runnable, delay, unit, null);
+    }
+
+    /**
+     * 固定延迟执行的任务，插入和取消都是O(1)，可以给每一个实体都设置一个定时器
+     *
+     * @param executor 执行任务的执行器，为null的时候在scheduler的线程执行
+     */
+    public static TimingWheel.Timeout schedule(Runnable runnable, long delay, TimeUnit unit, Executor executor) {
         if (SchedulerContext.isStop()) {
-            return;
+            return null;
         }
 
-        executor.schedule(SafeRunnable.valueOf(runnable), delay, unit);
+        return timingWheel.newTimeout(SafeRunnable.valueOf(runnable), null, delay, 0, unit, executor);
     }
 
     /**
      * cron表达式执行的任务
      */
     public static void scheduleCron(Runnable runnable, String cron) {
-        if (SchedulerContext.isStop()) {
-            return;
-        }
+        scheduleCron(runnable, cron, null);
+    }
+
+    /**
+     * cron表达式执行的任务
+     *
+     * @param executor 执行任务的执行器，为null的时候在scheduler的线程执行
+     */
+    public static void scheduleCron(Runnable runnable, String cron, Executor executor) {
+        var schedulerDef = SchedulerDefinition.valueOf(cron, runnable);
+        schedulerDef.setExecutor(executor);
+        registerScheduler(schedulerDef);
+    }
 
-        schedulerDefList.add(SchedulerDefinition.valueOf(cron, runnable));
+    /**
+     * 时间轮中等待到期的任务数量
+     */
+    public static int timeoutSize() {
+        return timingWheel.size();
+    }
+
+    /**
+     * scheduler的统计信息快照，包括任务的延迟时间和执行时间，正在执行的任务和执行最慢的任务
+     */
+    public static ExecutorMetrics metrics() {
+        return recorder.metrics();
     }
 
     public static Executor threadExecutor(long currentThreadId) {
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.scheduler.manager;
+
+import com.zfoo.protocol.util.AssertionUtils;
+import com.zfoo.util.metrics.ExecutorRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 毫秒精度的分层时间轮，插入和取消都是O(1)，到期的任务交给任务自己指定的执行器去执行，时间轮的线程只负责派发
+ * <p>
+ * 时间使用System.nanoTime()从时间轮创建开始经过的毫秒数（tick），不受修改系统时间的影响。
+ * 每一层有64个槽，第n层的一个槽代表64^n个tick，任务放在deadline和当前tick最高的不同的那一层，
+ * 时间走到这个槽的时候再把槽里的任务放到更低的层，每个任务最多被移动层数次。
+ * 每一层用一个long记录哪些槽有任务，线程直接睡到下一个有任务的槽，没有任务的时候不会空转
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public final class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOT_COUNT = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+    private static final int LEVEL_COUNT = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 1;
+
+    private final Executor defaultExecutor;
+
+    private final ExecutorRecorder recorder;
+
+    private final long startTime = System.nanoTime();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeup = lock.newCondition();
+
+    /**
+     * 每个槽是一个双向链表，下标是level * SLOT_COUNT + slot
+     */
+    private final Timeout[] buckets = new Timeout[LEVEL_COUNT * SLOT_COUNT];
+
+    /**
+     * 每一层中有任务的槽的位图
+     */
+    private final long[] occupied = new long[LEVEL_COUNT];
+
+    /**
+     * 时间轮已经处理到的tick
+     */
+    private long currentTick;
+
+    /**
+     * 线程等待到的tick，没有在等待的时候为-1，插入的任务比这个更早到期的时候才需要唤醒线程
+     */
+    private long wakeTick = -1;
+
+    private int size;
+
+    private boolean stopped;
+
+    /**
+     * @param defaultExecutor 任务没有指定执行器的时候使用的执行器
+     * @param recorder        记录任务从到期到开始执行的延迟和执行时间
+     */
+    public TimingWheel(ThreadFactory threadFactory, Executor defaultExecutor, ExecutorRecorder recorder) {
+        AssertionUtils.notNull(defaultExecutor);
+        AssertionUtils.notNull(recorder);
+        this.defaultExecutor = defaultExecutor;
+        this.recorder = recorder;
+        threadFactory.newThread(this::runWorker).start();
+    }
+
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        return newTimeout(task, null, delay, 0, unit, null);
+    }
+
+    /**
+     * @param source   在统计信息中描述这个任务，为null的时候使用任务本身
+     * @param period   大于0表示周期任务，上一次执行完成之后才会开始下一个周期，执行不过来的周期会被跳过
+     * @param executor 执行任务的执行器，为null的时候使用默认的执行器，可以通过hash派发到TaskBus或者EventBus的线程
+     */
+    public Timeout newTimeout(Runnable task, Object source, long delay, long period, TimeUnit unit, Executor executor) {
+        AssertionUtils.notNull(task);
+        AssertionUtils.notNull(unit);
+        var periodTicks = period <= 0 ? 0 : Math.max(1, (Math.min(unit.toNanos(period), MAX_DELAY_NANOS) + TICK_NANOS - 1) / TICK_NANOS);
+        var timeout = new Timeout(task, source, periodTicks, executor == null ? defaultExecutor : executor);
+        var deadlineNanos = System.nanoTime() - startTime + Math.min(Math.max(0, unit.toNanos(delay)), MAX_DELAY_NANOS);
+        schedule(timeout, (deadlineNanos + TICK_NANOS - 1) / TICK_NANOS);
+        return timeout;
+    }
+
+    /**
+     * 等待到期的任务数量
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止时间轮的线程，还没有到期的任务不会再执行
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            stopped = true;
+            wakeup.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long tick() {
+        return (System.nanoTime() - startTime) / TICK_NANOS;
+    }
+
+    private void schedule(Timeout timeout, long deadline) {
+        lock.lock();
+        try {
+            if (stopped) {
+                recorder.recordRejected();
+                throw new RejectedExecutionException("timing wheel has been stopped, reject task " + ExecutorRecorder.describe(timeout.source));
+            }
+            if (timeout.cancelled) {
+                return;
+            }
+            timeout.deadline = deadline;
+            if (deadline > currentTick) {
+                insert(timeout);
+                size++;
+                if (deadline < wakeTick) {
+                    wakeup.signal();
+                }
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 已经到期的任务直接派发
+        dispatch(timeout);
+    }
+
+    private void insert(Timeout timeout) {
+        var level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(timeout.deadline ^ currentTick)) / SLOT_BITS;
+        var slot = (int) (timeout.deadline >>> (level * SLOT_BITS)) & SLOT_MASK;
+        var index = level * SLOT_COUNT + slot;
+        var head = buckets[index];
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[index] = timeout;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timeout timeout) {
+        var index = timeout.bucket;
+        if (timeout.prev == null) {
+            buckets[index] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        if (buckets[index] == null) {
+            occupied[index / SLOT_COUNT] &= ~(1L << (index & SLOT_MASK));
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    /**
+     * 最低的有任务的层的最近的一个槽就是下一次需要处理的槽，同一层中槽的下标一定大于当前tick在这一层的下标
+     */
+    private long nextTick() {
+        for (var level = 0; level < LEVEL_COUNT; level++) {
+            if (occupied[level] != 0) {
+                return slotTick(level, Long.numberOfTrailingZeros(occupied[level]));
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private long slotTick(int level, int slot) {
+        var shift = level * SLOT_BITS;
+        var upperShift = shift + SLOT_BITS;
+        var upper = upperShift >= Long.SIZE ? 0L : (currentTick >>> upperShift) << upperShift;
+        return upper | ((long) slot << shift);
+    }
+
+    /**
+     * 把时间轮推进到now，到期的任务放到expiredList，高层的槽里的任务放到低层
+     */
+    private void advance(long now, List<Timeout> expiredList) {
+        while (true) {
+            var nextTick = nextTick();
+            if (nextTick > now) {
+                currentTick = Math.max(currentTick, now);
+                return;
+            }
+            currentTick = nextTick;
+            var level = 0;
+            while (occupied[level] == 0) {
+                level++;
+            }
+            var slot = Long.numberOfTrailingZeros(occupied[level]);
+            var index = level * SLOT_COUNT + slot;
+            var timeout = buckets[index];
+            buckets[index] = null;
+            occupied[level] &= ~(1L << slot);
+            while (timeout != null) {
+                var next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                if (timeout.deadline <= currentTick) {
+                    timeout.bucket = -1;
+                    size--;
+                    expiredList.add(timeout);
+                } else {
+                    insert(timeout);
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private void runWorker() {
+        var expiredList = new ArrayList<Timeout>();
+        while (true) {
+            lock.lock();
+            try {
+                while (true) {
+                    if (stopped) {
+                        return;
+                    }
+                    advance(tick(), expiredList);
+                    if (!expiredList.isEmpty()) {
+                        break;
+                    }
+                    var nextTick = nextTick();
+                    wakeTick = nextTick;
+                    try {
+                        if (nextTick == Long.MAX_VALUE) {
+                            wakeup.await();
+                        } else {
+                            wakeup.awaitNanos(startTime + nextTick * TICK_NANOS - System.nanoTime());
+                        }
+                    } catch (InterruptedException e) {
+                        logger.warn("timing wheel thread is interrupted and will continue to run");
+                    } finally {
+                        wakeTick = -1;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            for (var timeout : expiredList) {
+                dispatch(timeout);
+            }
+            expiredList.clear();
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        try {
+            timeout.executor.execute(timeout::run);
+        } catch (Throwable t) {
+            recorder.recordRejected();
+            logger.error("timing wheel dispatch task [{}] exception", ExecutorRecorder.describe(timeout.source), t);
+        }
+    }
+
+    /**
+     * 时间轮中的一个任务，可以用来取消这个任务
+     */
+    public final class Timeout {
+
+        private final Runnable task;
+        private final Object source;
+        private final long periodTicks;
+        private final Executor executor;
+
+        private long deadline;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, Object source, long periodTicks, Executor executor) {
+            this.task = task;
+            this.source = source == null ? task : source;
+            this.periodTicks = periodTicks;
+            this.executor = executor;
+        }
+
+        /**
+         * 取消之后任务不会再被执行，正在执行的任务不会被中断
+         *
+         * @return 任务还在时间轮中等待的时候返回true
+         */
+        public boolean cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                if (bucket < 0) {
+                    return false;
+                }
+                unlink(this);
+                size--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                recorder.run(task, source, System.nanoTime() - startTime - deadline * TICK_NANOS);
+            } catch (Throwable t) {
+                logger.error("timing wheel task [{}] unknown exception", ExecutorRecorder.describe(source), t);
+            }
+            if (periodTicks <= 0 || cancelled) {
+                return;
+            }
+            var nextDeadline = deadline + periodTicks;
+            var now = tick();
+            if (nextDeadline <= now) {
+                nextDeadline += ((now - nextDeadline) / periodTicks + 1) * periodTicks;
+            }
+            try {
+                schedule(this, nextDeadline);
+            } catch (RejectedExecutionException e) {
+                // 时间轮已经停止，周期任务不再继续执行
+            }
+        }
+    }
+
+}
@@ -14,6 +14,7 @@
 package com.zfoo.scheduler.model.vo;
 
 import com.zfoo.protocol.util.ReflectionUtils;
+import com.zfoo.scheduler.manager.TimingWheel;
 import com.zfoo.scheduler.util.TimeUtils;
 import javassist.CannotCompileException;
 import javassist.NotFoundException;
@@ -21,6 +22,7 @@ import org.springframework.scheduling.support.CronExpression;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
 
 /**
  * @author godotg
@@ -32,17 +34,33 @@ public class SchedulerDefinition {
 
     private IScheduler scheduler;
 
+    /**
+     * 在统计信息中描述这个任务，被注解的方法是类名.方法名，其它的是Runnable的类名
+     */
+    private String name;
+
     /**
      * 触发时间戳，只要当前时间戳大于这个触发事件戳都视为可以触发
      */
     private long triggerTimestamp;
 
+    /**
+     * 执行任务的执行器，为null的时候在scheduler的线程执行
+     */
+    private Executor executor;
+
+    /**
+     * 在时间轮中等待下一次触发的任务
+     */
+    private TimingWheel.Timeout timeout;
+
     public static SchedulerDefinition valueOf(String cron, Object bean, Method method) throws NoSuchMethodException, IllegalAccessException, InstantiationException, CannotCompileException, NotFoundException, InvocationTargetException {
         var schedulerDef = new SchedulerDefinition();
         var cronExpression = CronExpression.parse(cron);
         schedulerDef.cronExpression = cronExpression;
         // 字节码增强，避免反射
         schedulerDef.scheduler = EnhanceUtils.createScheduler(ReflectScheduler.valueOf(bean, method));
+        schedulerDef.name = bean.getClass().getName() + "." + method.getName();
         schedulerDef.triggerTimestamp = TimeUtils.nextTimestampByCronExpression(cronExpression, TimeUtils.currentTimeMillis());
         ReflectionUtils.makeAccessible(method);
         return schedulerDef;
@@ -53,6 +71,7 @@ public class SchedulerDefinition {
         var cronExpression = CronExpression.parse(cron);
         schedulerDef.cronExpression = cronExpression;
         schedulerDef.scheduler = RunnableScheduler.valueOf(runnable);
+        schedulerDef.name = runnable.getClass().getName();
         schedulerDef.triggerTimestamp = TimeUtils.nextTimestampByCronExpression(cronExpression, TimeUtils.currentTimeMillis());
         return schedulerDef;
     }
@@ -73,6 +92,10 @@ public class SchedulerDefinition {
         this.scheduler = scheduler;
     }
 
+    public String getName() {
+        return name;
+    }
+
     public long getTriggerTimestamp() {
         return triggerTimestamp;
     }
@@ -80,4 +103,20 @@ public class SchedulerDefinition {
     public void setTriggerTimestamp(long triggerTimestamp) {
         this.triggerTimestamp = triggerTimestamp;
     }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public TimingWheel.Timeout getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(TimingWheel.Timeout timeout) {
+        this.timeout = timeout;
+    }
 }
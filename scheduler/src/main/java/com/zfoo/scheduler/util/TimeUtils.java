@@ -80,7 +80,7 @@ public abstract class TimeUtils {
     static {
         currentTimeMillis();
         // 调用一下静态方法，使SchedulerBus静态代码块初始化
-        SchedulerBus.refreshMinTriggerTimestamp();
+        SchedulerBus.timeoutSize();
     }
 
     private static volatile long timestamp = System.currentTimeMillis();
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.scheduler.manager;
+
+import com.zfoo.util.metrics.ExecutorRecorder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+public class TimingWheelTest {
+
+    private final TimingWheel timingWheel = new TimingWheel(runnable -> {
+        var thread = new Thread(runnable, "timing-wheel-test");
+        thread.setDaemon(true);
+        return thread;
+    }, Runnable::run, new ExecutorRecorder("timing.wheel.test", () -> 0));
+
+    @After
+    public void stop() {
+        timingWheel.stop();
+    }
+
+    @Test
+    public void expireTest() throws InterruptedException {
+        var count = 20_000;
+        var latch = new CountDownLatch(count);
+        var earlyCount = new AtomicInteger();
+        for (var i = 0; i < count; i++) {
+            var delay = ThreadLocalRandom.current().nextInt(300);
+            var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            timingWheel.newTimeout(() -> {
+                if (System.nanoTime() < deadline) {
+                    earlyCount.incrementAndGet();
+                }
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, earlyCount.get());
+        Assert.assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void cascadeTest() throws InterruptedException {
+        // 跨越第一层和第二层边界的延迟，任务需要从高层的槽移动到低层的槽
+        var delays = new long[]{1, 63, 64, 65, 127, 128, 4095, 4096, 4097};
+        var latch = new CountDownLatch(delays.length);
+        var lateMillis = new ArrayList<Long>();
+        for (var delay : delays) {
+            var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            timingWheel.newTimeout(() -> {
+                synchronized (lateMillis) {
+                    lateMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deadline));
+                }
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (var late : lateMillis) {
+            Assert.assertTrue(late >= 0 && late < 1000);
+        }
+    }
+
+    @Test
+    public void cancelTest() throws InterruptedException {
+        var count = 10_000;
+        var fired = new AtomicInteger();
+        var timeouts = new ArrayList<TimingWheel.Timeout>();
+        for (var i = 0; i < count; i++) {
+            timeouts.add(timingWheel.newTimeout(fired::incrementAndGet, 50 + i % 100, TimeUnit.MILLISECONDS));
+        }
+        // 很远的任务放在高层的槽中
+        var farTimeout = timingWheel.newTimeout(fired::incrementAndGet, 30, TimeUnit.DAYS);
+        Assert.assertEquals(count + 1, timingWheel.size());
+
+        for (var i = 0; i < count; i += 2) {
+            Assert.assertTrue(timeouts.get(i).cancel());
+        }
+        Assert.assertTrue(farTimeout.cancel());
+        Assert.assertFalse(farTimeout.cancel());
+        Assert.assertEquals(count / 2, timingWheel.size());
+
+        Thread.sleep(500);
+        Assert.assertEquals(count / 2, fired.get());
+        Assert.assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void periodTest() throws InterruptedException {
+        var fired = new AtomicInteger();
+        var timeout = timingWheel.newTimeout(fired::incrementAndGet, null, 0, 10, TimeUnit.MILLISECONDS, null);
+        Thread.sleep(200);
+        timeout.cancel();
+        var firedCount = fired.get();
+        Assert.assertTrue(firedCount >= 5);
+        Thread.sleep(100);
+        Assert.assertEquals(firedCount, fired.get());
+    }
+
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.interpreter;
+
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.ReflectionUtils;
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.util.security.IdUtils;
+import javassist.*;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.Descriptor;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * 为每一个资源类生成一个ResourceInjector的子类，public属性直接赋值和读取，private属性优先使用set方法和get方法
+ * <p>
+ * 没有set方法和get方法的private属性，生成的类无法直接访问，使用生成类中static final的VarHandle读写，JIT可以把VarHandle当作常量内联，
+ * 基本类型按照属性的实际类型调用，不需要装箱和拆箱；无法创建VarHandle的属性（例如模块没有open）仍然使用提前设置好accessible的Field
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public abstract class EnhanceUtils {
+
+    static {
+        // 适配Tomcat，因为Tomcat不是用的默认的类加载器，而Javassist用的是默认的加载器
+        var classArray = new Class<?>[]{
+                ResourceInjector.class,
+                IFieldConverter.class,
+                ReflectionUtils.class
+        };
+
+        var classPool = ClassPool.getDefault();
+
+        for (var clazz : classArray) {
+            if (classPool.find(clazz.getCanonicalName()) == null) {
+                ClassClassPath classPath = new ClassClassPath(clazz);
+                classPool.insertClassPath(classPath);
+            }
+        }
+    }
+
+    /**
+     * 资源类或者它的外部类不是public的时候无法生成，直接使用反射的ResourceInjector
+     */
+    public static synchronized ResourceInjector createResourceInjector(Class<?> clazz, Field[] fields, IFieldConverter[] converters) throws NotFoundException, CannotCompileException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        if (!isAccessible(clazz)) {
+            return new ResourceInjector(clazz, fields, converters);
+        }
+
+        var classPool = ClassPool.getDefault();
+        if (classPool.find(clazz.getCanonicalName()) == null) {
+            classPool.insertClassPath(new ClassClassPath(clazz));
+        }
+
+        // 定义类名称
+        CtClass enhanceClazz = classPool.makeClass(EnhanceUtils.class.getCanonicalName() + clazz.getSimpleName() + IdUtils.getLocalIntId());
+        enhanceClazz.setSuperclass(classPool.get(ResourceInjector.class.getCanonicalName()));
+
+        // 定义类的构造器
+        CtConstructor constructor = new CtConstructor(classPool.get(new String[]{Class.class.getCanonicalName(), Field[].class.getCanonicalName(), IFieldConverter[].class.getCanonicalName()}), enhanceClazz);
+        constructor.setBody("{super($1, $2, $3);}");
+        constructor.setModifiers(Modifier.PUBLIC);
+        enhanceClazz.addConstructor(constructor);
+
+        if (hasPublicConstructor(clazz)) {
+            CtMethod newInstanceMethod = new CtMethod(classPool.get(Object.class.getCanonicalName()), "newInstance", null, enhanceClazz);
+            newInstanceMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+            newInstanceMethod.setBody(StringUtils.format("{return new {}();}", clazz.getCanonicalName()));
+            enhanceClazz.addMethod(newInstanceMethod);
+        }
+
+        // 没有set方法或者get方法的private属性通过VarHandle读写
+        var varHandleFields = new boolean[fields.length];
+        for (var i = 0; i < fields.length; i++) {
+            var field = fields[i];
+            if (Modifier.isPublic(field.getModifiers()) || !canUseVarHandle(field)) {
+                continue;
+            }
+            var readable = publicGetMethod(clazz, field) == null;
+            var writeable = publicSetMethod(clazz, field) == null && !Modifier.isFinal(field.getModifiers());
+            if (!readable && !writeable) {
+                continue;
+            }
+            varHandleFields[i] = true;
+            addVarHandle(enhanceClazz, field, i, readable, writeable);
+        }
+
+        CtMethod injectMethod = new CtMethod(classPool.get(void.class.getCanonicalName()), "inject"
+                , classPool.get(new String[]{Object.class.getCanonicalName(), List.class.getCanonicalName(), int[].class.getCanonicalName()}), enhanceClazz);
+        injectMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        injectMethod.setBody(injectMethodBody(clazz, fields, varHandleFields));
+        enhanceClazz.addMethod(injectMethod);
+
+        CtMethod readMethod = new CtMethod(classPool.get(Object.class.getCanonicalName()), "read"
+                , classPool.get(new String[]{Object.class.getCanonicalName(), int.class.getCanonicalName()}), enhanceClazz);
+        readMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        readMethod.setBody(readMethodBody(clazz, fields, varHandleFields));
+        enhanceClazz.addMethod(readMethod);
+
+        // 释放缓存
+        enhanceClazz.detach();
+
+        Class<?> resultClazz = enhanceClazz.toClass(EnhanceUtils.class);
+        var resultConstructor = resultClazz.getConstructor(Class.class, Field[].class, IFieldConverter[].class);
+        return (ResourceInjector) resultConstructor.newInstance(clazz, fields, converters);
+    }
+
+    /**
+     * 生成的类在static初始化的时候调用，获取资源类private属性的VarHandle
+     */
+    static VarHandle varHandle(Class<?> clazz, String fieldName) {
+        try {
+            var field = clazz.getDeclaredField(fieldName);
+            return MethodHandles.privateLookupIn(clazz, MethodHandles.lookup()).unreflectVarHandle(field);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RunException("Unable to get the var handle of [field:{}] in [class:{}]", fieldName, clazz.getName(), e);
+        }
+    }
+
+    private static boolean canUseVarHandle(Field field) {
+        // 生成的方法中需要强转为属性的类型
+        if (!isAccessible(field.getDeclaringClass()) || !isAccessible(componentType(field.getType()))) {
+            return false;
+        }
+        try {
+            varHandle(field.getDeclaringClass(), field.getName());
+            return true;
+        } catch (RunException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 生成static final的VarHandle属性，以及按照属性实际类型调用VarHandle的get{index}和set{index}方法。
+     * VarHandle的get和set是签名多态的方法，Javassist的编译器不支持，所以直接生成字节码
+     */
+    private static void addVarHandle(CtClass enhanceClazz, Field field, int index, boolean readable, boolean writeable) throws NotFoundException, CannotCompileException {
+        var classPool = enhanceClazz.getClassPool();
+        var constPool = enhanceClazz.getClassFile().getConstPool();
+        var handleName = varHandleName(index);
+        var handleDescriptor = Descriptor.of(VarHandle.class.getName());
+        var declaringClazz = field.getDeclaringClass();
+        var fieldType = field.getType();
+        var fieldDescriptor = descriptor(fieldType);
+        var objectType = classPool.get(Object.class.getName());
+        var valueType = fieldType.isPrimitive() ? classPool.get(fieldType.getName()) : objectType;
+
+        var handleField = new CtField(classPool.get(VarHandle.class.getName()), handleName, enhanceClazz);
+        handleField.setModifiers(Modifier.PRIVATE + Modifier.STATIC + Modifier.FINAL);
+        enhanceClazz.addField(handleField, CtField.Initializer.byExpr(StringUtils.format("{}.varHandle({}.class, \"{}\")"
+                , EnhanceUtils.class.getCanonicalName(), declaringClazz.getCanonicalName(), field.getName())));
+
+        if (readable) {
+            // private static {fieldType} get{index}(Object packet)
+            var bytecode = new Bytecode(constPool);
+            bytecode.addGetstatic(enhanceClazz, handleName, handleDescriptor);
+            bytecode.addAload(0);
+            bytecode.addCheckcast(declaringClazz.getName());
+            bytecode.addInvokevirtual(VarHandle.class.getName(), "get", StringUtils.format("({}){}", descriptor(declaringClazz), fieldDescriptor));
+            bytecode.addReturn(valueType);
+            bytecode.setMaxLocals(1);
+            var getMethod = new CtMethod(valueType, "get" + index, new CtClass[]{objectType}, enhanceClazz);
+            getMethod.setModifiers(Modifier.PRIVATE + Modifier.STATIC);
+            getMethod.getMethodInfo().setCodeAttribute(bytecode.toCodeAttribute());
+            enhanceClazz.addMethod(getMethod);
+        }
+
+        if (writeable) {
+            // private static void set{index}(Object packet, {fieldType} value)
+            var bytecode = new Bytecode(constPool);
+            bytecode.addGetstatic(enhanceClazz, handleName, handleDescriptor);
+            bytecode.addAload(0);
+            bytecode.addCheckcast(declaringClazz.getName());
+            var valueSize = bytecode.addLoad(1, valueType);
+            if (!fieldType.isPrimitive()) {
+                bytecode.addCheckcast(fieldType.getName());
+            }
+            bytecode.addInvokevirtual(VarHandle.class.getName(), "set", StringUtils.format("({}{})V", descriptor(declaringClazz), fieldDescriptor));
+            bytecode.addReturn(null);
+            bytecode.setMaxLocals(1 + valueSize);
+            var setMethod = new CtMethod(CtClass.voidType, "set" + index, new CtClass[]{objectType, valueType}, enhanceClazz);
+            setMethod.setModifiers(Modifier.PRIVATE + Modifier.STATIC);
+            setMethod.getMethodInfo().setCodeAttribute(bytecode.toCodeAttribute());
+            enhanceClazz.addMethod(setMethod);
+        }
+    }
+
+    private static String varHandleName(int index) {
+        return "VAR_HANDLE_" + index;
+    }
+
+    private static String descriptor(Class<?> clazz) {
+        if (clazz.isArray()) {
+            return clazz.getName().replace('.', '/');
+        }
+        return Descriptor.of(clazz.getName());
+    }
+
+    private static Class<?> componentType(Class<?> clazz) {
+        var componentType = clazz;
+        while (componentType.isArray()) {
+            componentType = componentType.getComponentType();
+        }
+        return componentType;
+    }
+
+    private static String injectMethodBody(Class<?> clazz, Field[] fields, boolean[] varHandleFields) {
+        var clazzName = clazz.getCanonicalName();
+        var builder = new StringBuilder();
+        builder.append("{");
+        builder.append(StringUtils.format("{} packet = ({}) $1;", clazzName, clazzName));
+        builder.append("String content;");
+        for (var i = 0; i < fields.length; i++) {
+            var field = fields[i];
+            var fieldType = field.getType();
+            builder.append(StringUtils.format("content = (String) $2.get($3[{}]);", i));
+
+            // 空的单元格不注入，String类型的属性除外，和ResourceInjector.inject()保持一致
+            if (fieldType != String.class) {
+                builder.append("if (content != null && content.length() > 0) {");
+            }
+            builder.append("try {");
+
+            String value;
+            if (fieldType == String.class) {
+                value = "content";
+            } else if (fieldType.isPrimitive()) {
+                // 基本类型直接调用返回基本类型的转换方法，不需要装箱和拆箱
+                value = StringUtils.format("converters[{}].convert{}(content)", i, StringUtils.capitalize(fieldType.getName()));
+            } else {
+                value = StringUtils.format("({}) converters[{}].convert(content)", fieldType.getCanonicalName(), i);
+            }
+
+            if (Modifier.isPublic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                builder.append(StringUtils.format("packet.{} = {};", field.getName(), value));
+            } else {
+                var setMethod = publicSetMethod(clazz, field);
+                if (setMethod != null) {
+                    builder.append(StringUtils.format("packet.{}({});", setMethod.getName(), value));
+                } else if (varHandleFields[i] && !Modifier.isFinal(field.getModifiers())) {
+                    // 引用类型的set方法参数是Object，在生成的字节码中强转
+                    var handleValue = fieldType.isPrimitive() ? value : StringUtils.format("converters[{}].convert(content)", i);
+                    builder.append(StringUtils.format("set{}(packet, {});", i, handleValue));
+                } else {
+                    builder.append(StringUtils.format("{}.setField(fields[{}], packet, converters[{}].convert(content));", ReflectionUtils.class.getCanonicalName(), i, i));
+                }
+            }
+
+            // 转换或者赋值失败的时候和ResourceInjector.inject()一样抛出带有属性信息的异常
+            builder.append(StringUtils.format("} catch (Exception e) { throw convertException({}, content, e); }", i));
+            if (fieldType != String.class) {
+                builder.append("}");
+            }
+        }
+        builder.append("}");
+        return builder.toString();
+    }
+
+    private static String readMethodBody(Class<?> clazz, Field[] fields, boolean[] varHandleFields) {
+        var clazzName = clazz.getCanonicalName();
+        var builder = new StringBuilder();
+        builder.append("{");
+        builder.append(StringUtils.format("{} packet = ({}) $1;", clazzName, clazzName));
+        builder.append("switch ($2) {");
+        for (var i = 0; i < fields.length; i++) {
+            var field = fields[i];
+            builder.append(StringUtils.format("case {}: ", i));
+            if (Modifier.isPublic(field.getModifiers())) {
+                builder.append(StringUtils.format("return ($w) packet.{};", field.getName()));
+                continue;
+            }
+            var getMethod = publicGetMethod(clazz, field);
+            if (getMethod != null) {
+                builder.append(StringUtils.format("return ($w) packet.{}();", getMethod.getName()));
+            } else if (varHandleFields[i]) {
+                builder.append(StringUtils.format("return ($w) get{}(packet);", i));
+            } else {
+                builder.append(StringUtils.format("return {}.getField(fields[{}], packet);", ReflectionUtils.class.getCanonicalName(), i));
+            }
+        }
+        builder.append("default: throw new IllegalArgumentException(String.valueOf($2));");
+        builder.append("}");
+        builder.append("}");
+        return builder.toString();
+    }
+
+    private static boolean isAccessible(Class<?> clazz) {
+        for (var current = clazz; current != null; current = current.getEnclosingClass()) {
+            if (!Modifier.isPublic(current.getModifiers())) {
+                return false;
+            }
+            if (current.getEnclosingClass() != null && !Modifier.isStatic(current.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasPublicConstructor(Class<?> clazz) {
+        if (Modifier.isAbstract(clazz.getModifiers())) {
+            return false;
+        }
+        try {
+            return Modifier.isPublic(clazz.getDeclaredConstructor().getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Method publicSetMethod(Class<?> clazz, Field field) {
+        try {
+            var method = clazz.getDeclaredMethod(ReflectionUtils.fieldToSetMethod(clazz, field), field.getType());
+            return Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers()) ? method : null;
+        } catch (Exception e) {
+            // 没有set方法
+            return null;
+        }
+    }
+
+    private static Method publicGetMethod(Class<?> clazz, Field field) {
+        try {
+            var method = clazz.getDeclaredMethod(ReflectionUtils.fieldToGetMethod(clazz, field));
+            return Modifier.isPublic(method.getModifiers()) && method.getReturnType() == field.getType() ? method : null;
+        } catch (Exception e) {
+            // 没有get方法
+            return null;
+        }
+    }
+
+}
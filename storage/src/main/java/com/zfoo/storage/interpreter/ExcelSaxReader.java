@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.interpreter;
+
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.storage.model.resource.ResourceData;
+import com.zfoo.storage.model.resource.ResourceHeader;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * 基于SAX的xlsx读取，边解析sheet的xml边生成ResourceData的每一行，不会像usermodel一样在内存中构建整个workbook的Row和Cell对象
+ * <p>
+ * 单元格转换成字符串的规则和CellUtils保持一致，读取的结果和ExcelReader完全一样
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public abstract class ExcelSaxReader {
+
+    public static ResourceData readResourceDataFromExcel(InputStream inputStream, String resourceClassName) {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(inputStream);
+            var reader = new XSSFReader(pkg);
+            var sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            var styles = reader.getStylesTable();
+            var date1904 = isDate1904(reader);
+
+            // 默认取到第一个sheet页
+            var sheetIterator = reader.getSheetsData();
+            if (!sheetIterator.hasNext()) {
+                throw new RunException("Static resource [{}] does not contain any sheet", resourceClassName);
+            }
+
+            var handler = new SheetHandler(resourceClassName, sharedStrings, styles, date1904);
+            var sheetInputStream = sheetIterator.next();
+            try {
+                var xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(handler);
+                xmlReader.parse(new InputSource(sheetInputStream));
+            } finally {
+                IOUtils.closeIO(sheetInputStream);
+            }
+
+            if (handler.headers == null) {
+                throw new RunException("Failed to get type control column from excel file of resource [class:{}]", resourceClassName);
+            }
+            return ResourceData.valueOf(resourceClassName, handler.headers, handler.rows);
+        } catch (RunException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RunException("Static resource [{}] is abnormal, and the file cannot be read", resourceClassName, e);
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    private static boolean isDate1904(XSSFReader reader) throws Exception {
+        var workbookInputStream = reader.getWorkbookData();
+        try {
+            var date1904 = new boolean[1];
+            var xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("workbookPr".equals(localName)) {
+                        var value = attributes.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equalsIgnoreCase(value);
+                    }
+                }
+            });
+            xmlReader.parse(new InputSource(workbookInputStream));
+            return date1904[0];
+        } finally {
+            IOUtils.closeIO(workbookInputStream);
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+
+        private final String resourceClassName;
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final StylesTable styles;
+        private final boolean date1904;
+
+        // 当前行的单元格，key为列号
+        private final TreeMap<Integer, String> currentRow = new TreeMap<>();
+        private int rowCount = 0;
+        private TreeMap<Integer, String> fieldRow;
+
+        private List<ResourceHeader> headers;
+        private final List<List<String>> rows = new ArrayList<>();
+
+        // 当前单元格的状态
+        private int column = -1;
+        private String cellType;
+        private int cellStyle;
+        private boolean valueTag;
+        private boolean inlineStringTag;
+        private final StringBuilder value = new StringBuilder();
+
+        public SheetHandler(String resourceClassName, ReadOnlySharedStringsTable sharedStrings, StylesTable styles, boolean date1904) {
+            this.resourceClassName = resourceClassName;
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.date1904 = date1904;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    currentRow.clear();
+                    column = -1;
+                    break;
+                case "c":
+                    var reference = attributes.getValue("r");
+                    column = reference == null ? column + 1 : columnIndex(reference);
+                    cellType = attributes.getValue("t");
+                    var style = attributes.getValue("s");
+                    cellStyle = style == null ? 0 : Integer.parseInt(style);
+                    value.setLength(0);
+                    break;
+                case "v":
+                    valueTag = true;
+                    break;
+                case "is":
+                    inlineStringTag = true;
+                    break;
+                case "t":
+                    // 内联字符串的文本在<is><t>或者<is><r><t>中
+                    valueTag = inlineStringTag;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (valueTag) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    valueTag = false;
+                    break;
+                case "is":
+                    inlineStringTag = false;
+                    break;
+                case "c":
+                    currentRow.put(column, cellValue().trim());
+                    break;
+                case "row":
+                    endRow();
+                    break;
+                default:
+            }
+        }
+
+        private void endRow() {
+            rowCount++;
+            // 默认第一行就是字段名称，第二行字段类型，第三行为描述
+            if (rowCount == 1) {
+                fieldRow = new TreeMap<>(currentRow);
+                return;
+            }
+            if (rowCount == 2) {
+                headers = createHeaders(currentRow);
+                return;
+            }
+            if (rowCount == 3) {
+                return;
+            }
+
+            if (StringUtils.isBlank(currentRow.get(0))) {
+                return;
+            }
+            var columns = new ArrayList<String>(headers.size());
+            for (var header : headers) {
+                columns.add(currentRow.getOrDefault(header.getIndex(), StringUtils.EMPTY));
+            }
+            rows.add(columns);
+        }
+
+        private List<ResourceHeader> createHeaders(TreeMap<Integer, String> typeRow) {
+            var headerList = new ArrayList<ResourceHeader>();
+            var cellFieldMap = new HashMap<String, Integer>();
+            for (var entry : fieldRow.entrySet()) {
+                var index = entry.getKey();
+                var excelFieldName = entry.getValue();
+                if (StringUtils.isEmpty(excelFieldName)) {
+                    continue;
+                }
+                var typeName = typeRow.get(index);
+                if (StringUtils.isEmpty(typeName)) {
+                    continue;
+                }
+                var previousValue = cellFieldMap.put(excelFieldName, index);
+                if (Objects.nonNull(previousValue)) {
+                    throw new RunException("There are duplicate attribute control columns [field:{}] in the Excel file of the resource [class:{}]", excelFieldName, resourceClassName);
+                }
+                headerList.add(ResourceHeader.valueOf(excelFieldName, typeName, index));
+            }
+            return headerList;
+        }
+
+        /**
+         * 和CellUtils.getCellValue的转换规则保持一致，公式单元格的t属性就是缓存结果的类型
+         */
+        private String cellValue() {
+            var content = value.toString();
+            if (cellType == null || "n".equals(cellType)) {
+                return StringUtils.isEmpty(content) ? StringUtils.EMPTY : numericValue(Double.parseDouble(content));
+            }
+            switch (cellType) {
+                case "s":
+                    return StringUtils.isEmpty(content) ? StringUtils.EMPTY : sharedStrings.getItemAt(Integer.parseInt(content)).getString();
+                case "b":
+                    return String.valueOf("1".equals(content) || "true".equalsIgnoreCase(content));
+                default:
+                    // str，inlineStr，e
+                    return content;
+            }
+        }
+
+        private String numericValue(double number) {
+            var style = styles.getStyleAt(cellStyle);
+            if (style == null) {
+                return String.valueOf(number);
+            }
+
+            var format = style.getDataFormatString();
+            // 判断是否为日期
+            if (DateUtil.isValidExcelDate(number) && DateUtil.isADateFormat(style.getDataFormat(), format)) {
+                return DateUtil.getJavaDate(number, date1904).toString();
+            }
+
+            // 普通数字
+            if (null != format && !format.contains(StringUtils.PERIOD)) {
+                var longValue = (long) number;
+                if (longValue == number) {
+                    return String.valueOf(longValue);
+                }
+            }
+            return String.valueOf(number);
+        }
+
+        // 单元格的引用，例如：AB12，列号从0开始
+        private static int columnIndex(String reference) {
+            var index = 0;
+            for (var i = 0; i < reference.length(); i++) {
+                var c = reference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                index = index * 26 + (c - 'A' + 1);
+            }
+            return index - 1;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.interpreter;
+
+/**
+ * 把配置表单元格的内容转换成属性的类型，每一个属性在启动的时候就确定好使用哪一个转换器
+ *
+ * @author godotg
+ * @version 4.0
+ */
+@FunctionalInterface
+public interface IFieldConverter {
+
+    Object convert(String content);
+
+    /**
+     * 基本类型的属性使用下面的方法转换，生成的ResourceInjector直接调用，基本类型的转换器重写这些方法避免装箱和拆箱
+     */
+    default int convertInt(String content) {
+        return (Integer) convert(content);
+    }
+
+    default long convertLong(String content) {
+        return (Long) convert(content);
+    }
+
+    default short convertShort(String content) {
+        return (Short) convert(content);
+    }
+
+    default byte convertByte(String content) {
+        return (Byte) convert(content);
+    }
+
+    default float convertFloat(String content) {
+        return (Float) convert(content);
+    }
+
+    default double convertDouble(String content) {
+        return (Double) convert(content);
+    }
+
+    default boolean convertBoolean(String content) {
+        return (Boolean) convert(content);
+    }
+
+    default char convertChar(String content) {
+        return (Character) convert(content);
+    }
+
+}
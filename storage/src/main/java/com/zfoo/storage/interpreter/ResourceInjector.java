@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.interpreter;
+
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.ReflectionUtils;
+import com.zfoo.protocol.util.StringUtils;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * 把配置表的一行注入到资源对象中，以及读取资源对象的属性
+ * <p>
+ * 默认使用反射实现，EnhanceUtils会为资源类生成子类，直接访问public属性和get方法
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public class ResourceInjector {
+
+    protected final Class<?> clazz;
+
+    protected final Field[] fields;
+
+    /**
+     * 和fields一一对应
+     */
+    protected final IFieldConverter[] converters;
+
+    public ResourceInjector(Class<?> clazz, Field[] fields, IFieldConverter[] converters) {
+        this.clazz = clazz;
+        this.fields = fields;
+        this.converters = converters;
+        for (var field : fields) {
+            ReflectionUtils.makeAccessible(field);
+        }
+    }
+
+    public Object newInstance() {
+        return ReflectionUtils.newInstance(clazz);
+    }
+
+    /**
+     * @param columns       配置表的一行
+     * @param columnIndexes 第i个属性对应的列是columnIndexes[i]
+     */
+    public void inject(Object instance, List<String> columns, int[] columnIndexes) {
+        for (var i = 0; i < fields.length; i++) {
+            var field = fields[i];
+            var content = columns.get(columnIndexes[i]);
+            if (StringUtils.isNotEmpty(content) || field.getType() == String.class) {
+                try {
+                    ReflectionUtils.setField(field, instance, converters[i].convert(content));
+                } catch (Exception e) {
+                    throw convertException(i, content, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 转换或者赋值失败的时候抛出的异常，生成的子类也使用这个方法
+     */
+    protected RunException convertException(int fieldIndex, String content, Throwable cause) {
+        return new RunException("Unable to convert [content:{}] to property [field:{}] in Excel resource [class:{}]", content, fields[fieldIndex].getName(), clazz.getSimpleName(), cause);
+    }
+
+    public Object read(Object instance, int fieldIndex) {
+        return ReflectionUtils.getField(fields[fieldIndex], instance);
+    }
+
+    /**
+     * @return 属性在fields中的位置，不存在返回-1
+     */
+    public int fieldIndex(Field field) {
+        for (var i = 0; i < fields.length; i++) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public Field[] getFields() {
+        return fields;
+    }
+
+}
@@ -12,6 +12,7 @@
  */
 package com.zfoo.storage.interpreter;
 
+import com.zfoo.protocol.collection.ArrayUtils;
 import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.util.ReflectionUtils;
 import com.zfoo.protocol.util.StringUtils;
@@ -20,14 +21,17 @@ import com.zfoo.storage.model.anno.Id;
 import com.zfoo.storage.model.resource.ResourceData;
 import com.zfoo.storage.model.resource.ResourceEnum;
 import com.zfoo.storage.strategy.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.support.ConversionServiceFactoryBean;
 import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.util.NumberUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author godotg
@@ -35,10 +39,18 @@ import java.util.stream.Collectors;
  */
 public class ResourceInterpreter {
 
+    private static final Logger logger = LoggerFactory.getLogger(ResourceInterpreter.class);
+
     private static final TypeDescriptor TYPE_DESCRIPTOR = TypeDescriptor.valueOf(String.class);
 
     private static final ConversionServiceFactoryBean conversionServiceFactoryBean = new ConversionServiceFactoryBean();
 
+    private static final Set<String> TRUE_VALUES = Set.of("true", "on", "yes", "1");
+
+    private static final Set<String> FALSE_VALUES = Set.of("false", "off", "no", "0");
+
+    private static final Map<Class<?>, ResourceInjector> injectorMap = new ConcurrentHashMap<>();
+
     static {
         var converters = new HashSet<>();
         converters.add(new JsonToArrayConverter());
@@ -53,49 +65,236 @@ public class ResourceInterpreter {
     }
 
     public static <T> List<T> read(InputStream inputStream, Class<T> clazz, String suffix) throws IOException {
-        ResourceData resource = null;
+        return read(readResourceData(inputStream, clazz.getSimpleName(), suffix), clazz);
+    }
+
+    /**
+     * 只解析配置文件的表头和每一行的原始内容，不转换成对象
+     */
+    public static ResourceData readResourceData(InputStream inputStream, String resourceName, String suffix) throws IOException {
         var resourceEnum = ResourceEnum.getResourceEnumByType(suffix);
         if (resourceEnum == ResourceEnum.JSON) {
-            resource = JsonReader.readResourceDataFromCSV(inputStream);
-        } else if (resourceEnum == ResourceEnum.EXCEL_XLS || resourceEnum == ResourceEnum.EXCEL_XLSX) {
-            resource = ExcelReader.readResourceDataFromExcel(inputStream, clazz.getSimpleName());
+            return JsonReader.readResourceDataFromCSV(inputStream);
+        } else if (resourceEnum == ResourceEnum.EXCEL_XLSX) {
+            // xlsx使用SAX流式读取，避免大表在内存中构建整个workbook
+            return ExcelSaxReader.readResourceDataFromExcel(inputStream, resourceName);
+        } else if (resourceEnum == ResourceEnum.EXCEL_XLS) {
+            return ExcelReader.readResourceDataFromExcel(inputStream, resourceName);
         } else if (resourceEnum == ResourceEnum.CSV) {
-            resource = CsvReader.readResourceDataFromCSV(inputStream, clazz.getSimpleName());
+            return CsvReader.readResourceDataFromCSV(inputStream, resourceName);
         } else {
-            throw new RunException("Configuration type [{}] of file [{}] is not supported", suffix, clazz.getSimpleName());
+            throw new RunException("Configuration type [{}] of file [{}] is not supported", suffix, resourceName);
         }
+    }
 
+    public static <T> List<T> read(ResourceData resource, Class<T> clazz) {
         var result = new ArrayList<T>();
         //获取所有字段
         var cellFieldMap = getCellFieldMap(resource, clazz);
-        var fieldInfos = getFieldInfos(cellFieldMap, clazz);
+        var injector = resourceInjector(clazz);
+        var columnIndexes = getColumnIndexes(cellFieldMap, clazz, injector.getFields());
 
         var iterator = resource.getRows().iterator();
         // 从ROW_SERVER这行开始读取数据
         while (iterator.hasNext()) {
             var columns = iterator.next();
-            var instance = ReflectionUtils.newInstance(clazz);
-
-            for (var fieldInfo : fieldInfos) {
-                var content = columns.get(fieldInfo.index);
-                if (StringUtils.isNotEmpty(content) || fieldInfo.field.getType() == String.class) {
-                    inject(instance, fieldInfo.field, content);
-                }
-            }
+            var instance = (T) injector.newInstance();
+            injector.inject(instance, columns, columnIndexes);
             result.add(instance);
         }
         return result;
     }
 
-    private static void inject(Object instance, Field field, String content) {
-        try {
-            var targetType = new TypeDescriptor(field);
-            var value = conversionServiceFactoryBean.getObject().convert(content, TYPE_DESCRIPTOR, targetType);
-            ReflectionUtils.makeAccessible(field);
-            ReflectionUtils.setField(field, instance, value);
-        } catch (Exception e) {
-            throw new RunException("Unable to convert [content:{}] to property [field:{}] in Excel resource [class:{}]", content, field.getName(), instance.getClass().getSimpleName(), e);
+    /**
+     * 每一个资源类只生成一次ResourceInjector，属性的转换器在生成的时候就确定好，读取每一个单元格的时候不需要再查找转换器
+     */
+    public static ResourceInjector resourceInjector(Class<?> clazz) {
+        return injectorMap.computeIfAbsent(clazz, it -> {
+            var fields = ArrayUtils.listToArray(ReflectionUtils.notStaticAndTransientFields(it), Field.class);
+            var converters = new IFieldConverter[fields.length];
+            for (var i = 0; i < fields.length; i++) {
+                converters[i] = typeConverter(fields[i]);
+            }
+            try {
+                return EnhanceUtils.createResourceInjector(it, fields, converters);
+            } catch (Throwable t) {
+                logger.warn("Resource [class:{}] failed to generate an enhanced injector, fall back to reflection", it.getSimpleName(), t);
+                return new ResourceInjector(it, fields, converters);
+            }
+        });
+    }
+
+    // 常用的基本类型直接解析，规则和Spring默认的StringToNumberConverterFactory，StringToBooleanConverter，StringToCharacterConverter保持一致
+    private static IFieldConverter typeConverter(Field field) {
+        var type = field.getType();
+        if (type.isPrimitive()) {
+            return primitiveConverter(type);
+        }
+
+        if (type == String.class) {
+            return content -> content;
+        } else if (type == Integer.class) {
+            return content -> NumberUtils.parseNumber(content, Integer.class);
+        } else if (type == Long.class) {
+            return content -> NumberUtils.parseNumber(content, Long.class);
+        } else if (type == Short.class) {
+            return content -> NumberUtils.parseNumber(content, Short.class);
+        } else if (type == Byte.class) {
+            return content -> NumberUtils.parseNumber(content, Byte.class);
+        } else if (type == Float.class) {
+            return content -> NumberUtils.parseNumber(content, Float.class);
+        } else if (type == Double.class) {
+            return content -> NumberUtils.parseNumber(content, Double.class);
+        } else if (type == Boolean.class) {
+            return ResourceInterpreter::toBoolean;
+        } else if (type == Character.class) {
+            return ResourceInterpreter::toCharacter;
         }
+
+        var targetType = new TypeDescriptor(field);
+        var conversionService = conversionServiceFactoryBean.getObject();
+        return content -> conversionService.convert(content, TYPE_DESCRIPTOR, targetType);
+    }
+
+    // 基本类型的转换器直接返回基本类型，十六进制的数字很少见，仍然交给NumberUtils解析
+    private static IFieldConverter primitiveConverter(Class<?> type) {
+        if (type == int.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertInt(content);
+                }
+
+                @Override
+                public int convertInt(String content) {
+                    var value = trimNumber(content);
+                    return isHexNumber(value) ? NumberUtils.parseNumber(value, Integer.class) : Integer.parseInt(value);
+                }
+            };
+        } else if (type == long.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertLong(content);
+                }
+
+                @Override
+                public long convertLong(String content) {
+                    var value = trimNumber(content);
+                    return isHexNumber(value) ? NumberUtils.parseNumber(value, Long.class) : Long.parseLong(value);
+                }
+            };
+        } else if (type == short.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertShort(content);
+                }
+
+                @Override
+                public short convertShort(String content) {
+                    var value = trimNumber(content);
+                    return isHexNumber(value) ? NumberUtils.parseNumber(value, Short.class) : Short.parseShort(value);
+                }
+            };
+        } else if (type == byte.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertByte(content);
+                }
+
+                @Override
+                public byte convertByte(String content) {
+                    var value = trimNumber(content);
+                    return isHexNumber(value) ? NumberUtils.parseNumber(value, Byte.class) : Byte.parseByte(value);
+                }
+            };
+        } else if (type == float.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertFloat(content);
+                }
+
+                @Override
+                public float convertFloat(String content) {
+                    return Float.parseFloat(trimNumber(content));
+                }
+            };
+        } else if (type == double.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertDouble(content);
+                }
+
+                @Override
+                public double convertDouble(String content) {
+                    return Double.parseDouble(trimNumber(content));
+                }
+            };
+        } else if (type == boolean.class) {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertBoolean(content);
+                }
+
+                @Override
+                public boolean convertBoolean(String content) {
+                    var value = toBoolean(content);
+                    if (value == null) {
+                        throw new IllegalArgumentException(StringUtils.format("Invalid boolean value [{}]", content));
+                    }
+                    return value;
+                }
+            };
+        } else {
+            return new IFieldConverter() {
+                @Override
+                public Object convert(String content) {
+                    return convertChar(content);
+                }
+
+                @Override
+                public char convertChar(String content) {
+                    return toCharacter(content);
+                }
+            };
+        }
+    }
+
+    // 和NumberUtils.parseNumber一样去掉所有的空白字符
+    private static String trimNumber(String content) {
+        return org.springframework.util.StringUtils.trimAllWhitespace(content);
+    }
+
+    private static boolean isHexNumber(String value) {
+        var index = value.startsWith("-") ? 1 : 0;
+        return value.startsWith("0x", index) || value.startsWith("0X", index) || value.startsWith("#", index);
+    }
+
+    private static Boolean toBoolean(String content) {
+        var value = content.trim();
+        if (value.isEmpty()) {
+            return null;
+        }
+        value = value.toLowerCase();
+        if (TRUE_VALUES.contains(value)) {
+            return Boolean.TRUE;
+        } else if (FALSE_VALUES.contains(value)) {
+            return Boolean.FALSE;
+        } else {
+            throw new IllegalArgumentException(StringUtils.format("Invalid boolean value [{}]", content));
+        }
+    }
+
+    private static Character toCharacter(String content) {
+        if (content.length() > 1) {
+            throw new IllegalArgumentException(StringUtils.format("Can only convert a [String] with length of 1 to a [Character]; string value [{}] has length of [{}]", content, content.length()));
+        }
+        return content.charAt(0);
     }
 
     // 优先使用ExcelFieldName注解表示的值当作列名
@@ -103,34 +302,26 @@ public class ResourceInterpreter {
         return field.isAnnotationPresent(ExcelFieldName.class) ? field.getAnnotation(ExcelFieldName.class).value() : field.getName();
     }
 
-    // 只读取代码里写的字段
-    private static Collection<FieldInfo> getFieldInfos(Map<String, Integer> cellFieldMap, Class<?> clazz) {
-        var fieldList = ReflectionUtils.notStaticAndTransientFields(clazz);
+    // 只读取代码里写的字段，第i个属性对应的列是columnIndexes[i]
+    private static int[] getColumnIndexes(Map<String, Integer> cellFieldMap, Class<?> clazz, Field[] fields) {
+        var columnIndexes = new int[fields.length];
         // 检测field的合法性，field必须可以在excel中找到对应的列，有找不到的列在启动时候就发现
-        for (var field : fieldList) {
+        for (var i = 0; i < fields.length; i++) {
+            var field = fields[i];
             var fieldName = getExcelFieldName(field);
             if (!cellFieldMap.containsKey(fieldName)) {
                 throw new RunException("The declaration attribute [filed:{}] of the resource class [class:{}] cannot be obtained, please check the format of the configuration table", fieldName, clazz);
             }
 
+            var cellIndex = cellFieldMap.get(fieldName);
             if (field.isAnnotationPresent(Id.class)) {
-                var cellIndex = cellFieldMap.get(fieldName);
                 if (cellIndex != 0) {
                     throw new RunException("The primary key [Id:{}] of the resource class [class:{}] must be placed in the first column of the Excel configuration table, please check the format of the configuration table", fieldName, clazz);
                 }
             }
+            columnIndexes[i] = cellIndex;
         }
-        return fieldList.stream().map(it -> new FieldInfo(cellFieldMap.get(getExcelFieldName(it)), it)).collect(Collectors.toList());
-    }
-
-    private static class FieldInfo {
-        public final int index;
-        public final Field field;
-
-        public FieldInfo(int index, Field field) {
-            this.index = index;
-            this.field = field;
-        }
+        return columnIndexes;
     }
 
     public static Map<String, Integer> getCellFieldMap(ResourceData resource, Class<?> clazz) {
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.manager;
+
+import com.zfoo.storage.model.vo.StorageChange;
+
+/**
+ * 配置表热更新的监听器，在新的数据替换完成之后调用，可以根据变化的id增量的重建依赖于配置表的缓存
+ *
+ * @author godotg
+ * @version 4.0
+ */
+@FunctionalInterface
+public interface IStorageListener<K, V> {
+
+    void onChange(StorageChange<K, V> change);
+
+}
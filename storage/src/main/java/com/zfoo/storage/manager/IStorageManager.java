@@ -43,7 +43,17 @@ public interface IStorageManager {
 
     Map<Class<?>, Storage<?, ?>> storageMap();
 
+    /**
+     * 已经存在的Storage会原子的替换成新的数据，并且通知IStorageListener
+     */
     void updateStorage(Class<?> clazz, Storage<?, ?> storage);
 
+    /**
+     * 重新读取配置表文件，在调用线程构建好新的Storage之后再替换
+     */
+    void reloadStorage(Class<?> clazz);
+
+    <K, V> void addStorageListener(Class<V> clazz, IStorageListener<K, V> listener);
+
     StorageConfig storageConfig();
 }
@@ -18,15 +18,20 @@ import com.zfoo.protocol.exception.ExceptionUtils;
 import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.util.ClassUtils;
 import com.zfoo.protocol.util.FileUtils;
+import com.zfoo.protocol.util.IOUtils;
 import com.zfoo.protocol.util.ReflectionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.storage.StorageContext;
+import com.zfoo.storage.interpreter.ResourceInterpreter;
 import com.zfoo.storage.model.anno.Id;
 import com.zfoo.storage.model.anno.ResInjection;
 import com.zfoo.storage.model.config.StorageConfig;
 import com.zfoo.storage.model.resource.ResourceEnum;
 import com.zfoo.storage.model.vo.ResourceDef;
 import com.zfoo.storage.model.vo.Storage;
+import com.zfoo.storage.util.SnapshotUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
@@ -35,6 +40,7 @@ import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ResourceUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -42,6 +48,12 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +62,8 @@ import java.util.stream.Collectors;
  */
 public class StorageManager implements IStorageManager {
 
+    private static final Logger logger = LoggerFactory.getLogger(StorageManager.class);
+
     // ANT通配符有三种, ? :匹配任何单字符; * :匹配0或者任意数量的字符; ** :匹配0或者更多的目录
     // 1. /project/*.a	匹配项目根路径下所有在project路径下的.a文件
     // 2. /project/p?ttern	匹配项目根路径下 /project/pattern 和 /app/pXttern,但是不包括/app/pttern
@@ -64,7 +78,19 @@ public class StorageManager implements IStorageManager {
     /**
      * 在当前项目被依赖注入，被使用的Storage
      */
-    private final Map<Class<?>, Storage<?, ?>> storageMap = new HashMap<>();
+    private final Map<Class<?>, Storage<?, ?>> storageMap = new ConcurrentHashMap<>();
+
+    /**
+     * 配置表的定义，热更新的时候重新读取
+     */
+    private final Map<Class<?>, ResourceDef> resourceDefMap = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, List<IStorageListener<?, ?>>> listenerMap = new ConcurrentHashMap<>();
+
+    /**
+     * 同一个配置表的更新串行执行，diff，swap和通知监听器的顺序和更新的顺序一致，不同的配置表可以并行更新
+     */
+    private final Map<Class<?>, Object> updateLockMap = new ConcurrentHashMap<>();
 
     public StorageConfig getStorageConfig() {
         return storageConfig;
@@ -126,17 +152,100 @@ public class StorageManager implements IStorageManager {
             }
         }
 
+        resourceDefMap.putAll(resourceDefinitionMap);
+        loadStorages(resourceDefinitionMap.values());
+    }
+
+    /**
+     * 配置表之间没有依赖关系，使用有界的线程池并行读取，全部读取成功之后再一次性放入storageMap，任何一个失败则启动失败
+     */
+    private void loadStorages(Collection<ResourceDef> resourceDefs) {
+        if (CollectionUtils.isEmpty(resourceDefs)) {
+            return;
+        }
+
+        var startTime = System.currentTimeMillis();
+        var threadSize = Math.min(resourceDefs.size(), Runtime.getRuntime().availableProcessors());
+        var threadNumber = new AtomicInteger(0);
+        var executor = Executors.newFixedThreadPool(threadSize, runnable -> {
+            var thread = new Thread(runnable, "storage-loader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
         try {
-            for (var definition : resourceDefinitionMap.values()) {
-                var clazz = definition.getClazz();
-                var resource = definition.getResource();
-                var fileExtName = FileUtils.fileExtName(resource.getFilename());
-                Storage<?, ?> storage = new Storage<>();
-                storage.init(resource.getInputStream(), definition.getClazz(), fileExtName);
-                storageMap.putIfAbsent(clazz, storage);
+            var futureMap = new LinkedHashMap<ResourceDef, Future<Storage<?, ?>>>();
+            for (var definition : resourceDefs) {
+                futureMap.put(definition, executor.submit(() -> loadStorage(definition)));
             }
-        } catch (Exception e) {
+
+            var loadedStorageMap = new HashMap<Class<?>, Storage<?, ?>>();
+            for (var entry : futureMap.entrySet()) {
+                var definition = entry.getKey();
+                try {
+                    loadedStorageMap.put(definition.getClazz(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    // 读取资源文件失败
+                    throw new RunException("Failed to load resource [class:{}] from [file:{}]", definition.getClazz().getSimpleName(), definition.getResource().getFilename(), e.getCause());
+                }
+            }
+
+            loadedStorageMap.forEach((clazz, storage) -> storageMap.putIfAbsent(clazz, storage));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logger.info("Storage loaded [{}] resources with [{}] threads in [{}ms]", resourceDefs.size(), threadSize, System.currentTimeMillis() - startTime);
+    }
+
+    private Storage<?, ?> loadStorage(ResourceDef definition) throws IOException {
+        var startTime = System.currentTimeMillis();
+        var clazz = definition.getClazz();
+        var resource = definition.getResource();
+        var fileExtName = FileUtils.fileExtName(resource.getFilename());
+        Storage<?, ?> storage = new Storage<>();
+
+        if (StringUtils.isBlank(storageConfig.getSnapshotLocation())) {
+            storage.init(resource.getInputStream(), clazz, fileExtName);
+            compactStorage(storage);
+            logger.info("Storage [resource:{}] [file:{}] [size:{}] loaded in [{}ms]", clazz.getSimpleName(), resource.getFilename(), storage.size(), System.currentTimeMillis() - startTime);
+            return storage;
+        }
+
+        // 源文件的内容没有改变则直接读取快照，否则重新解析源文件并且更新快照
+        byte[] bytes;
+        var inputStream = resource.getInputStream();
+        try {
+            bytes = IOUtils.toByteArray(inputStream);
+        } finally {
+            IOUtils.closeIO(inputStream);
+        }
+        var hash = SnapshotUtils.hash(bytes);
+        var snapshotFile = SnapshotUtils.snapshotFile(storageConfig.getSnapshotLocation(), FileUtils.fileSimpleName(resource.getFilename()));
+        var resourceData = SnapshotUtils.read(snapshotFile, hash);
+        var fromSnapshot = resourceData != null;
+        if (!fromSnapshot) {
+            resourceData = ResourceInterpreter.readResourceData(new ByteArrayInputStream(bytes), clazz.getSimpleName(), fileExtName);
+            try {
+                SnapshotUtils.write(snapshotFile, hash, resourceData);
+            } catch (IOException e) {
+                // 快照只是为了加快启动速度，写入失败不影响启动
+                logger.warn("Storage [resource:{}] failed to write snapshot [file:{}]", clazz.getSimpleName(), snapshotFile, e);
+            }
+        }
+        storage.init(resourceData, clazz);
+        compactStorage(storage);
+        logger.info("Storage [resource:{}] [file:{}] [size:{}] [snapshot:{}] loaded in [{}ms]", clazz.getSimpleName(), resource.getFilename(), storage.size(), fromSnapshot, System.currentTimeMillis() - startTime);
+        return storage;
+    }
+
+    // 压缩在Storage发布之前完成，读取的线程不会看到压缩了一半的数据
+    private void compactStorage(Storage<?, ?> storage) {
+        if (storageConfig.isCompact()) {
+            storage.compact();
         }
     }
 
@@ -210,9 +319,68 @@ public class StorageManager implements IStorageManager {
         return storageMap;
     }
 
+    /**
+     * 新的Storage会在调用线程完整的构建好，包括所有的索引，然后原子的替换到已经存在的Storage中。
+     * 已经通过ResInjection注入的Storage对象不会改变，读取的线程不会看到加载了一半的数据。
+     * 同一个配置表的并发更新按照获取到锁的顺序依次执行。
+     */
     @Override
     public void updateStorage(Class<?> clazz, Storage<?, ?> storage) {
-        storageMap.put(clazz, storage);
+        synchronized (updateLock(clazz)) {
+            doUpdateStorage(clazz, storage);
+        }
+    }
+
+    private void doUpdateStorage(Class<?> clazz, Storage<?, ?> storage) {
+        var oldStorage = (Storage<Object, Object>) storageMap.get(clazz);
+        if (oldStorage == null || oldStorage.isRecycle()) {
+            storageMap.put(clazz, storage);
+            return;
+        }
+
+        var newStorage = (Storage<Object, Object>) storage;
+        var change = oldStorage.diff(newStorage);
+        oldStorage.swap(newStorage);
+        logger.info("Storage [resource:{}] swapped [{}]", clazz.getSimpleName(), change);
+
+        var listeners = listenerMap.get(clazz);
+        if (CollectionUtils.isEmpty(listeners)) {
+            return;
+        }
+        for (var listener : listeners) {
+            try {
+                ((IStorageListener<Object, Object>) listener).onChange(change);
+            } catch (Throwable t) {
+                logger.error("Storage [resource:{}] listener [{}] unknown exception", clazz.getSimpleName(), listener.getClass().getName(), t);
+            }
+        }
+    }
+
+    @Override
+    public void reloadStorage(Class<?> clazz) {
+        var definition = resourceDefMap.get(clazz);
+        if (definition == null) {
+            throw new RunException("There is no [{}] defined Storage and unable to reload it", clazz.getCanonicalName());
+        }
+        // 读取文件也在锁中，避免先读取的旧文件覆盖后读取的新文件
+        synchronized (updateLock(clazz)) {
+            Storage<?, ?> storage;
+            try {
+                storage = loadStorage(definition);
+            } catch (IOException e) {
+                throw new RunException("Failed to reload resource [class:{}] from [file:{}]", clazz.getSimpleName(), definition.getResource(), e);
+            }
+            doUpdateStorage(clazz, storage);
+        }
+    }
+
+    private Object updateLock(Class<?> clazz) {
+        return updateLockMap.computeIfAbsent(clazz, it -> new Object());
+    }
+
+    @Override
+    public <K, V> void addStorageListener(Class<V> clazz, IStorageListener<K, V> listener) {
+        listenerMap.computeIfAbsent(clazz, it -> new CopyOnWriteArrayList<>()).add(listener);
     }
 
     @Override
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.model.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * 范围索引，索引的名称使用字段属性的名称，只能用在数值类型的属性上，加载的时候按照属性的值排好序，用二分查找实现floor，ceiling，range查询
+ *
+ * @author godotg
+ * @version 4.0
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface RangeIndex {
+
+}
@@ -25,12 +25,18 @@ public class StorageConfig {
 
     private String resourceLocation;
 
+    // 配置表二进制快照的目录，为空则不使用快照
+    private String snapshotLocation;
+
     // 类的属性是否可写，如果为false则类的属性必须为private并且不能有set方法
     private boolean writeable;
 
     // 未被使用的Storage是否回收，默认开启节省资源
     private boolean recycle;
 
+    // 加载之后是否压缩配置表，相等的值只保留一个实例，只能用在只读的配置表上
+    private boolean compact;
+
     public String getId() {
         return id;
     }
@@ -55,6 +61,14 @@ public class StorageConfig {
         this.resourceLocation = resourceLocation;
     }
 
+    public String getSnapshotLocation() {
+        return snapshotLocation;
+    }
+
+    public void setSnapshotLocation(String snapshotLocation) {
+        this.snapshotLocation = snapshotLocation;
+    }
+
     public boolean isWriteable() {
         return writeable;
     }
@@ -70,4 +84,12 @@ public class StorageConfig {
     public void setRecycle(boolean recycle) {
         this.recycle = recycle;
     }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.model.vo;
+
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.ReflectionUtils;
+import com.zfoo.storage.model.anno.RangeIndex;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 范围索引的定义，使用字段的名称作为索引的名称
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public class RangeIndexDef {
+
+    private static final Set<Class<?>> INTEGRAL_TYPES = Set.of(byte.class, Byte.class, short.class, Short.class, int.class, Integer.class, long.class, Long.class);
+    private static final Set<Class<?>> FLOATING_TYPES = Set.of(float.class, Float.class, double.class, Double.class);
+
+    private Field field;
+    // 是否是浮点数，浮点数使用double保存，整数使用long保存
+    private boolean floating;
+
+    public RangeIndexDef(Field field) {
+        var type = field.getType();
+        if (!INTEGRAL_TYPES.contains(type) && !FLOATING_TYPES.contains(type)) {
+            throw new RunException("RangeIndex can only be used on numeric field, [class:{}][field:{}][type:{}] is not supported", field.getDeclaringClass().getName(), field.getName(), type.getSimpleName());
+        }
+        ReflectionUtils.makeAccessible(field);
+        this.field = field;
+        this.floating = FLOATING_TYPES.contains(type);
+    }
+
+    public static Map<String, RangeIndexDef> createResourceRangeIndexes(Class<?> clazz) {
+        var fields = ReflectionUtils.getFieldsByAnnoInPOJOClass(clazz, RangeIndex.class);
+        var result = new HashMap<String, RangeIndexDef>();
+        for (var field : fields) {
+            result.put(field.getName(), new RangeIndexDef(field));
+        }
+        return result;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public boolean isFloating() {
+        return floating;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.model.vo;
+
+import org.springframework.lang.Nullable;
+
+import java.util.*;
+
+/**
+ * 范围索引的实现，values按照key从小到大排序，key相同的保持加载时的顺序，所有的查询都是二分查找
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public class SortedIndex<V> {
+
+    private final Object[] values;
+    // 整数类型的属性使用longKeys，浮点类型的属性使用doubleKeys，只有一个不为null
+    private final long[] longKeys;
+    private final double[] doubleKeys;
+
+    private SortedIndex(Object[] values, long[] longKeys, double[] doubleKeys) {
+        this.values = values;
+        this.longKeys = longKeys;
+        this.doubleKeys = doubleKeys;
+    }
+
+    public static <V> SortedIndex<V> valueOf(List<V> list, List<Number> keys, boolean floating) {
+        var size = list.size();
+        var order = new Integer[size];
+        for (var i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        var values = new Object[size];
+        if (floating) {
+            // 稳定排序，key相同的保持原来的顺序
+            Arrays.sort(order, Comparator.comparingDouble(it -> keys.get(it).doubleValue()));
+            var doubleKeys = new double[size];
+            for (var i = 0; i < size; i++) {
+                values[i] = list.get(order[i]);
+                doubleKeys[i] = keys.get(order[i]).doubleValue();
+            }
+            return new SortedIndex<>(values, null, doubleKeys);
+        }
+
+        Arrays.sort(order, Comparator.comparingLong(it -> keys.get(it).longValue()));
+        var longKeys = new long[size];
+        for (var i = 0; i < size; i++) {
+            values[i] = list.get(order[i]);
+            longKeys[i] = keys.get(order[i]).longValue();
+        }
+        return new SortedIndex<>(values, longKeys, null);
+    }
+
+    /**
+     * 小于等于key的最大的值，有多个相同的key时返回最后一个
+     */
+    @Nullable
+    public V floor(long key) {
+        var index = upperBound(key) - 1;
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @Nullable
+    public V floor(double key) {
+        var index = upperBound(key) - 1;
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * 大于等于key的最小的值，有多个相同的key时返回第一个
+     */
+    @Nullable
+    public V ceiling(long key) {
+        var index = lowerBound(key);
+        return index >= values.length ? null : (V) values[index];
+    }
+
+    @Nullable
+    public V ceiling(double key) {
+        var index = lowerBound(key);
+        return index >= values.length ? null : (V) values[index];
+    }
+
+    /**
+     * key在[from, to]之间的所有值，按照key从小到大排序
+     */
+    public List<V> range(long from, long to) {
+        return subList(lowerBound(from), upperBound(to));
+    }
+
+    public List<V> range(double from, double to) {
+        return subList(lowerBound(from), upperBound(to));
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    private List<V> subList(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return Collections.emptyList();
+        }
+        return (List<V>) Collections.unmodifiableList(Arrays.asList(values).subList(fromIndex, toIndex));
+    }
+
+    // 第一个大于等于key的位置
+    private int lowerBound(long key) {
+        if (longKeys == null) {
+            return lowerBound((double) key);
+        }
+        var low = 0;
+        var high = longKeys.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (longKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 第一个大于key的位置
+    private int upperBound(long key) {
+        if (longKeys == null) {
+            return upperBound((double) key);
+        }
+        var low = 0;
+        var high = longKeys.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (longKeys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(double key) {
+        var low = 0;
+        var high = values.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (keyAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(double key) {
+        var low = 0;
+        var high = values.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (keyAt(mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private double keyAt(int index) {
+        return doubleKeys == null ? longKeys[index] : doubleKeys[index];
+    }
+
+}
@@ -14,65 +14,202 @@
 package com.zfoo.storage.model.vo;
 
 import com.zfoo.protocol.collection.CollectionUtils;
+import com.zfoo.protocol.exception.AssertException;
 import com.zfoo.protocol.util.AssertionUtils;
 import com.zfoo.protocol.util.IOUtils;
 import com.zfoo.protocol.util.ReflectionUtils;
 import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.storage.interpreter.ResourceInjector;
 import com.zfoo.storage.interpreter.ResourceInterpreter;
+import com.zfoo.storage.model.resource.ResourceData;
+import com.zfoo.storage.util.CompactUtils;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.LongObjectHashMap;
 import org.springframework.lang.Nullable;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
 import java.util.*;
 
 /**
+ * 配置表的数据保存在一个不可变的StorageData中，重新加载的时候先在别的线程构建好完整的StorageData再通过一次volatile写替换，
+ * 读取的线程要么看到旧的数据要么看到新的数据，不会看到加载了一半的数据
+ *
  * @author godotg
  * @version 4.0
  */
 public class Storage<K, V> {
 
+    // 稠密的id的范围不超过数量的DENSE_FACTOR倍时使用数组保存
+    private static final int DENSE_FACTOR = 2;
+
     private Class<V> clazz;
 
     // 当前配置表是否在当前项目中使用，没有被使用的会清楚data数据，以达到节省内存的目的
     private boolean recycle = true;
 
-    private Map<K, V> dataMap = new HashMap<>();
-    // 非唯一索引
-    private Map<String, Map<Object, List<V>>> indexMap = new HashMap<>();
-    // 唯一索引
-    private Map<String, Map<Object, V>> uniqueIndexMap = new HashMap<>();
+    private volatile StorageData<K, V> data = new StorageData<>();
 
     private IdDef idDef;
     private Map<String, IndexDef> indexDefMap;
 
+    // 读取id和索引的属性，fieldIndex为属性在injector中的位置
+    private ResourceInjector injector;
+    private int idFieldIndex;
+    private IndexDef[] indexDefs;
+    private int[] indexFieldIndexes;
+    private RangeIndexDef[] rangeIndexDefs;
+    private int[] rangeIndexFieldIndexes;
+
+    private static class StorageData<K, V> {
+        private Map<K, V> dataMap = new HashMap<>();
+        // id为int或者long的时候dataMap就是对应的基本类型的map，get(int)和get(long)不需要装箱
+        private IntObjectHashMap<V> intDataMap;
+        private LongObjectHashMap<V> longDataMap;
+        // id为int并且比较连续的时候直接用数组下标查找，denseValues[id - denseOffset]
+        private Object[] denseValues;
+        private int denseOffset;
+        // 非唯一索引
+        private final Map<String, Map<Object, List<V>>> indexMap = new HashMap<>();
+        // 唯一索引
+        private final Map<String, Map<Object, V>> uniqueIndexMap = new HashMap<>();
+        // 范围索引
+        private final Map<String, SortedIndex<V>> rangeIndexMap = new HashMap<>();
+    }
+
     public void init(InputStream inputStream, Class<?> resourceClazz, String suffix) {
+        try {
+            init(ResourceInterpreter.readResourceData(inputStream, resourceClazz.getSimpleName(), suffix), resourceClazz);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeIO(inputStream);
+        }
+    }
+
+    public void init(ResourceData resourceData, Class<?> resourceClazz) {
         try {
             this.clazz = (Class<V>) resourceClazz;
             idDef = IdDef.valueOf(resourceClazz);
             indexDefMap = IndexDef.createResourceIndexes(resourceClazz);
+            injector = ResourceInterpreter.resourceInjector(resourceClazz);
+            idFieldIndex = injector.fieldIndex(idDef.getField());
+            indexDefs = indexDefMap.values().toArray(new IndexDef[0]);
+            indexFieldIndexes = Arrays.stream(indexDefs).mapToInt(it -> injector.fieldIndex(it.getField())).toArray();
+            rangeIndexDefs = RangeIndexDef.createResourceRangeIndexes(resourceClazz).values().toArray(new RangeIndexDef[0]);
+            rangeIndexFieldIndexes = Arrays.stream(rangeIndexDefs).mapToInt(it -> injector.fieldIndex(it.getField())).toArray();
 
-            var list = ResourceInterpreter.read(inputStream, resourceClazz, suffix);
-
-            dataMap.clear();
-            indexMap.clear();
-            uniqueIndexMap.clear();
+            var list = ResourceInterpreter.read(resourceData, resourceClazz);
 
+            var newData = createData(list.size());
             for (var object : list) {
-                put((V) object);
+                put(newData, (V) object);
             }
+            initDenseValues(newData);
+            initRangeIndexes(newData, (List<V>) list);
+
+            // 构建完成之后再发布
+            data = newData;
         } catch (Throwable e) {
             throw new RuntimeException(e.getMessage(), e);
-        } finally {
-            IOUtils.closeIO(inputStream);
         }
     }
 
+    /**
+     * 原子的替换成另外一个同类型的Storage的数据，已经注入了当前Storage的地方会立刻看到新的数据
+     */
+    public void swap(Storage<K, V> storage) {
+        AssertionUtils.isTrue(clazz == storage.clazz, "Storage [resource:{}] can not swap with [resource:{}]", clazz.getSimpleName(), storage.clazz.getSimpleName());
+        data = storage.data;
+    }
+
+    /**
+     * 比较当前的数据和另外一个Storage的数据，属性逐个比较，没有实现equals的对象属性总是被认为改变了
+     */
+    public StorageChange<K, V> diff(Storage<K, V> newStorage) {
+        var oldDataMap = data.dataMap;
+        var newDataMap = newStorage.data.dataMap;
+
+        var addedIds = new HashSet<K>();
+        var changedIds = new HashSet<K>();
+        var removedIds = new HashSet<K>();
+        for (var entry : newDataMap.entrySet()) {
+            var oldValue = oldDataMap.get(entry.getKey());
+            if (oldValue == null) {
+                addedIds.add(entry.getKey());
+            } else if (!sameResource(oldValue, entry.getValue())) {
+                changedIds.add(entry.getKey());
+            }
+        }
+        for (var key : oldDataMap.keySet()) {
+            if (!newDataMap.containsKey(key)) {
+                removedIds.add(key);
+            }
+        }
+        return StorageChange.valueOf(clazz, copy(), newStorage, addedIds, changedIds, removedIds);
+    }
+
+    // 当前数据的一个只读副本，替换之后依然持有旧的数据
+    private Storage<K, V> copy() {
+        var storage = new Storage<K, V>();
+        storage.clazz = clazz;
+        storage.recycle = recycle;
+        storage.data = data;
+        storage.idDef = idDef;
+        storage.indexDefMap = indexDefMap;
+        storage.injector = injector;
+        storage.idFieldIndex = idFieldIndex;
+        storage.indexDefs = indexDefs;
+        storage.indexFieldIndexes = indexFieldIndexes;
+        storage.rangeIndexDefs = rangeIndexDefs;
+        storage.rangeIndexFieldIndexes = rangeIndexFieldIndexes;
+        return storage;
+    }
+
+    private boolean sameResource(V oldValue, V newValue) {
+        var fields = injector.getFields();
+        for (var i = 0; i < fields.length; i++) {
+            if (!Objects.deepEquals(injector.read(oldValue, i), injector.read(newValue, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 压缩配置表占用的内存，相等的值只保留一个实例，索引的List替换成大小刚好的不可变List，只能在Storage发布之前调用
+     */
+    public void compact() {
+        var oldData = data;
+        CompactUtils.compact(oldData.dataMap.values());
+
+        var newData = new StorageData<K, V>();
+        newData.dataMap = oldData.dataMap;
+        newData.intDataMap = oldData.intDataMap;
+        newData.longDataMap = oldData.longDataMap;
+        newData.denseValues = oldData.denseValues;
+        newData.denseOffset = oldData.denseOffset;
+        for (var entry : oldData.indexMap.entrySet()) {
+            var index = new HashMap<Object, List<V>>(CollectionUtils.comfortableCapacity(entry.getValue().size()));
+            entry.getValue().forEach((key, values) -> index.put(key, List.copyOf(values)));
+            newData.indexMap.put(entry.getKey(), index);
+        }
+        newData.uniqueIndexMap.putAll(oldData.uniqueIndexMap);
+        newData.rangeIndexMap.putAll(oldData.rangeIndexMap);
+        data = newData;
+    }
+
     public void recycleStorage() {
         recycle = true;
-        dataMap = null;
-        indexMap = null;
-        uniqueIndexMap = null;
+        data = null;
         idDef = null;
         indexDefMap = null;
+        injector = null;
+        indexDefs = null;
+        indexFieldIndexes = null;
+        rangeIndexDefs = null;
+        rangeIndexFieldIndexes = null;
     }
 
     public boolean isRecycle() {
@@ -83,12 +220,16 @@ public class Storage<K, V> {
         this.recycle = recycle;
     }
 
+    public Class<V> getClazz() {
+        return clazz;
+    }
+
     public Collection<V> getAll() {
-        return Collections.unmodifiableCollection(dataMap.values());
+        return Collections.unmodifiableCollection(data.dataMap.values());
     }
 
     public Map<K, V> getData() {
-        return Collections.unmodifiableMap(dataMap);
+        return Collections.unmodifiableMap(data.dataMap);
     }
 
     public IdDef getIdDef() {
@@ -96,17 +237,74 @@ public class Storage<K, V> {
     }
 
     public boolean contain(K key) {
-        return dataMap.containsKey(key);
+        return data.dataMap.containsKey(key);
+    }
+
+    public boolean contain(int key) {
+        return find(data, key) != null;
+    }
+
+    public boolean contain(long key) {
+        return find(data, key) != null;
     }
 
     public V get(K id) {
-        V result = dataMap.get(id);
+        V result = data.dataMap.get(id);
         AssertionUtils.notNull(result, "The static resource represented as [id:{}] in the static resource [resource:{}] does not exist", id, clazz.getSimpleName());
         return result;
     }
 
+    /**
+     * id为int的配置表使用这个方法不需要装箱
+     */
+    public V get(int id) {
+        var result = find(data, id);
+        if (result == null) {
+            throw new AssertException("The static resource represented as [id:{}] in the static resource [resource:{}] does not exist", id, clazz.getSimpleName());
+        }
+        return result;
+    }
+
+    /**
+     * id为long的配置表使用这个方法不需要装箱
+     */
+    public V get(long id) {
+        var result = find(data, id);
+        if (result == null) {
+            throw new AssertException("The static resource represented as [id:{}] in the static resource [resource:{}] does not exist", id, clazz.getSimpleName());
+        }
+        return result;
+    }
+
+    @Nullable
+    private V find(StorageData<K, V> data, int id) {
+        var denseValues = data.denseValues;
+        if (denseValues != null) {
+            var index = id - data.denseOffset;
+            return index >= 0 && index < denseValues.length ? (V) denseValues[index] : null;
+        }
+        if (data.intDataMap != null) {
+            return data.intDataMap.get(id);
+        }
+        if (data.longDataMap != null) {
+            return data.longDataMap.get(id);
+        }
+        return data.dataMap.get(id);
+    }
+
+    @Nullable
+    private V find(StorageData<K, V> data, long id) {
+        if (data.longDataMap != null) {
+            return data.longDataMap.get(id);
+        }
+        if (data.intDataMap != null) {
+            return (int) id == id ? find(data, (int) id) : null;
+        }
+        return data.dataMap.get(id);
+    }
+
     public List<V> getIndex(String indexName, Object key) {
-        var indexValues = indexMap.get(indexName);
+        var indexValues = data.indexMap.get(indexName);
         AssertionUtils.notNull(indexValues, "The index of [indexName:{}] does not exist in the static resource [resource:{}]", indexName, clazz.getSimpleName());
         var values = indexValues.get(key);
         if (CollectionUtils.isEmpty(values)) {
@@ -117,20 +315,117 @@ public class Storage<K, V> {
 
     @Nullable
     public V getUniqueIndex(String uniqueIndexName, Object key) {
-        var indexValueMap = uniqueIndexMap.get(uniqueIndexName);
+        var indexValueMap = data.uniqueIndexMap.get(uniqueIndexName);
         AssertionUtils.notNull(indexValueMap, "There is no a unique index for [uniqueIndexName:{}] in the static resource [resource:{}]", uniqueIndexName, clazz.getSimpleName());
         var value = indexValueMap.get(key);
         return value;
     }
 
+    /**
+     * 范围索引中小于等于key的最大的值
+     */
+    @Nullable
+    public V getFloor(String rangeIndexName, long key) {
+        return rangeIndex(rangeIndexName).floor(key);
+    }
+
+    @Nullable
+    public V getFloor(String rangeIndexName, double key) {
+        return rangeIndex(rangeIndexName).floor(key);
+    }
+
+    /**
+     * 范围索引中大于等于key的最小的值
+     */
+    @Nullable
+    public V getCeiling(String rangeIndexName, long key) {
+        return rangeIndex(rangeIndexName).ceiling(key);
+    }
+
+    @Nullable
+    public V getCeiling(String rangeIndexName, double key) {
+        return rangeIndex(rangeIndexName).ceiling(key);
+    }
+
+    /**
+     * 范围索引中在[from, to]之间的所有值，按照索引的值从小到大排序
+     */
+    public List<V> getRange(String rangeIndexName, long from, long to) {
+        return rangeIndex(rangeIndexName).range(from, to);
+    }
+
+    public List<V> getRange(String rangeIndexName, double from, double to) {
+        return rangeIndex(rangeIndexName).range(from, to);
+    }
+
+    private SortedIndex<V> rangeIndex(String rangeIndexName) {
+        var sortedIndex = data.rangeIndexMap.get(rangeIndexName);
+        AssertionUtils.notNull(sortedIndex, "There is no a range index for [rangeIndexName:{}] in the static resource [resource:{}]", rangeIndexName, clazz.getSimpleName());
+        return sortedIndex;
+    }
+
+
+    private StorageData<K, V> createData(int size) {
+        var newData = new StorageData<K, V>();
+        var idType = idDef.getField().getType();
+        if (idType == int.class || idType == Integer.class) {
+            newData.intDataMap = new IntObjectHashMap<>(Math.max(size, IntObjectHashMap.DEFAULT_CAPACITY));
+            newData.dataMap = (Map<K, V>) newData.intDataMap;
+        } else if (idType == long.class || idType == Long.class) {
+            newData.longDataMap = new LongObjectHashMap<>(Math.max(size, LongObjectHashMap.DEFAULT_CAPACITY));
+            newData.dataMap = (Map<K, V>) newData.longDataMap;
+        }
+        return newData;
+    }
+
+    private void initDenseValues(StorageData<K, V> newData) {
+        var intDataMap = newData.intDataMap;
+        if (intDataMap == null || intDataMap.isEmpty()) {
+            return;
+        }
+
+        var min = Integer.MAX_VALUE;
+        var max = Integer.MIN_VALUE;
+        for (var entry : intDataMap.entries()) {
+            min = Math.min(min, entry.key());
+            max = Math.max(max, entry.key());
+        }
+        var range = (long) max - min + 1;
+        if (range > (long) intDataMap.size() * DENSE_FACTOR) {
+            return;
+        }
+
+        var values = new Object[(int) range];
+        for (var entry : intDataMap.entries()) {
+            values[entry.key() - min] = entry.value();
+        }
+        newData.denseOffset = min;
+        newData.denseValues = values;
+    }
+
+    private void initRangeIndexes(StorageData<K, V> newData, List<V> list) {
+        for (var i = 0; i < rangeIndexDefs.length; i++) {
+            var def = rangeIndexDefs[i];
+            var keys = new ArrayList<Number>(list.size());
+            for (var value : list) {
+                var key = (Number) readField(value, def.getField(), rangeIndexFieldIndexes[i]);
+                if (key == null) {
+                    throw new RuntimeException(StringUtils.format("Range index [index:{}] of static resource [resource:{}] can not be null", def.getField().getName(), clazz.getSimpleName()));
+                }
+                keys.add(key);
+            }
+            newData.rangeIndexMap.put(def.getField().getName(), SortedIndex.valueOf(list, keys, def.isFloating()));
+        }
+    }
 
-    private V put(V value) {
-        var key = (K) ReflectionUtils.getField(idDef.getField(), value);
+    private V put(StorageData<K, V> newData, V value) {
+        var key = (K) readField(value, idDef.getField(), idFieldIndex);
 
         if (key == null) {
             throw new RuntimeException("There is an item with an unconfigured id in the static resource");
         }
 
+        var dataMap = newData.dataMap;
         if (dataMap.containsKey(key)) {
             throw new RuntimeException(StringUtils.format("Duplicate [id:{}] of static resource [resource:{}]", key, clazz.getSimpleName()));
         }
@@ -139,17 +434,18 @@ public class Storage<K, V> {
         var result = dataMap.put(key, value);
 
         // 添加索引
-        for (var def : indexDefMap.values()) {
+        for (var i = 0; i < indexDefs.length; i++) {
+            var def = indexDefs[i];
             // 使用field的名称作为索引的名称
             var indexKey = def.getField().getName();
-            var indexValue = ReflectionUtils.getField(def.getField(), value);
+            var indexValue = readField(value, def.getField(), indexFieldIndexes[i]);
             if (def.isUnique()) {// 唯一索引
-                var index = uniqueIndexMap.computeIfAbsent(indexKey, k -> new HashMap<>());
+                var index = newData.uniqueIndexMap.computeIfAbsent(indexKey, k -> new HashMap<>());
                 if (index.put(indexValue, value) != null) {
                     throw new RuntimeException(StringUtils.format("Duplicate unique index [index:{}][value:{}] of static resource [class:{}]", indexKey, indexValue, clazz.getName()));
                 }
             } else {// 不是唯一索引
-                var index = indexMap.computeIfAbsent(indexKey, k -> new HashMap<>());
+                var index = newData.indexMap.computeIfAbsent(indexKey, k -> new HashMap<>());
                 var list = index.computeIfAbsent(indexValue, k -> new ArrayList<V>());
                 list.add(value);
             }
@@ -157,8 +453,12 @@ public class Storage<K, V> {
         return result;
     }
 
+    private Object readField(V value, Field field, int fieldIndex) {
+        return fieldIndex < 0 ? ReflectionUtils.getField(field, value) : injector.read(value, fieldIndex);
+    }
+
     public int size() {
-        return dataMap.size();
+        return data.dataMap.size();
     }
 
 }
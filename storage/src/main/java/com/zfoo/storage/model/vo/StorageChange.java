@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.model.vo;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 配置表重新加载前后的差异，changedIds是属性逐个比较后有变化的id
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public class StorageChange<K, V> {
+
+    private Class<V> clazz;
+
+    private Storage<K, V> oldStorage;
+    private Storage<K, V> newStorage;
+
+    private Set<K> addedIds;
+    private Set<K> changedIds;
+    private Set<K> removedIds;
+
+    public static <K, V> StorageChange<K, V> valueOf(Class<V> clazz, Storage<K, V> oldStorage, Storage<K, V> newStorage, Set<K> addedIds, Set<K> changedIds, Set<K> removedIds) {
+        var change = new StorageChange<K, V>();
+        change.clazz = clazz;
+        change.oldStorage = oldStorage;
+        change.newStorage = newStorage;
+        change.addedIds = Collections.unmodifiableSet(addedIds);
+        change.changedIds = Collections.unmodifiableSet(changedIds);
+        change.removedIds = Collections.unmodifiableSet(removedIds);
+        return change;
+    }
+
+    public boolean isEmpty() {
+        return addedIds.isEmpty() && changedIds.isEmpty() && removedIds.isEmpty();
+    }
+
+    public Class<V> getClazz() {
+        return clazz;
+    }
+
+    /**
+     * 替换之前的数据，被删除和改变的配置可以从这里读取旧的值
+     */
+    public Storage<K, V> getOldStorage() {
+        return oldStorage;
+    }
+
+    public Storage<K, V> getNewStorage() {
+        return newStorage;
+    }
+
+    public Set<K> getAddedIds() {
+        return addedIds;
+    }
+
+    public Set<K> getChangedIds() {
+        return changedIds;
+    }
+
+    public Set<K> getRemovedIds() {
+        return removedIds;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageChange{" + "clazz=" + clazz.getSimpleName() + ", added=" + addedIds.size() + ", changed=" + changedIds.size() + ", removed=" + removedIds.size() + '}';
+    }
+}
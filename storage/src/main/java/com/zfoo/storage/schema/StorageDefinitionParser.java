@@ -69,7 +69,9 @@ public class StorageDefinitionParser implements BeanDefinitionParser {
         resolvePlaceholder("package", "scanPackage", builder, scanElement, parserContext);
         resolvePlaceholder("writeable", "writeable", builder, scanElement, parserContext);
         resolvePlaceholder("recycle", "recycle", builder, scanElement, parserContext);
+        resolvePlaceholder("compact", "compact", builder, scanElement, parserContext);
         resolvePlaceholder("location", "resourceLocation", builder, resourceElement, parserContext);
+        resolvePlaceholder("snapshot", "snapshotLocation", builder, resourceElement, parserContext);
 
         parserContext.getRegistry().registerBeanDefinition(clazz.getCanonicalName(), builder.getBeanDefinition());
     }
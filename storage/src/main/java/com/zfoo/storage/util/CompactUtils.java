@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.util;
+
+import com.zfoo.protocol.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * 压缩已经加载的配置表对象，配置表里大量重复的String，List以及嵌套的对象在所有的行之间只保留一份
+ * <p>
+ * 1. String，基础类型的包装类，List，Set，Map以及实现了equals的嵌套对象，相等的值替换成同一个实例；
+ * 嵌套对象的equals可能只比较了部分属性（比如只比较id），所以替换之前还要逐个属性深度比较，全部相等才替换
+ * <p>
+ * 2. List替换成大小刚好的不可变List，属性声明的类型不兼容的时候（比如声明为ArrayList）只压缩元素并且trimToSize
+ * <p>
+ * 压缩之后不同的配置对象会共享同一个实例，所以只能用在只读的配置表上
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public abstract class CompactUtils {
+
+    public static void compact(Collection<?> resources) {
+        var compactor = new Compactor();
+        for (var resource : resources) {
+            compactor.compactFields(resource);
+        }
+    }
+
+    private static class Compactor {
+        // 相等的值只保留第一次出现的实例
+        private final Map<Object, Object> pool = new HashMap<>();
+        // 已经压缩过的对象，防止重复压缩和循环引用
+        private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<Class<?>, List<Field>> fieldMap = new HashMap<>();
+        private final Map<Class<?>, Boolean> equalsMap = new HashMap<>();
+        // 正在深度比较的对象，防止循环引用
+        private final Map<Object, Object> comparing = new IdentityHashMap<>();
+
+        private void compactFields(Object object) {
+            if (object == null || !visited.add(object)) {
+                return;
+            }
+            for (var field : fields(object.getClass())) {
+                var value = ReflectionUtils.getField(field, object);
+                var compactValue = compact(value, field.getType());
+                if (compactValue != value) {
+                    ReflectionUtils.setField(field, object, compactValue);
+                }
+            }
+        }
+
+        private Object compact(Object value, Class<?> type) {
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character) {
+                return intern(value, type);
+            }
+            if (value instanceof Enum) {
+                return value;
+            }
+            if (value instanceof List) {
+                return compactList((List<Object>) value, type);
+            }
+            if (value instanceof Set) {
+                return intern(value, type);
+            }
+            if (value instanceof Map) {
+                var map = (Map<Object, Object>) value;
+                try {
+                    map.replaceAll((k, v) -> compact(v, Object.class));
+                } catch (UnsupportedOperationException e) {
+                    // 不可变的Map只做去重
+                }
+                return intern(map, type);
+            }
+            if (value instanceof Object[]) {
+                var array = (Object[]) value;
+                var componentType = array.getClass().getComponentType();
+                for (var i = 0; i < array.length; i++) {
+                    array[i] = compact(array[i], componentType);
+                }
+                return value;
+            }
+            var clazz = value.getClass();
+            // 基础类型的数组和jdk中的对象不压缩
+            if (clazz.isArray() || clazz.getName().startsWith("java.")) {
+                return value;
+            }
+            compactFields(value);
+            return overrideEquals(clazz) ? intern(value, type) : value;
+        }
+
+        private Object compactList(List<Object> list, Class<?> type) {
+            var array = list.toArray();
+            var hasNull = false;
+            for (var i = 0; i < array.length; i++) {
+                array[i] = compact(array[i], Object.class);
+                hasNull |= array[i] == null;
+            }
+            var frozenList = hasNull ? Collections.unmodifiableList(Arrays.asList(array)) : List.of(array);
+            if (type.isInstance(frozenList)) {
+                return intern(frozenList, type);
+            }
+
+            // 声明的类型不能替换成不可变的List，只压缩元素
+            try {
+                for (var i = 0; i < array.length; i++) {
+                    list.set(i, array[i]);
+                }
+            } catch (UnsupportedOperationException e) {
+                // 不可变的List保持原样
+            }
+            if (list instanceof ArrayList) {
+                ((ArrayList<Object>) list).trimToSize();
+            }
+            return list;
+        }
+
+        private Object intern(Object value) {
+            var canonical = pool.putIfAbsent(value, value);
+            return canonical == null ? value : canonical;
+        }
+
+        // 相等的实例的类型可能和声明的类型不兼容，比如声明为HashSet而相等的实例是TreeSet
+        private Object intern(Object value, Class<?> type) {
+            var canonical = intern(value);
+            return type.isInstance(canonical) && deepEquals(canonical, value) ? canonical : value;
+        }
+
+        /**
+         * 不依赖嵌套对象自己的equals，逐个属性比较；Set和Map按照遍历的顺序比较，顺序不同的时候当作不相等，只是少压缩一些
+         */
+        private boolean deepEquals(Object a, Object b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null || a.getClass() != b.getClass()) {
+                return false;
+            }
+            if (a instanceof String || a instanceof Number || a instanceof Boolean || a instanceof Character || a instanceof Enum) {
+                return a.equals(b);
+            }
+            if (comparing.get(a) == b) {
+                // 循环引用，正在比较中的对象先当作相等
+                return true;
+            }
+            var previous = comparing.put(a, b);
+            try {
+                if (a instanceof Collection) {
+                    return iterableEquals((Collection<?>) a, (Collection<?>) b);
+                }
+                if (a instanceof Map) {
+                    return iterableEquals(((Map<?, ?>) a).entrySet(), ((Map<?, ?>) b).entrySet());
+                }
+                if (a instanceof Map.Entry) {
+                    var entryA = (Map.Entry<?, ?>) a;
+                    var entryB = (Map.Entry<?, ?>) b;
+                    return deepEquals(entryA.getKey(), entryB.getKey()) && deepEquals(entryA.getValue(), entryB.getValue());
+                }
+                if (a instanceof Object[]) {
+                    var arrayA = (Object[]) a;
+                    var arrayB = (Object[]) b;
+                    if (arrayA.length != arrayB.length) {
+                        return false;
+                    }
+                    for (var i = 0; i < arrayA.length; i++) {
+                        if (!deepEquals(arrayA[i], arrayB[i])) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                var clazz = a.getClass();
+                if (clazz.isArray() || clazz.getName().startsWith("java.")) {
+                    return Objects.deepEquals(a, b);
+                }
+                for (var field : fields(clazz)) {
+                    if (!deepEquals(ReflectionUtils.getField(field, a), ReflectionUtils.getField(field, b))) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                if (previous == null) {
+                    comparing.remove(a);
+                } else {
+                    comparing.put(a, previous);
+                }
+            }
+        }
+
+        private boolean iterableEquals(Collection<?> a, Collection<?> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            var iteratorA = a.iterator();
+            var iteratorB = b.iterator();
+            while (iteratorA.hasNext() && iteratorB.hasNext()) {
+                if (!deepEquals(iteratorA.next(), iteratorB.next())) {
+                    return false;
+                }
+            }
+            return !iteratorA.hasNext() && !iteratorB.hasNext();
+        }
+
+        private List<Field> fields(Class<?> clazz) {
+            return fieldMap.computeIfAbsent(clazz, it -> {
+                var fields = new ArrayList<Field>();
+                for (var current = it; current != null && current != Object.class; current = current.getSuperclass()) {
+                    for (var field : ReflectionUtils.notStaticAndTransientFields(current)) {
+                        ReflectionUtils.makeAccessible(field);
+                        fields.add(field);
+                    }
+                }
+                return fields;
+            });
+        }
+
+        private boolean overrideEquals(Class<?> clazz) {
+            return equalsMap.computeIfAbsent(clazz, it -> {
+                try {
+                    return it.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+                } catch (NoSuchMethodException e) {
+                    return false;
+                }
+            });
+        }
+    }
+
+}
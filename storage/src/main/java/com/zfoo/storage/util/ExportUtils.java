@@ -19,9 +19,11 @@ import com.zfoo.protocol.util.ReflectionUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.storage.interpreter.CsvReader;
 import com.zfoo.storage.interpreter.ExcelReader;
+import com.zfoo.storage.interpreter.ResourceInterpreter;
 import com.zfoo.storage.model.resource.ResourceEnum;
 import com.zfoo.storage.model.vo.Storage;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
@@ -79,6 +81,22 @@ public abstract class ExportUtils {
         }
     }
 
+    /**
+     * 把配置表预先编译成二进制快照，输出目录可以直接作为storage的snapshot目录，启动的时候不需要再解析源文件
+     */
+    public static void resource2snapshot(String inputDir, String outputDir) throws IOException {
+        var resourceFiles = FileUtils.getAllReadableFiles(new File(inputDir))
+                .stream()
+                .filter(it -> ResourceEnum.containsResourceEnum(FileUtils.fileExtName(it.getName())))
+                .collect(Collectors.toList());
+        for (var resourceFile : resourceFiles) {
+            var bytes = FileUtils.readFileToByteArray(resourceFile);
+            var resourceSimpleName = FileUtils.fileSimpleName(resourceFile.getName());
+            var resourceData = ResourceInterpreter.readResourceData(new ByteArrayInputStream(bytes), resourceSimpleName, FileUtils.fileExtName(resourceFile.getName()));
+            SnapshotUtils.write(SnapshotUtils.snapshotFile(outputDir, resourceSimpleName), SnapshotUtils.hash(bytes), resourceData);
+        }
+    }
+
     public static List<File> scanExcelFiles(String inputDir) {
         return FileUtils.getAllReadableFiles(new File(inputDir))
                 .stream()
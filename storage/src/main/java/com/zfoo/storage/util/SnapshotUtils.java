@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.zfoo.storage.util;
+
+import com.zfoo.protocol.buffer.ByteBufUtils;
+import com.zfoo.protocol.util.FileUtils;
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.storage.model.resource.ResourceData;
+import com.zfoo.storage.model.resource.ResourceHeader;
+import com.zfoo.util.security.MD5Utils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 配置表的二进制快照，快照里保存的是已经解析好的表头和每一行的内容，读取快照不需要再经过POI或者CSV解析
+ * <p>
+ * 快照使用源文件内容的MD5作为key，源文件改变之后快照自动失效，启动的时候会重新解析源文件并且生成新的快照
+ * <p>
+ * 格式：[magic][version][hash][name][headers][rows]，int和string都使用协议的ByteBufUtils读写（变长int），客户端也可以按照相同的格式读取
+ *
+ * @author godotg
+ * @version 4.0
+ */
+public abstract class SnapshotUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotUtils.class);
+
+    public static final String SNAPSHOT_SUFFIX = "snapshot";
+
+    private static final int MAGIC = 0x7A666F6F;
+
+    private static final int VERSION = 1;
+
+    public static String hash(byte[] bytes) {
+        return MD5Utils.bytesToMD5(bytes);
+    }
+
+    public static File snapshotFile(String snapshotLocation, String resourceName) {
+        return new File(FileUtils.joinPath(snapshotLocation, StringUtils.format("{}.{}", resourceName, SNAPSHOT_SUFFIX)));
+    }
+
+    public static byte[] write(String hash, ResourceData resourceData) {
+        var buffer = Unpooled.buffer();
+        try {
+            ByteBufUtils.writeInt(buffer, MAGIC);
+            ByteBufUtils.writeInt(buffer, VERSION);
+            ByteBufUtils.writeString(buffer, hash);
+            ByteBufUtils.writeString(buffer, resourceData.getName());
+
+            var headers = resourceData.getHeaders();
+            ByteBufUtils.writeInt(buffer, headers.size());
+            for (var header : headers) {
+                ByteBufUtils.writeString(buffer, header.getName());
+                ByteBufUtils.writeString(buffer, header.getType());
+                ByteBufUtils.writeInt(buffer, header.getIndex());
+            }
+
+            var rows = resourceData.getRows();
+            ByteBufUtils.writeInt(buffer, rows.size());
+            for (var row : rows) {
+                ByteBufUtils.writeInt(buffer, row.size());
+                for (var cell : row) {
+                    // 区分null和空字符串，String类型的属性会直接注入单元格的值
+                    ByteBufUtils.writeBoolean(buffer, cell != null);
+                    if (cell != null) {
+                        ByteBufUtils.writeString(buffer, cell);
+                    }
+                }
+            }
+            return ByteBufUtils.readAllBytes(buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * @param hash 源文件的hash，为null则不校验
+     * @return 快照格式不对或者hash不匹配返回null
+     */
+    @Nullable
+    public static ResourceData read(byte[] bytes, @Nullable String hash) {
+        var buffer = Unpooled.wrappedBuffer(bytes);
+        try {
+            if (ByteBufUtils.readInt(buffer) != MAGIC || ByteBufUtils.readInt(buffer) != VERSION) {
+                return null;
+            }
+            var snapshotHash = ByteBufUtils.readString(buffer);
+            if (hash != null && !hash.equals(snapshotHash)) {
+                return null;
+            }
+            var name = ByteBufUtils.readString(buffer);
+
+            var headerSize = ByteBufUtils.readInt(buffer);
+            // 损坏的快照中的数量可能非常大，不能直接用来分配内存
+            var headers = new ArrayList<ResourceHeader>(Math.min(headerSize, buffer.readableBytes()));
+            for (var i = 0; i < headerSize; i++) {
+                headers.add(ResourceHeader.valueOf(ByteBufUtils.readString(buffer), ByteBufUtils.readString(buffer), ByteBufUtils.readInt(buffer)));
+            }
+
+            var rowSize = ByteBufUtils.readInt(buffer);
+            var rows = new ArrayList<List<String>>(Math.min(rowSize, buffer.readableBytes()));
+            for (var i = 0; i < rowSize; i++) {
+                var cellSize = ByteBufUtils.readInt(buffer);
+                var row = new ArrayList<String>(Math.min(cellSize, buffer.readableBytes()));
+                for (var j = 0; j < cellSize; j++) {
+                    row.add(ByteBufUtils.readBoolean(buffer) ? ByteBufUtils.readString(buffer) : null);
+                }
+                rows.add(row);
+            }
+            return ResourceData.valueOf(name, headers, rows);
+        } catch (RuntimeException e) {
+            // 快照文件不完整或者损坏，返回null重新解析源文件并且生成新的快照
+            logger.warn("Snapshot is broken and will be rebuilt from the resource file", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    public static ResourceData read(File snapshotFile, String hash) throws IOException {
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        return read(FileUtils.readFileToByteArray(snapshotFile), hash);
+    }
+
+    /**
+     * 先写临时文件再原子替换，多个进程共用一个快照目录的时候也不会读到写了一半的快照
+     */
+    public static void write(File snapshotFile, String hash, ResourceData resourceData) throws IOException {
+        var bytes = write(hash, resourceData);
+        var directory = snapshotFile.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        var tempFile = Files.createTempFile(directory.toPath(), snapshotFile.getName(), ".tmp");
+        try {
+            Files.write(tempFile, bytes);
+            Files.move(tempFile, snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+}
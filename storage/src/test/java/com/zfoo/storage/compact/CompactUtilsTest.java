@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.compact;
+
+import com.zfoo.storage.util.CompactUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @author godotg
+ * @version 4.0
+ */
+public class CompactUtilsTest {
+
+    public static class Reward {
+        private String item;
+        private int count;
+
+        public Reward(String item, int count) {
+            this.item = item;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Reward reward = (Reward) o;
+            return count == reward.count && Objects.equals(item, reward.item);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(item, count);
+        }
+    }
+
+    // 只比较id的equals
+    public static class IdReward {
+        private int id;
+        private int count;
+
+        public IdReward(int id, int count) {
+            this.id = id;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return id == ((IdReward) o).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(id);
+        }
+    }
+
+    public static class IdResource {
+        private IdReward reward;
+        private List<IdReward> rewards;
+
+        public IdResource(IdReward reward) {
+            this.reward = reward;
+            this.rewards = new ArrayList<>(List.of(reward));
+        }
+    }
+
+    public static class Resource {
+        private String name;
+        private List<String> tags;
+        private ArrayList<String> arrayTags;
+        private Reward reward;
+        private String[] names;
+
+        public Resource(String name, List<String> tags, Reward reward) {
+            this.name = name;
+            this.tags = tags;
+            this.arrayTags = new ArrayList<>(tags);
+            this.reward = reward;
+            this.names = new String[]{name};
+        }
+    }
+
+    @Test
+    public void compactTest() {
+        var a = new Resource(new String("sword"), new ArrayList<>(List.of(new String("a"), "b")), new Reward(new String("gold"), 10));
+        var b = new Resource(new String("sword"), new ArrayList<>(List.of(new String("a"), "b")), new Reward(new String("gold"), 10));
+        Assert.assertNotSame(a.name, b.name);
+
+        CompactUtils.compact(List.of(a, b));
+
+        Assert.assertSame(a.name, b.name);
+        Assert.assertSame(a.tags, b.tags);
+        Assert.assertSame(a.reward, b.reward);
+        Assert.assertSame(a.names[0], b.names[0]);
+        Assert.assertEquals(List.of("a", "b"), a.tags);
+        try {
+            a.tags.add("c");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // 压缩之后的List是不可变的
+        }
+
+        // 声明为ArrayList的属性不能替换，只压缩元素
+        Assert.assertNotSame(a.arrayTags, b.arrayTags);
+        Assert.assertSame(a.arrayTags.get(0), b.arrayTags.get(0));
+        Assert.assertSame(a.tags.get(0), a.arrayTags.get(0));
+    }
+
+    @Test
+    public void idEqualsTest() {
+        var a = new IdResource(new IdReward(1, 10));
+        var b = new IdResource(new IdReward(1, 20));
+        var c = new IdResource(new IdReward(1, 10));
+
+        CompactUtils.compact(List.of(a, b, c));
+
+        // equals相等但是属性不同的对象不能合并，否则配置会被改掉
+        Assert.assertEquals(10, a.reward.count);
+        Assert.assertEquals(20, b.reward.count);
+        Assert.assertEquals(20, b.rewards.get(0).count);
+        Assert.assertNotSame(a.reward, b.reward);
+        Assert.assertNotSame(a.rewards, b.rewards);
+        // 所有属性都相等的对象仍然合并
+        Assert.assertSame(a.reward, c.reward);
+        Assert.assertSame(a.rewards, c.rewards);
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.excel;
+
+import com.zfoo.protocol.util.ClassUtils;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.JsonUtils;
+import com.zfoo.storage.interpreter.ExcelReader;
+import com.zfoo.storage.interpreter.ExcelSaxReader;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+/**
+ * @author godotg
+ * @version 4.0
+ */
+public class ExcelSaxReaderTest {
+
+    @Test
+    public void resourceTest() throws Exception {
+        var bytes = IOUtils.toByteArray(ClassUtils.getFileFromClassPath("excel/StudentResource.xlsx"));
+        assertSameResourceData(bytes);
+    }
+
+    @Test
+    public void cellTypeTest() throws Exception {
+        var wb = new XSSFWorkbook();
+        var sheet = wb.createSheet("test");
+        var dateStyle = wb.createCellStyle();
+        dateStyle.setDataFormat(wb.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+        var decimalStyle = wb.createCellStyle();
+        decimalStyle.setDataFormat(wb.getCreationHelper().createDataFormat().getFormat("0.00"));
+
+        var fields = new String[]{"id", "name", "score", "rate", "flag", "date", "formula", "empty"};
+        var types = new String[]{"int", "string", "int", "double", "boolean", "date", "int", "string"};
+        var fieldRow = sheet.createRow(0);
+        var typeRow = sheet.createRow(1);
+        sheet.createRow(2).createCell(0).setCellValue("描述");
+        for (var i = 0; i < fields.length; i++) {
+            fieldRow.createCell(i).setCellValue(fields[i]);
+            typeRow.createCell(i).setCellValue(types[i]);
+        }
+        // 没有类型的列会被忽略
+        fieldRow.createCell(fields.length).setCellValue("ignore");
+
+        for (var i = 0; i < 10; i++) {
+            // 跳过一些行，生成稀疏的行
+            var row = sheet.createRow(3 + i * 2);
+            row.createCell(0).setCellValue(1000 + i);
+            row.createCell(1).setCellValue(" name" + i + " ");
+            row.createCell(2).setCellValue(i * 10);
+            var rateCell = row.createCell(3);
+            rateCell.setCellValue(i + 0.5);
+            if (i % 2 == 0) {
+                rateCell.setCellStyle(decimalStyle);
+            }
+            row.createCell(4).setCellValue(i % 2 == 0);
+            var dateCell = row.createCell(5);
+            dateCell.setCellValue(new Date(1600000000000L + i * 86400000L));
+            dateCell.setCellStyle(dateStyle);
+            row.createCell(6).setCellFormula(i + "+1");
+        }
+        // id为空的行会被忽略
+        sheet.createRow(30).createCell(1).setCellValue("no id");
+        wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+        var outputStream = new ByteArrayOutputStream();
+        wb.write(outputStream);
+        wb.close();
+        assertSameResourceData(outputStream.toByteArray());
+    }
+
+    private void assertSameResourceData(byte[] bytes) {
+        var expect = ExcelReader.readResourceDataFromExcel(new ByteArrayInputStream(bytes), "test");
+        var actual = ExcelSaxReader.readResourceDataFromExcel(new ByteArrayInputStream(bytes), "test");
+        Assert.assertFalse(actual.getRows().isEmpty());
+        Assert.assertEquals(JsonUtils.object2String(expect), JsonUtils.object2String(actual));
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.interpreter;
+
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.JsonUtils;
+import com.zfoo.storage.model.anno.Id;
+import com.zfoo.storage.model.resource.ResourceData;
+import com.zfoo.storage.model.resource.ResourceHeader;
+import com.zfoo.storage.resource.StudentResource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author godotg
+ * @version 4.0
+ */
+public class ResourceInjectorTest {
+
+    public static class PublicResource {
+        @Id
+        public int id;
+        public long count;
+        public boolean flag;
+        public char level;
+        public Double rate;
+        public String name;
+        public String[] values;
+        public Map<Integer, String> map;
+    }
+
+    public static class SetterResource {
+        @Id
+        private int id;
+        private boolean flag;
+        private String name;
+        private int setCount;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+            setCount++;
+        }
+
+        public boolean isFlag() {
+            return flag;
+        }
+
+        public void setFlag(boolean flag) {
+            this.flag = flag;
+            setCount++;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class PrivateResource {
+        @Id
+        private int id;
+        private long count;
+        private boolean flag;
+        private char level;
+        private String name;
+        private String[] values;
+    }
+
+    @Test
+    public void enhanceTest() throws Exception {
+        var injector = ResourceInterpreter.resourceInjector(PublicResource.class);
+        Assert.assertNotEquals(ResourceInjector.class, injector.getClass());
+
+        var headers = List.of(ResourceHeader.valueOf("id", "int", 0), ResourceHeader.valueOf("count", "long", 1)
+                , ResourceHeader.valueOf("flag", "bool", 2), ResourceHeader.valueOf("level", "char", 3)
+                , ResourceHeader.valueOf("rate", "double", 4), ResourceHeader.valueOf("name", "string", 5)
+                , ResourceHeader.valueOf("values", "string[]", 6), ResourceHeader.valueOf("map", "map", 7));
+        var rows = List.of(List.of("1", "10000000000", "yes", "A", "0.5", "a", "[\"a\",\"b\"]", "{\"1\":\"a\"}")
+                , List.of("2", "", "", "", "", "", "", ""));
+        var resourceData = ResourceData.valueOf("PublicResource", headers, rows);
+
+        var list = ResourceInterpreter.read(resourceData, PublicResource.class);
+        var first = list.get(0);
+        Assert.assertEquals(1, first.id);
+        Assert.assertEquals(10000000000L, first.count);
+        Assert.assertTrue(first.flag);
+        Assert.assertEquals('A', first.level);
+        Assert.assertEquals(0.5, first.rate, 0);
+        Assert.assertEquals("a", first.name);
+        Assert.assertArrayEquals(new String[]{"a", "b"}, first.values);
+        Assert.assertEquals("a", first.map.get(1));
+        Assert.assertEquals(1, injector.read(first, injector.fieldIndex(PublicResource.class.getDeclaredField("id"))));
+
+        // 空的单元格不注入，String除外
+        var second = list.get(1);
+        Assert.assertEquals(0, second.count);
+        Assert.assertNull(second.rate);
+        Assert.assertEquals("", second.name);
+        Assert.assertNull(second.values);
+
+        // 生成的injector和反射的结果一致
+        var reflectInjector = new ResourceInjector(PublicResource.class, injector.getFields(), injector.converters);
+        for (var i = 0; i < injector.getFields().length; i++) {
+            Assert.assertEquals(JsonUtils.object2String(reflectInjector.read(first, i)), JsonUtils.object2String(injector.read(first, i)));
+        }
+    }
+
+    @Test
+    public void setMethodTest() throws Exception {
+        var injector = ResourceInterpreter.resourceInjector(SetterResource.class);
+        Assert.assertNotEquals(ResourceInjector.class, injector.getClass());
+
+        var headers = List.of(ResourceHeader.valueOf("id", "int", 0), ResourceHeader.valueOf("flag", "bool", 1)
+                , ResourceHeader.valueOf("name", "string", 2), ResourceHeader.valueOf("setCount", "int", 3));
+        var rows = List.of(List.of("0x10", "on", "a", ""));
+        var list = ResourceInterpreter.read(ResourceData.valueOf("SetterResource", headers, rows), SetterResource.class);
+        var resource = list.get(0);
+        Assert.assertEquals(16, resource.getId());
+        Assert.assertTrue(resource.isFlag());
+        // 有set方法的属性通过set方法注入，没有set方法的属性通过VarHandle注入
+        Assert.assertEquals("a", resource.getName());
+        Assert.assertEquals(2, resource.setCount);
+    }
+
+    @Test
+    public void varHandleTest() throws Exception {
+        var injector = ResourceInterpreter.resourceInjector(PrivateResource.class);
+        Assert.assertNotEquals(ResourceInjector.class, injector.getClass());
+        // 没有set方法和get方法的private属性在生成的类中使用VarHandle读写，不再通过反射
+        for (var i = 0; i < injector.getFields().length; i++) {
+            var handleField = injector.getClass().getDeclaredField("VAR_HANDLE_" + i);
+            Assert.assertEquals(VarHandle.class, handleField.getType());
+            Assert.assertTrue(Modifier.isStatic(handleField.getModifiers()) && Modifier.isFinal(handleField.getModifiers()));
+        }
+
+        var headers = List.of(ResourceHeader.valueOf("id", "int", 0), ResourceHeader.valueOf("count", "long", 1)
+                , ResourceHeader.valueOf("flag", "bool", 2), ResourceHeader.valueOf("level", "char", 3)
+                , ResourceHeader.valueOf("name", "string", 4), ResourceHeader.valueOf("values", "string[]", 5));
+        var rows = List.of(List.of("1", "10000000000", "true", "A", "a", "[\"a\",\"b\"]"));
+        var resource = ResourceInterpreter.read(ResourceData.valueOf("PrivateResource", headers, rows), PrivateResource.class).get(0);
+        Assert.assertEquals(1, resource.id);
+        Assert.assertEquals(10000000000L, resource.count);
+        Assert.assertTrue(resource.flag);
+        Assert.assertEquals('A', resource.level);
+        Assert.assertEquals("a", resource.name);
+        Assert.assertArrayEquals(new String[]{"a", "b"}, resource.values);
+
+        // 生成的injector和反射的结果一致
+        var reflectInjector = new ResourceInjector(PrivateResource.class, injector.getFields(), injector.converters);
+        for (var i = 0; i < injector.getFields().length; i++) {
+            Assert.assertEquals(JsonUtils.object2String(reflectInjector.read(resource, i)), JsonUtils.object2String(injector.read(resource, i)));
+        }
+    }
+
+    @Test
+    public void convertExceptionTest() {
+        var headers = List.of(ResourceHeader.valueOf("id", "int", 0), ResourceHeader.valueOf("flag", "bool", 1)
+                , ResourceHeader.valueOf("name", "string", 2), ResourceHeader.valueOf("setCount", "int", 3));
+        var rows = List.of(List.of("1", " ", "a", ""));
+        try {
+            ResourceInterpreter.read(ResourceData.valueOf("SetterResource", headers, rows), SetterResource.class);
+            Assert.fail();
+        } catch (RunException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Unable to convert"));
+            Assert.assertTrue(e.getMessage().contains("flag"));
+        }
+    }
+
+    @Test
+    public void getMethodTest() throws Exception {
+        var injector = ResourceInterpreter.resourceInjector(StudentResource.class);
+        var resource = (StudentResource) injector.newInstance();
+        var idField = StudentResource.class.getDeclaredField("id");
+        idField.setAccessible(true);
+        idField.set(resource, 1001);
+        Assert.assertEquals(1001, injector.read(resource, injector.fieldIndex(idField)));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.model;
+
+import com.zfoo.protocol.exception.AssertException;
+import com.zfoo.storage.model.anno.Id;
+import com.zfoo.storage.model.anno.Index;
+import com.zfoo.storage.model.anno.RangeIndex;
+import com.zfoo.storage.model.resource.ResourceData;
+import com.zfoo.storage.model.resource.ResourceHeader;
+import com.zfoo.storage.model.vo.Storage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author godotg
+ * @version 4.0
+ */
+public class StorageTest {
+
+    public static class IntResource {
+        @Id
+        public int id;
+        @Index
+        public String name;
+    }
+
+    public static class LongResource {
+        @Id
+        public long id;
+        public String name;
+    }
+
+    public static class StringResource {
+        @Id
+        public String id;
+        public String name;
+    }
+
+    public static class RangeResource {
+        @Id
+        public int id;
+        @RangeIndex
+        public long exp;
+        @RangeIndex
+        public double price;
+    }
+
+    private static ResourceData resourceData(long... ids) {
+        var headers = List.of(ResourceHeader.valueOf("id", "id", 0), ResourceHeader.valueOf("name", "string", 1));
+        var rows = new ArrayList<List<String>>();
+        for (var id : ids) {
+            rows.add(List.of(String.valueOf(id), "name" + id));
+        }
+        return ResourceData.valueOf("test", headers, rows);
+    }
+
+    private static ResourceData resourceData(List<List<String>> rows) {
+        var headers = List.of(ResourceHeader.valueOf("id", "id", 0), ResourceHeader.valueOf("name", "string", 1));
+        return ResourceData.valueOf("test", headers, rows);
+    }
+
+    @Test
+    public void denseIntTest() {
+        var storage = new Storage<Integer, IntResource>();
+        storage.init(resourceData(1001, 1002, 1003, 1005), IntResource.class);
+        Assert.assertEquals(4, storage.size());
+        Assert.assertEquals("name1001", storage.get(1001).name);
+        Assert.assertEquals("name1005", storage.get(Integer.valueOf(1005)).name);
+        Assert.assertEquals("name1003", storage.get(1003L).name);
+        Assert.assertTrue(storage.contain(1002));
+        Assert.assertFalse(storage.contain(1004));
+        Assert.assertFalse(storage.contain(1000));
+        Assert.assertFalse(storage.contain(1006));
+        Assert.assertFalse(storage.contain(Long.MAX_VALUE));
+        Assert.assertEquals(1, storage.getIndex("name", "name1002").size());
+        try {
+            storage.get(1004);
+            Assert.fail();
+        } catch (AssertException e) {
+            // 不存在的id
+        }
+    }
+
+    @Test
+    public void sparseIntTest() {
+        var storage = new Storage<Integer, IntResource>();
+        storage.init(resourceData(-5, 1, 100000, Integer.MAX_VALUE), IntResource.class);
+        Assert.assertEquals("name-5", storage.get(-5).name);
+        Assert.assertEquals("name2147483647", storage.get(Integer.MAX_VALUE).name);
+        Assert.assertTrue(storage.contain(Integer.valueOf(100000)));
+        Assert.assertFalse(storage.contain(2));
+        Assert.assertEquals(4, storage.getData().size());
+    }
+
+    @Test
+    public void longTest() {
+        var storage = new Storage<Long, LongResource>();
+        storage.init(resourceData(1, 10000000000L), LongResource.class);
+        Assert.assertEquals("name10000000000", storage.get(10000000000L).name);
+        Assert.assertEquals("name1", storage.get(1).name);
+        Assert.assertEquals("name1", storage.get(Long.valueOf(1)).name);
+        Assert.assertFalse(storage.contain(2L));
+    }
+
+    @Test
+    public void stringTest() {
+        var storage = new Storage<String, StringResource>();
+        storage.init(resourceData(1, 2), StringResource.class);
+        Assert.assertEquals("name1", storage.get("1").name);
+        Assert.assertFalse(storage.contain(1));
+    }
+
+    @Test
+    public void swapTest() {
+        var storage = new Storage<Integer, IntResource>();
+        storage.init(resourceData(1, 2, 3), IntResource.class);
+        var newStorage = new Storage<Integer, IntResource>();
+        newStorage.init(resourceData(List.of(List.of("1", "name1"), List.of("2", "changed"), List.of("4", "name4"))), IntResource.class);
+
+        var change = storage.diff(newStorage);
+        Assert.assertEquals(Set.of(4), change.getAddedIds());
+        Assert.assertEquals(Set.of(2), change.getChangedIds());
+        Assert.assertEquals(Set.of(3), change.getRemovedIds());
+
+        storage.swap(newStorage);
+        Assert.assertEquals(3, storage.size());
+        Assert.assertEquals("changed", storage.get(2).name);
+        Assert.assertEquals(1, storage.getIndex("name", "name4").size());
+        Assert.assertFalse(storage.contain(3));
+
+        // 替换之后依然可以从change中读取旧的数据
+        Assert.assertEquals("name2", change.getOldStorage().get(2).name);
+        Assert.assertEquals("name3", change.getOldStorage().get(3).name);
+    }
+
+    @Test
+    public void rangeIndexTest() {
+        var headers = List.of(ResourceHeader.valueOf("id", "int", 0), ResourceHeader.valueOf("exp", "long", 1), ResourceHeader.valueOf("price", "double", 2));
+        var rows = List.of(List.of("1", "0", "9.5"), List.of("2", "100", "1.5"), List.of("3", "300", "3.0"), List.of("4", "300", "3.0"), List.of("5", "600", "20"));
+        var storage = new Storage<Integer, RangeResource>();
+        storage.init(ResourceData.valueOf("test", headers, rows), RangeResource.class);
+
+        Assert.assertEquals(2, storage.getFloor("exp", 299).id);
+        Assert.assertEquals(4, storage.getFloor("exp", 300).id);
+        Assert.assertEquals(5, storage.getFloor("exp", Long.MAX_VALUE).id);
+        Assert.assertNull(storage.getFloor("exp", -1));
+        Assert.assertEquals(3, storage.getCeiling("exp", 101).id);
+        Assert.assertNull(storage.getCeiling("exp", 601));
+        Assert.assertEquals(List.of(2, 3, 4), storage.getRange("exp", 50, 300).stream().map(it -> it.id).collect(Collectors.toList()));
+        Assert.assertTrue(storage.getRange("exp", 301, 599).isEmpty());
+
+        Assert.assertEquals(List.of(3, 4, 1), storage.getRange("price", 2.0, 10.0).stream().map(it -> it.id).collect(Collectors.toList()));
+        Assert.assertEquals(1, storage.getFloor("price", 19.9).id);
+        Assert.assertEquals(5, storage.getCeiling("price", 10).id);
+        try {
+            storage.getFloor("id", 1);
+            Assert.fail();
+        } catch (AssertException e) {
+            // 不存在的范围索引
+        }
+    }
+
+}
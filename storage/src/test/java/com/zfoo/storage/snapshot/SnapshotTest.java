@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.storage.snapshot;
+
+import com.zfoo.protocol.buffer.ByteBufUtils;
+import com.zfoo.protocol.util.ClassUtils;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.JsonUtils;
+import com.zfoo.storage.interpreter.ResourceInterpreter;
+import com.zfoo.storage.model.vo.Storage;
+import com.zfoo.storage.resource.StudentResource;
+import com.zfoo.storage.util.SnapshotUtils;
+import org.junit.Assert;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+/**
+ * @author godotg
+ * @version 4.0
+ */
+public class SnapshotTest {
+
+    @Test
+    public void snapshotTest() throws Exception {
+        var bytes = IOUtils.toByteArray(ClassUtils.getFileFromClassPath("excel/StudentResource.xlsx"));
+        var hash = SnapshotUtils.hash(bytes);
+        var resourceData = ResourceInterpreter.readResourceData(new ByteArrayInputStream(bytes), StudentResource.class.getSimpleName(), "xlsx");
+
+        var snapshot = SnapshotUtils.write(hash, resourceData);
+        Assert.assertNull(SnapshotUtils.read(snapshot, "other hash"));
+        var snapshotResourceData = SnapshotUtils.read(snapshot, hash);
+        Assert.assertEquals(JsonUtils.object2String(resourceData), JsonUtils.object2String(snapshotResourceData));
+
+        // 从快照和从源文件构建出来的Storage完全一样
+        var storage = new Storage<Integer, StudentResource>();
+        storage.init(new ByteArrayInputStream(bytes), StudentResource.class, "xlsx");
+        var snapshotStorage = new Storage<Integer, StudentResource>();
+        snapshotStorage.init(snapshotResourceData, StudentResource.class);
+        Assert.assertEquals(JsonUtils.object2String(storage.getData()), JsonUtils.object2String(snapshotStorage.getData()));
+        Assert.assertEquals(JsonUtils.object2String(storage.getIndex("name", "james0")), JsonUtils.object2String(snapshotStorage.getIndex("name", "james0")));
+    }
+
+    @Test
+    public void brokenSnapshotTest() throws Exception {
+        var bytes = IOUtils.toByteArray(ClassUtils.getFileFromClassPath("excel/StudentResource.xlsx"));
+        var hash = SnapshotUtils.hash(bytes);
+        var resourceData = ResourceInterpreter.readResourceData(new ByteArrayInputStream(bytes), StudentResource.class.getSimpleName(), "xlsx");
+        var snapshot = SnapshotUtils.write(hash, resourceData);
+
+        // 表头的数量被改成负数，快照损坏的时候返回null，不抛出异常
+        var snapshotBuffer = Unpooled.wrappedBuffer(snapshot);
+        var buffer = Unpooled.buffer();
+        ByteBufUtils.writeInt(buffer, ByteBufUtils.readInt(snapshotBuffer));
+        ByteBufUtils.writeInt(buffer, ByteBufUtils.readInt(snapshotBuffer));
+        ByteBufUtils.writeString(buffer, ByteBufUtils.readString(snapshotBuffer));
+        ByteBufUtils.writeString(buffer, ByteBufUtils.readString(snapshotBuffer));
+        ByteBufUtils.readInt(snapshotBuffer);
+        ByteBufUtils.writeInt(buffer, -1);
+        buffer.writeBytes(snapshotBuffer);
+        Assert.assertNull(SnapshotUtils.read(ByteBufUtils.readAllBytes(buffer), hash));
+
+        // 快照被截断
+        Assert.assertNull(SnapshotUtils.read(Arrays.copyOf(snapshot, snapshot.length / 2), hash));
+    }
+
+}
@@ -33,4 +33,8 @@ public class SafeRunnable implements Runnable {
         }
     }
 
+    public Runnable getRunnable() {
+        return runnable;
+    }
+
 }
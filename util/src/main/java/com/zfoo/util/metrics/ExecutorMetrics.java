@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import com.zfoo.protocol.util.StringUtils;
+
+/**
+ * ExecutorRecorder的统计信息快照，时间的单位都是毫秒
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class ExecutorMetrics {
+
+    private String name;
+
+    /**
+     * 当前在队列中等待执行的任务数量
+     */
+    private int queueSize;
+
+    /**
+     * 执行完成的任务数量，和被拒绝或者丢弃的任务数量
+     */
+    private long taskCount;
+
+    private long rejectedCount;
+
+    /**
+     * 任务从提交到开始执行的等待时间
+     */
+    private double waitMeanMillis;
+
+    private double waitP99Millis;
+
+    private double waitMaxMillis;
+
+    /**
+     * 任务的执行时间
+     */
+    private double runMeanMillis;
+
+    private double runP99Millis;
+
+    private double runMaxMillis;
+
+    /**
+     * 正在执行的任务和已经执行了多久，没有正在执行的任务的时候为null
+     */
+    private String runningTask;
+
+    private double runningMillis;
+
+    /**
+     * 执行时间最长的任务
+     */
+    private String slowestTask;
+
+    private double slowestMillis;
+
+    public static ExecutorMetrics valueOf(String name, int queueSize, long taskCount, long rejectedCount
+            , double waitMeanMillis, double waitP99Millis, double waitMaxMillis
+            , double runMeanMillis, double runP99Millis, double runMaxMillis
+            , String runningTask, double runningMillis, String slowestTask, double slowestMillis) {
+        var metrics = new ExecutorMetrics();
+        metrics.name = name;
+        metrics.queueSize = queueSize;
+        metrics.taskCount = taskCount;
+        metrics.rejectedCount = rejectedCount;
+        metrics.waitMeanMillis = waitMeanMillis;
+        metrics.waitP99Millis = waitP99Millis;
+        metrics.waitMaxMillis = waitMaxMillis;
+        metrics.runMeanMillis = runMeanMillis;
+        metrics.runP99Millis = runP99Millis;
+        metrics.runMaxMillis = runMaxMillis;
+        metrics.runningTask = runningTask;
+        metrics.runningMillis = runningMillis;
+        metrics.slowestTask = slowestTask;
+        metrics.slowestMillis = slowestMillis;
+        return metrics;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public double getWaitMeanMillis() {
+        return waitMeanMillis;
+    }
+
+    public double getWaitP99Millis() {
+        return waitP99Millis;
+    }
+
+    public double getWaitMaxMillis() {
+        return waitMaxMillis;
+    }
+
+    public double getRunMeanMillis() {
+        return runMeanMillis;
+    }
+
+    public double getRunP99Millis() {
+        return runP99Millis;
+    }
+
+    public double getRunMaxMillis() {
+        return runMaxMillis;
+    }
+
+    public String getRunningTask() {
+        return runningTask;
+    }
+
+    public double getRunningMillis() {
+        return runningMillis;
+    }
+
+    public String getSlowestTask() {
+        return slowestTask;
+    }
+
+    public double getSlowestMillis() {
+        return slowestMillis;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtils.format("[{}] [queue:{}] [task:{}] [rejected:{}] [wait mean:{}ms p99:{}ms max:{}ms] [run mean:{}ms p99:{}ms max:{}ms] [running:{} {}ms] [slowest:{} {}ms]"
+                , name, queueSize, taskCount, rejectedCount, waitMeanMillis, waitP99Millis, waitMaxMillis
+                , runMeanMillis, runP99Millis, runMaxMillis, runningTask, runningMillis, slowestTask, slowestMillis);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import com.zfoo.protocol.IPacket;
+import com.zfoo.protocol.util.AssertionUtils;
+import com.zfoo.util.SafeRunnable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 执行器的统计信息，把提交给执行器的任务包装一层，记录任务从提交到开始执行的等待时间和执行时间，
+ * 正在执行的任务和执行最慢的任务，时间的单位都是纳秒，快照里转换成毫秒
+ * <p>
+ * source是任务的来源，用来描述任务，例如事件或者协议，为null的时候使用任务本身
+ * <p>
+ * task，event，scheduler的执行器都是单线程的，所以只记录一个正在执行的任务
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class ExecutorRecorder {
+
+    private final String name;
+
+    private final IntSupplier queueSize;
+
+    private final Histogram waitHistogram = new Histogram();
+
+    private final Histogram runHistogram = new Histogram();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * 先写开始时间再写任务来源，读的时候先读任务来源，只是用来监控，不要求两个值严格一致
+     */
+    private volatile Object runningSource;
+    private volatile long runningStartTime;
+
+    private volatile Object slowestSource;
+    private volatile long slowestNanos;
+
+    public ExecutorRecorder(String name, IntSupplier queueSize) {
+        AssertionUtils.notNull(name);
+        AssertionUtils.notNull(queueSize);
+        this.name = name;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * 包装一个马上提交给执行器的任务，等待时间从调用这个方法开始计算
+     */
+    public Runnable wrap(Runnable task, Object source) {
+        return new RecordedTask(task, source, System.nanoTime(), 0);
+    }
+
+    /**
+     * 包装一个延迟执行或者固定频率执行的任务，等待时间是实际开始执行的时间比计划执行的时间晚了多久
+     *
+     * @param delayNanos  第一次执行的延迟
+     * @param periodNanos 执行的周期，0表示只执行一次
+     */
+    public Runnable wrap(Runnable task, Object source, long delayNanos, long periodNanos) {
+        return new RecordedTask(task, source, System.nanoTime() + delayNanos, periodNanos);
+    }
+
+    /**
+     * 在当前线程直接执行任务并且记录，用于执行器内部自己调度的任务，例如cron任务
+     */
+    public void run(Runnable task, Object source, long waitNanos) {
+        run(task, source, System.nanoTime(), waitNanos);
+    }
+
+    private void run(Runnable task, Object source, long startTime, long waitNanos) {
+        waitHistogram.record(waitNanos);
+        runningStartTime = startTime;
+        runningSource = source == null ? task : source;
+        try {
+            task.run();
+        } finally {
+            var runNanos = System.nanoTime() - startTime;
+            runningSource = null;
+            runHistogram.record(runNanos);
+            if (runNanos > slowestNanos) {
+                recordSlowest(source == null ? task : source, runNanos);
+            }
+        }
+    }
+
+    private synchronized void recordSlowest(Object source, long runNanos) {
+        if (runNanos > slowestNanos) {
+            slowestSource = source;
+            slowestNanos = runNanos;
+        }
+    }
+
+    public void recordRejected() {
+        rejectedCount.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ExecutorMetrics metrics() {
+        var running = runningSource;
+        var runningMillis = running == null ? 0D : nanoToMillis(Math.max(0, System.nanoTime() - runningStartTime));
+        return ExecutorMetrics.valueOf(name, queueSize.getAsInt(), runHistogram.count(), rejectedCount.sum()
+                , nanoToMillis(waitHistogram.mean()), nanoToMillis(waitHistogram.percentile(0.99)), nanoToMillis(waitHistogram.max())
+                , nanoToMillis(runHistogram.mean()), nanoToMillis(runHistogram.percentile(0.99)), nanoToMillis(runHistogram.max())
+                , running == null ? null : describe(running), runningMillis
+                , describe(slowestSource), nanoToMillis(slowestNanos));
+    }
+
+    public synchronized void reset() {
+        waitHistogram.reset();
+        runHistogram.reset();
+        rejectedCount.reset();
+        slowestSource = null;
+        slowestNanos = 0;
+    }
+
+    /**
+     * 协议输出协议的类名和协议号，其它的输出类名
+     */
+    public static String describe(Object source) {
+        if (source == null) {
+            return null;
+        }
+        if (source instanceof String) {
+            return (String) source;
+        }
+        if (source instanceof SafeRunnable) {
+            return describe(((SafeRunnable) source).getRunnable());
+        }
+        if (source instanceof RecordedTask) {
+            return describe(((RecordedTask) source).source);
+        }
+        if (source instanceof IPacket) {
+            return source.getClass().getName() + "(protocolId:" + ((IPacket) source).protocolId() + ")";
+        }
+        return source.getClass().getName();
+    }
+
+    private static double nanoToMillis(long nano) {
+        return (double) nano / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private final class RecordedTask implements Runnable {
+
+        private final Runnable task;
+        private final Object source;
+        private final long periodNanos;
+        /**
+         * 计划开始执行的时间，周期任务每执行一次往后推一个周期
+         */
+        private long expectedStartTime;
+
+        private RecordedTask(Runnable task, Object source, long expectedStartTime, long periodNanos) {
+            AssertionUtils.notNull(task);
+            this.task = task;
+            this.source = source == null ? task : source;
+            this.expectedStartTime = expectedStartTime;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public void run() {
+            var startTime = System.nanoTime();
+            var waitNanos = startTime - expectedStartTime;
+            if (periodNanos > 0) {
+                expectedStartTime += periodNanos;
+            }
+            ExecutorRecorder.this.run(task, source, startTime, waitNanos);
+        }
+
+        @Override
+        public String toString() {
+            return describe(source);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import com.zfoo.protocol.util.StringUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的直方图，用来统计耗时等非负数值的分布，可以被多个线程同时记录。
+ * <p>
+ * 每个2的幂次区间再平均分成4个桶，百分位数返回的是所在桶的上界，相对误差不超过25%，内存占用固定。
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        var currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        var count = count();
+        return count == 0 ? 0 : sum() / count;
+    }
+
+    /**
+     * @param percentile 百分位，范围是[0, 1]，例如0.99
+     * @return 百分位所在桶的上界
+     */
+    public long percentile(double percentile) {
+        var count = count();
+        if (count == 0) {
+            return 0;
+        }
+        var rank = (long) Math.ceil(Math.min(1D, Math.max(0D, percentile)) * count);
+        var accumulate = 0L;
+        for (var i = 0; i < BUCKET_COUNT; i++) {
+            accumulate += buckets.get(i);
+            if (accumulate >= rank && accumulate > 0) {
+                return Math.min(bucketUpperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    public void reset() {
+        for (var i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        var exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        var subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        var exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        var subBucket = index % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket)) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long bucketUpperBound(int index) {
+        return index + 1 >= BUCKET_COUNT ? Long.MAX_VALUE : bucketLowerBound(index + 1) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtils.format("[count:{}] [mean:{}] [p50:{}] [p99:{}] [max:{}]", count(), mean(), percentile(0.5), percentile(0.99), max());
+    }
+
+}
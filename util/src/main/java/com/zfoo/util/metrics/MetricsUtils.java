@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import com.zfoo.protocol.exception.ExceptionUtils;
+import com.zfoo.protocol.util.AssertionUtils;
+import com.zfoo.protocol.util.StringUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 全局的统计信息注册中心，各个模块把自己的统计信息注册到这里，通过名称获取或者由monitor统一输出
+ *
+ * @author godotg
+ * @version 3.0
+ */
+public abstract class MetricsUtils {
+
+    private static final Map<String, Supplier<?>> metricsMap = new ConcurrentHashMap<>();
+
+    /**
+     * @param name     统计信息的名称，例如：orm.cache.UserEntity
+     * @param supplier 每次获取的时候生成一份统计信息的快照，快照的toString()作为monitor的输出
+     */
+    public static void register(String name, Supplier<?> supplier) {
+        AssertionUtils.notNull(name);
+        AssertionUtils.notNull(supplier);
+        metricsMap.put(name, supplier);
+    }
+
+    public static void unregister(String name) {
+        metricsMap.remove(name);
+    }
+
+    public static Object metrics(String name) {
+        var supplier = metricsMap.get(name);
+        return supplier == null ? null : supplier.get();
+    }
+
+    /**
+     * 所有统计信息的快照，按照名称排序，一个统计信息获取失败的时候用异常信息代替，不影响其它的统计信息
+     */
+    public static Map<String, Object> metrics() {
+        var map = new TreeMap<String, Object>();
+        metricsMap.forEach((name, supplier) -> {
+            Object value;
+            try {
+                value = supplier.get();
+            } catch (Throwable t) {
+                value = StringUtils.format("[error:{}]", ExceptionUtils.getMessage(t));
+            }
+            map.put(name, value);
+        });
+        return Collections.unmodifiableMap(map);
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import com.zfoo.util.SafeRunnable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+public class ExecutorRecorderTest {
+
+    @Test
+    public void recordTest() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var recorder = new ExecutorRecorder("test.executor", () -> 0);
+        var started = new CountDownLatch(1);
+        var blocker = new CountDownLatch(1);
+
+        executor.execute(recorder.wrap(() -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "slowTask"));
+        executor.execute(recorder.wrap(SafeRunnable.valueOf(() -> {
+        }), null));
+
+        started.await();
+        Thread.sleep(20);
+        var metrics = recorder.metrics();
+        Assert.assertEquals("slowTask", metrics.getRunningTask());
+        Assert.assertTrue(metrics.getRunningMillis() >= 20);
+        Assert.assertEquals(0, metrics.getTaskCount());
+
+        blocker.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        metrics = recorder.metrics();
+        Assert.assertNull(metrics.getRunningTask());
+        Assert.assertEquals(2, metrics.getTaskCount());
+        Assert.assertEquals("slowTask", metrics.getSlowestTask());
+        Assert.assertTrue(metrics.getSlowestMillis() >= 20);
+        // 第二个任务在队列中等待第一个任务执行完成
+        Assert.assertTrue(metrics.getWaitMaxMillis() >= 20);
+
+        recorder.recordRejected();
+        Assert.assertEquals(1, recorder.metrics().getRejectedCount());
+        recorder.reset();
+        Assert.assertEquals(0, recorder.metrics().getTaskCount());
+        Assert.assertNull(recorder.metrics().getSlowestTask());
+    }
+
+    @Test
+    public void describeTest() {
+        Runnable task = () -> {
+        };
+        Assert.assertEquals(task.getClass().getName(), ExecutorRecorder.describe(SafeRunnable.valueOf(task)));
+        Assert.assertEquals("cron", ExecutorRecorder.describe("cron"));
+        Assert.assertNull(ExecutorRecorder.describe(null));
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+public class HistogramTest {
+
+    @Test
+    public void bucketTest() {
+        for (var value = 0L; value < 100_000L; value++) {
+            var index = Histogram.bucketIndex(value);
+            Assert.assertTrue(Histogram.bucketLowerBound(index) <= value);
+            Assert.assertTrue(Histogram.bucketUpperBound(index) >= value);
+        }
+        var index = Histogram.bucketIndex(Long.MAX_VALUE);
+        Assert.assertTrue(Histogram.bucketLowerBound(index) <= Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(index));
+    }
+
+    @Test
+    public void percentileTest() {
+        var histogram = new Histogram();
+        for (var i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(1000, histogram.count());
+        Assert.assertEquals(500, histogram.mean());
+        Assert.assertEquals(1000, histogram.max());
+
+        var p50 = histogram.percentile(0.5);
+        Assert.assertTrue(p50 >= 500 && p50 <= 500 * 1.25);
+        var p99 = histogram.percentile(0.99);
+        Assert.assertTrue(p99 >= 990 && p99 <= 1000);
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.count());
+        Assert.assertEquals(0, histogram.percentile(0.99));
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author godotg
+ * @version 3.0
+ */
+public class MetricsUtilsTest {
+
+    @Test
+    public void metricsTest() {
+        MetricsUtils.register("test.a", () -> {
+            throw new IllegalStateException("broken");
+        });
+        MetricsUtils.register("test.b", () -> "b");
+        try {
+            // 一个统计信息抛出异常不影响其它的统计信息
+            var metrics = MetricsUtils.metrics();
+            Assert.assertTrue(metrics.get("test.a").toString().contains("broken"));
+            Assert.assertEquals("b", metrics.get("test.b"));
+        } finally {
+            MetricsUtils.unregister("test.a");
+            MetricsUtils.unregister("test.b");
+        }
+    }
+
+}